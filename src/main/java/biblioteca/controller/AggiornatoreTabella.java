@@ -0,0 +1,143 @@
+package biblioteca.controller;
+
+import biblioteca.view.RigaVista;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.scene.control.TableView;
+
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * @brief Applica a una tabella le singole modifiche del modello, senza ricostruire le altre righe.
+ * Una riga aggiunta viene inserita nella posizione giusta secondo l'ordine della tabella, una riga modificata
+ * viene ricalcolata sul posto (e spostata solo se cambia posizione), una riga rimossa viene tolta.
+ * Lavorando sulla lista esistente invece di sostituirla, la tabella mantiene selezione e posizione di scorrimento.
+ * La riga di un elemento si trova in una mappa per identità, quindi ricalcolare una riga costa O(1); la mappa
+ * viene ricostruita alla prima ricerca dopo che le righe sono cambiate (inserimenti e rimozioni costano già O(n)
+ * per lo spostamento delle righe successive).
+ * @param <T> tipo degli oggetti mostrati nelle righe
+ */
+final class AggiornatoreTabella<T> {
+    private final TableView<ObservableList<String>> tabella;
+    private final List<? extends Function<? super T, String>> colonne;
+    private final Comparator<? super T> ordine;
+    /** posizione della riga di ogni elemento; null quando le righe sono cambiate e va ricostruita. */
+    private IdentityHashMap<T, Integer> posizioni;
+    private final ListChangeListener<ObservableList<String>> righeCambiate = c -> posizioni = null;
+
+    /**
+     * @param tabella tabella da aggiornare
+     * @param colonne funzioni delle colonne, le stesse usate per costruire le righe
+     * @param ordine ordine delle righe nella tabella; può essere null se si usa solo aggiornaSe
+     */
+    AggiornatoreTabella(TableView<ObservableList<String>> tabella,
+                        List<? extends Function<? super T, String>> colonne,
+                        Comparator<? super T> ordine) {
+        this.tabella = tabella;
+        this.colonne = colonne;
+        this.ordine = ordine;
+        if (tabella.getItems() != null) {
+            tabella.getItems().addListener(righeCambiate);
+        }
+        tabella.itemsProperty().addListener((valore, vecchie, nuove) -> {
+            if (vecchie != null) vecchie.removeListener(righeCambiate);
+            if (nuove != null) nuove.addListener(righeCambiate);
+            posizioni = null;
+        });
+    }
+    /**
+     * @brief inserisce la riga di un nuovo elemento dopo tutte quelle che lo precedono o sono alla pari.
+     */
+    void aggiunto(T elemento) {
+        if (trova(elemento) >= 0) {
+            modificato(elemento);
+            return;
+        }
+        ObservableList<ObservableList<String>> righe = tabella.getItems();
+        righe.add(posizione(righe, elemento), new RigaVista<T>(elemento, colonne));
+    }
+    /**
+     * @brief ricalcola la riga dell'elemento; se non è più al suo posto la sposta, mantenendola selezionata.
+     */
+    void modificato(T elemento) {
+        int i = trova(elemento);
+        if (i < 0) return;
+        ObservableList<ObservableList<String>> righe = tabella.getItems();
+        RigaVista<?> riga = (RigaVista<?>) righe.get(i);
+        riga.aggiorna();
+        if (alPosto(righe, i, elemento)) return;
+
+        boolean selezionata = tabella.getSelectionModel().getSelectedItem() == riga;
+        righe.remove(i);
+        int nuova = posizione(righe, elemento);
+        righe.add(nuova, riga);
+        if (selezionata) {
+            tabella.getSelectionModel().select(nuova);
+        }
+    }
+    /**
+     * @brief toglie la riga dell'elemento, se è presente.
+     */
+    void rimosso(T elemento) {
+        int i = trova(elemento);
+        if (i >= 0) {
+            tabella.getItems().remove(i);
+        }
+    }
+
+    /**
+     * @brief ricalcola sul posto le righe degli elementi che soddisfano la condizione, senza spostarle;
+     * serve quando cambia un oggetto collegato che non influisce sull'ordine (ad esempio l'utente di un prestito).
+     */
+    void aggiornaSe(Predicate<? super T> condizione) {
+        for (ObservableList<String> r : tabella.getItems()) {
+            T elemento = elementoDi(r);
+            if (elemento != null && condizione.test(elemento)) ((RigaVista<?>) r).aggiorna();
+        }
+    }
+
+    private int trova(T elemento) {
+        if (posizioni == null) {
+            ObservableList<ObservableList<String>> righe = tabella.getItems();
+            IdentityHashMap<T, Integer> nuove = new IdentityHashMap<T, Integer>(righe.size());
+            for (int i = 0; i < righe.size(); i++) {
+                T e = elementoDi(righe.get(i));
+                if (e != null) nuove.putIfAbsent(e, i);
+            }
+            posizioni = nuove;
+        }
+        Integer i = posizioni.get(elemento);
+        return (i != null) ? i : -1;
+    }
+
+    private boolean alPosto(List<ObservableList<String>> righe, int i, T elemento) {
+        T prima = (i > 0) ? elementoDi(righe.get(i - 1)) : null;
+        T dopo = (i + 1 < righe.size()) ? elementoDi(righe.get(i + 1)) : null;
+        return (prima == null || ordine.compare(prima, elemento) <= 0)
+                && (dopo == null || ordine.compare(elemento, dopo) <= 0);
+    }
+    /** @brief prima posizione la cui riga viene strettamente dopo l'elemento (le righe non del modello si saltano). */
+    private int posizione(List<ObservableList<String>> righe, T elemento) {
+        int basso = 0;
+        int alto = righe.size();
+        while (basso < alto) {
+            int medio = (basso + alto) >>> 1;
+            T altro = elementoDi(righe.get(medio));
+            if (altro != null && ordine.compare(altro, elemento) > 0) {
+                alto = medio;
+            } else {
+                basso = medio + 1;
+            }
+        }
+        return basso;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T elementoDi(ObservableList<String> riga) {
+        return (riga instanceof RigaVista) ? ((RigaVista<T>) riga).getElemento() : null;
+    }
+}
@@ -2,17 +2,27 @@ package biblioteca.controller;
 
 import biblioteca.model.GestioneLibri;
 import biblioteca.model.Libro;
+import biblioteca.model.ModificheModello;
 import biblioteca.persistence.ArchivioFile;
 import biblioteca.view.LibriPanel;
+import biblioteca.view.RigaVista;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
+import javafx.util.Duration;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 /**
  * @brief Controller per la gestione delle operazioni sui libri.
@@ -22,11 +32,38 @@ import java.util.List;
  */
 public class LibriController {
 
+    /** attesa dopo l'ultimo tasto prima di lanciare la ricerca */
+    private static final Duration ATTESA_RICERCA = Duration.millis(250);
+    /** testi delle colonne: [ISBN, Titolo, Autori, Anno, CopieTot, CopieDisp] */
+    private static final List<Function<Libro, String>> COLONNE = List.of(
+            l -> String.valueOf(l.getIsbn()),
+            Libro::getTitolo,
+            l -> joinAutori(l.getAutori()),
+            l -> String.valueOf(l.getAnnoPubblicazione()),
+            l -> String.valueOf(l.getCopieTotali()),
+            l -> String.valueOf(l.getCopieDisponibili()));
+    /** ordine delle righe: per titolo, senza distinzione tra maiuscole e minuscole */
+    private static final Comparator<Libro> ORDINE = Comparator.comparing(Libro::getTitolo, String.CASE_INSENSITIVE_ORDER);
+    /** thread daemon su cui girano le ricerche, così il thread JavaFX non resta mai bloccato su un catalogo grande */
+    private static final ExecutorService RICERCHE = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "ricerca-libri");
+        t.setDaemon(true);
+        return t;
+    });
+
     private final GestioneLibri gestioneLibri;
     private final LibriPanel view;
     private final ArchivioFile archivio;
+    private final AggiornatoreTabella<Libro> aggiornatore;
+    private final ModificheModello.Ascoltatore<Libro> ascoltatore = this::libroModificato;
 
     private boolean inModalitaRicerca = false;
+    /** true mentre i campi vengono riempiti dalla riga selezionata: non è l'utente che sta scrivendo */
+    private boolean compilazioneDaRiga = false;
+    private final PauseTransition attesaRicerca = new PauseTransition(ATTESA_RICERCA);
+    /** incrementata a ogni nuova ricerca: i risultati di una generazione precedente vengono scartati */
+    private final AtomicLong generazioneRicerca = new AtomicLong();
+    private Future<?> ricercaInCorso;
 
     /**
      * @brief Costruttore della classe LibriController.
@@ -42,9 +79,40 @@ public class LibriController {
         this.gestioneLibri = gestioneLibri;
         this.view = view;
         this.archivio = archivio;
+        this.aggiornatore = new AggiornatoreTabella<Libro>(view.getTabellaLibri(), COLONNE, ORDINE);
 
         inizializzaTabella();
         collegaEventi();
+        gestioneLibri.getModifiche().aggiungi(ascoltatore);
+    }
+    /**
+     * @brief Smette di seguire le modifiche del modello; da chiamare quando il pannello non viene più usato.
+     */
+    public void scollega() {
+        gestioneLibri.getModifiche().rimuovi(ascoltatore);
+        annullaRicerca();
+    }
+    /**
+     * @brief Ricalcola la riga di un libro cambiato fuori da questo pannello (ad esempio le copie disponibili
+     * dopo un prestito o una restituzione), lasciando invariate le altre righe e la selezione.
+     * @param libro libro da aggiornare in tabella
+     */
+    public void aggiornaRiga(Libro libro) {
+        if (libro != null) aggiornatore.modificato(libro);
+    }
+    private void libroModificato(ModificheModello.Tipo tipo, Libro libro) {
+        switch (tipo) {
+            case AGGIUNTO:
+                // i risultati di una ricerca non si toccano: il libro potrebbe non corrispondere
+                if (!inModalitaRicerca) aggiornatore.aggiunto(libro);
+                break;
+            case MODIFICATO:
+                aggiornatore.modificato(libro);
+                break;
+            case RIMOSSO:
+                aggiornatore.rimosso(libro);
+                break;
+        }
     }
 
     private void inizializzaTabella() {
@@ -63,9 +131,22 @@ public class LibriController {
                 .addListener((obs, oldSel, newSel) -> {
                     if (newSel != null) {
                         // [ISBN, Titolo, Autori, Anno, CopieTot, CopieDisp]
-                        view.setCampiDaRiga(newSel);
+                        compilazioneDaRiga = true;
+                        try {
+                            view.setCampiDaRiga(newSel);
+                        } finally {
+                            compilazioneDaRiga = false;
+                        }
                     }
                 });
+
+        // in modalità ricerca i risultati seguono quello che si scrive, dopo una breve pausa
+        attesaRicerca.setOnFinished(e -> avviaRicerca());
+        view.setOnRicercaModificata(() -> {
+            if (inModalitaRicerca && !compilazioneDaRiga) {
+                attesaRicerca.playFromStart();
+            }
+        });
     }
 
     
@@ -105,13 +186,12 @@ public class LibriController {
 
         List<String> autori = parseAutori(autoreStr);
 
-        gestioneLibri.inserisciLibro(isbn, titolo, autori, anno, copie);
+        Libro inserito = gestioneLibri.inserisciLibro(isbn, titolo, autori, anno, copie);
 
-        archivio.salvaLibri(gestioneLibri);
+        archivio.registraLibro(gestioneLibri, inserito);
 
         resetFormESelezione();
-        resetModalitaRicerca();
-        aggiornaTabella(gestioneLibri.getLibriOrdinatiPerTitolo());
+        esciDallaRicerca();
     }
 
     
@@ -149,45 +229,39 @@ public class LibriController {
         Long isbn = parseLong(isbnStr, "ISBN");
         if (isbn == null) return;
 
-        Libro libro = trovaLibroPerIsbn(isbn);
+        Libro libro = gestioneLibri.trovaLibro(isbn);
         if (libro == null) {
             mostraErrore("Nessun libro trovato con ISBN " + isbn);
             return;
         }
-        if (!isVuoto(titolo)) {
-            libro.setTitolo(titolo);
-        }
-        if (!isVuoto(autoreStr)) {
-            libro.setAutori(parseAutori(autoreStr));
-        }
+        String nuovoTitolo = isVuoto(titolo) ? libro.getTitolo() : titolo;
+        List<String> nuoviAutori = isVuoto(autoreStr) ? libro.getAutori() : parseAutori(autoreStr);
+        int nuovoAnno = libro.getAnnoPubblicazione();
         if (!isVuoto(annoStr)) {
             Integer anno = parseInt(annoStr, "Anno");
             if (anno == null) return;
-            libro.setAnnoPubblicazione(anno);
+            nuovoAnno = anno;
         }
 
+        int nuoveTot = libro.getCopieTotali();
         if (!isVuoto(copieStr)) {
-            Integer nuoveTot = parseInt(copieStr, "Copie totali");
-            if (nuoveTot == null) return;
-            int vecchieTot  = libro.getCopieTotali();
-            int vecchieDisp = libro.getCopieDisponibili();
-            int inPrestito  = vecchieTot - vecchieDisp;  // copie già in prestito
-            if (nuoveTot < inPrestito) {
-                mostraErrore(
-                        "Non puoi impostare le copie totali a " + nuoveTot +
-                        " perché ci sono già " + inPrestito +
-                        " copie in prestito."
-                );
-                return;
-            }
-            libro.setCopieTotali(nuoveTot);
-            int nuoveDisp = nuoveTot - inPrestito;
-            libro.setCopieDisponibili(nuoveDisp);
+            Integer tot = parseInt(copieStr, "Copie totali");
+            if (tot == null) return;
+            nuoveTot = tot;
         }
-        archivio.salvaLibri(gestioneLibri);
+        // passando da gestioneLibri restano aggiornati anche gli indici di ricerca e la riga in tabella;
+        // le copie disponibili vengono ricalcolate insieme alle totali, senza perdere prestiti concorrenti
+        if (!gestioneLibri.modificaLibro(libro, nuovoTitolo, nuoviAutori, nuovoAnno, nuoveTot)) {
+            mostraErrore(
+                    "Non puoi impostare le copie totali a " + nuoveTot +
+                    " perché ci sono già " + (libro.getCopieTotali() - libro.getCopieDisponibili()) +
+                    " copie in prestito."
+            );
+            return;
+        }
+        archivio.registraLibro(gestioneLibri, libro);
         view.pulisciCampi();
         view.getTabellaLibri().getSelectionModel().clearSelection();
-        aggiornaTabella(gestioneLibri.getLibriOrdinatiPerTitolo());
     }
     private void gestisciElimina() {
         ObservableList<String> selezionata =
@@ -198,10 +272,9 @@ public class LibriController {
         }
         String isbnStr = selezionata.get(0);
         gestioneLibri.eliminaLibro(isbnStr);
-        archivio.salvaLibri(gestioneLibri);
+        archivio.registraEliminazioneLibro(gestioneLibri, isbnStr);
         resetFormESelezione();
-        resetModalitaRicerca();
-        aggiornaTabella(gestioneLibri.getLibriOrdinatiPerTitolo());
+        esciDallaRicerca();
     }
     private void gestisciCercaOIndietro() {
         if (!inModalitaRicerca) {
@@ -216,41 +289,83 @@ public class LibriController {
                         "La ricerca viene effettuata solo per ISBN, Titolo e Autore."
                 );
             }
-            Collection<Libro> trovati =
-                    gestioneLibri.cercaLibri(isbnStr, titolo, autoreStr);
-            aggiornaTabella(trovati);
             inModalitaRicerca = true;
             view.getBottoneCerca().setText("Indietro");
+            avviaRicerca();
         } else {
             resetFormESelezione();
             resetModalitaRicerca();
             aggiornaTabella(gestioneLibri.getLibriOrdinatiPerTitolo());
         }
     }
+    /**
+     * @brief lancia in background la ricerca con i valori attuali dei campi.
+     * Quando termina, i risultati sostituiscono in un colpo solo le righe della tabella, a meno che nel frattempo
+     * sia partita un'altra ricerca o si sia usciti dalla modalità ricerca.
+     */
+    private void avviaRicerca() {
+        attesaRicerca.stop();
+        String isbnStr   = view.getCodiceIsbnInserito();
+        String titolo    = view.getTitoloInserito();
+        String autoreStr = view.getAutoreInserito();
+        long generazione = generazioneRicerca.incrementAndGet();
+        if (ricercaInCorso != null) {
+            ricercaInCorso.cancel(false);
+        }
+        ricercaInCorso = RICERCHE.submit(() -> {
+            if (generazione != generazioneRicerca.get()) return;
+            Collection<Libro> trovati = gestioneLibri.cercaLibri(isbnStr, titolo, autoreStr);
+            if (generazione != generazioneRicerca.get()) return;
+            ObservableList<ObservableList<String>> righe = creaRighe(trovati);
+            Platform.runLater(() -> {
+                if (generazione == generazioneRicerca.get() && inModalitaRicerca) {
+                    view.getTabellaLibri().setItems(righe);
+                }
+            });
+        });
+    }
+    /**
+     * @brief annulla la ricerca in attesa o in corso: i suoi risultati non verranno mostrati.
+     */
+    private void annullaRicerca() {
+        attesaRicerca.stop();
+        generazioneRicerca.incrementAndGet();
+        if (ricercaInCorso != null) {
+            ricercaInCorso.cancel(false);
+            ricercaInCorso = null;
+        }
+    }
     private void aggiornaTabella(Collection<Libro> libriDaMostrare) {
+        annullaRicerca();
+        view.getTabellaLibri().setItems(creaRighe(libriDaMostrare));
+    }
+    private ObservableList<ObservableList<String>> creaRighe(Collection<Libro> libriDaMostrare) {
         List<Libro> lista = new ArrayList<>(libriDaMostrare);
-        lista.sort(Comparator.comparing(
-                Libro::getTitolo,
-                String.CASE_INSENSITIVE_ORDER
-        ));
-        ObservableList<ObservableList<String>> righe = FXCollections.observableArrayList();
+        lista.sort(ORDINE);
+        // le righe leggono i testi dal libro solo quando vengono mostrate
+        List<ObservableList<String>> righe = new ArrayList<>(lista.size());
         for (Libro libro : lista) {
-            ObservableList<String> riga = FXCollections.observableArrayList();
-            riga.add(String.valueOf(libro.getIsbn()));              
-            riga.add(libro.getTitolo());                            
-            riga.add(joinAutori(libro.getAutori()));                
-            riga.add(String.valueOf(libro.getAnnoPubblicazione())); 
-            riga.add(String.valueOf(libro.getCopieTotali()));       
-            riga.add(String.valueOf(libro.getCopieDisponibili()));  
-            righe.add(riga);
+            righe.add(new RigaVista<Libro>(libro, COLONNE));
         }
-        view.getTabellaLibri().setItems(righe);
+        return FXCollections.observableArrayList(righe);
     }
     private void resetFormESelezione() {
         view.pulisciCampi();
         view.getTabellaLibri().getSelectionModel().clearSelection();
     }   
+    /**
+     * @brief esce dalla modalità ricerca dopo un'operazione: solo se si stavano mostrando dei risultati
+     * serve ricaricare l'elenco completo, altrimenti la tabella è già aggiornata riga per riga.
+     */
+    private void esciDallaRicerca() {
+        boolean eraInRicerca = inModalitaRicerca;
+        resetModalitaRicerca();
+        if (eraInRicerca) {
+            aggiornaTabella(gestioneLibri.getLibriOrdinatiPerTitolo());
+        }
+    }
     private void resetModalitaRicerca() {
+        annullaRicerca();
         inModalitaRicerca = false;
         view.getBottoneCerca().setText("Cerca");
     }    
@@ -289,7 +404,7 @@ public class LibriController {
         }
         return lista;
     }   
-    private String joinAutori(List<String> autori) {
+    private static String joinAutori(List<String> autori) {
         if (autori == null || autori.isEmpty()) return "";
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < autori.size(); i++) {
@@ -298,14 +413,6 @@ public class LibriController {
         }
         return sb.toString();
     }    
-    private Libro trovaLibroPerIsbn(Long isbn) {
-        for (Libro l : gestioneLibri.getLibri()) {
-            if (l.getIsbn() == isbn) {
-                return l;
-            }
-        }
-        return null;
-    }   
     private void mostraErrore(String messaggio) {
         Alert alert = new Alert(Alert.AlertType.ERROR, messaggio, ButtonType.OK);
         alert.setHeaderText(null);
@@ -116,7 +116,6 @@ public class MainController {
             libriCtrl,
             utentiCtrl
     );
-    utentiCtrl.setPrestitiController(prestitiCtrl);
     mainView.getBtnMenu().setOnAction(e -> mostraMenu());
     mainView.getBtnLogout().setOnAction(e -> mostraLogin());
 }
@@ -4,10 +4,12 @@ import biblioteca.model.GestionePrestiti;
 import biblioteca.model.GestioneLibri;
 import biblioteca.model.GestioneUtenti;
 import biblioteca.model.Libro;
+import biblioteca.model.ModificheModello;
 import biblioteca.model.Prestito;
 import biblioteca.model.Utente;
 import biblioteca.persistence.ArchivioFile;
 import biblioteca.view.PrestitiPanel;
+import biblioteca.view.RigaVista;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.scene.control.Alert;
@@ -16,9 +18,12 @@ import javafx.scene.control.ButtonType;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
 
 /**
  * @brief Controller responsabile della gestione della logica relativa ai prestiti.
@@ -35,6 +40,40 @@ public class PrestitiController {
     private final ArchivioFile archivio;
     private final LibriController libriController;
     private final UtentiController utentiController;
+    /** ordine delle righe: per data prevista di restituzione, come getPrestitiAttiviPerScadenza */
+    private static final Comparator<Prestito> ORDINE = Comparator.comparing(
+            Prestito::getDataPrevistaRestituzione, Comparator.nullsLast(Comparator.<LocalDate>naturalOrder()));
+    /** data di riferimento per la colonna "in ritardo", aggiornata a ogni ricaricamento completo */
+    private LocalDate oggi = LocalDate.now();
+    /**
+     * prestiti in ritardo a "oggi", presi da getPrestitiInRitardo a ogni ricaricamento completo; i prestiti aggiunti
+     * dopo scadono dopo oggi, quelli restituiti vengono tolti.
+     */
+    private final Set<Prestito> inRitardo = Collections.newSetFromMap(new IdentityHashMap<Prestito, Boolean>());
+    // i prestiti fanno già riferimento alle istanze di gestioneUtenti e gestioneLibri,
+    // e le righe leggono i testi solo quando vengono mostrate
+    private final List<Function<Prestito, String>> colonne = List.of(
+            p -> p.getUtente() != null ? p.getUtente().getMatricola() : "",
+            p -> p.getUtente() != null ? p.getUtente().getNome() : "",
+            p -> p.getUtente() != null ? p.getUtente().getCognome() : "",
+            p -> p.getLibro() != null ? String.valueOf(p.getLibro().getIsbn()) : "",
+            p -> p.getLibro() != null ? p.getLibro().getTitolo() : "",
+            p -> p.getDataInizio().toString(),
+            p -> p.getDataPrevistaRestituzione().toString(),
+            p -> inRitardo.contains(p) ? "Sì" : "No",
+            p -> (p.getUtente() != null && p.getUtente().isInBlacklist()) ? "Sì" : "No");
+    private final AggiornatoreTabella<Prestito> aggiornatore;
+    /** numero di prestiti dello storico caricati a ogni scorrimento */
+    static final int PAGINA_STORICO = 50;
+    private final List<Function<Prestito, String>> colonneStorico = List.of(
+            colonne.get(0), colonne.get(1), colonne.get(2), colonne.get(3), colonne.get(4), colonne.get(5), colonne.get(6),
+            p -> p.getDataRestituzione() != null ? p.getDataRestituzione().toString() : "");
+    private final AggiornatoreTabella<Prestito> aggiornatoreStorico;
+    /** posizione nello storico da cui parte la prossima pagina; -1 finché lo storico non è mai stato mostrato */
+    private int prossimaPaginaStorico = -1;
+    private final ModificheModello.Ascoltatore<Prestito> ascoltatorePrestiti = this::prestitoModificato;
+    private final ModificheModello.Ascoltatore<Utente> ascoltatoreUtenti = this::utenteModificato;
+    private final ModificheModello.Ascoltatore<Libro> ascoltatoreLibri = this::libroModificato;
     /**
      * @brief Costruttore della classe PrestitiController.
      * Inizializza il controller con le dipendenze necessarie, popola la tabella iniziale
@@ -62,18 +101,92 @@ public class PrestitiController {
         this.gestioneUtenti = gestioneUtenti;
         this.libriController = libriController;
         this.utentiController = utentiController;
+        this.aggiornatore = new AggiornatoreTabella<Prestito>(view.getTabellaPrestiti(), colonne, ORDINE);
+        // lo storico ha l'ordine delle restituzioni: le righe si aggiungono a mano, qui serve solo aggiornaSe
+        this.aggiornatoreStorico = new AggiornatoreTabella<Prestito>(view.getTabellaStorico(), colonneStorico, null);
 
         inizializzaTabella();
         collegaEventi();
+        gestionePrestiti.getModifiche().aggiungi(ascoltatorePrestiti);
+        gestioneUtenti.getModifiche().aggiungi(ascoltatoreUtenti);
+        gestioneLibri.getModifiche().aggiungi(ascoltatoreLibri);
+    }
+    /**
+     * @brief Smette di seguire le modifiche del modello; da chiamare quando il pannello non viene più usato.
+     */
+    public void scollega() {
+        gestionePrestiti.getModifiche().rimuovi(ascoltatorePrestiti);
+        gestioneUtenti.getModifiche().rimuovi(ascoltatoreUtenti);
+        gestioneLibri.getModifiche().rimuovi(ascoltatoreLibri);
+    }
+    /**
+     * @brief un prestito aggiunto o restituito cambia solo la sua riga e quelle del libro e dell'utente coinvolti.
+     */
+    private void prestitoModificato(ModificheModello.Tipo tipo, Prestito prestito) {
+        if (tipo == ModificheModello.Tipo.AGGIUNTO) {
+            aggiornatore.aggiunto(prestito);
+        } else if (tipo == ModificheModello.Tipo.RIMOSSO) {
+            inRitardo.remove(prestito);
+            aggiornatore.rimosso(prestito);
+            // il prestito restituito è il più recente dello storico: se lo storico è già caricato va in cima
+            if (prossimaPaginaStorico >= 0) {
+                view.getTabellaStorico().getItems().add(0, new RigaVista<Prestito>(prestito, colonneStorico));
+            }
+        } else {
+            aggiornatore.modificato(prestito);
+        }
+        if (libriController != null) libriController.aggiornaRiga(prestito.getLibro());
+        if (utentiController != null) utentiController.aggiornaRiga(prestito.getUtente());
     }
     private void inizializzaTabella() {
-        aggiornaTabella(gestionePrestiti.getPrestitiAttivi());
+        aggiornaTabella();
     }
     private void collegaEventi() {
         view.getBottoneNuovoPrestito().setOnAction(e -> gestisciNuovoPrestito());
         view.getBottoneRestituzione().setOnAction(e -> gestisciRestituzione());
         view.getBottoneBlacklist().setOnAction(e -> gestisciBlacklist());
+        view.setOnStoricoMostrato(this::mostraStorico);
+        view.setOnFineStoricoRaggiunta(this::caricaPaginaStorico);
     } 
+    /**
+     * @brief alla prima apertura dello storico carica la pagina con le restituzioni più recenti;
+     * le successive arrivano scorrendo la tabella.
+     */
+    private void mostraStorico() {
+        if (prossimaPaginaStorico < 0) {
+            prossimaPaginaStorico = gestionePrestiti.getNumeroPrestitiStorico();
+            view.getTabellaStorico().getItems().clear();
+            caricaPaginaStorico();
+        }
+    }
+    /**
+     * @brief aggiunge in fondo alla tabella la pagina successiva dello storico, se ne restano.
+     * Ogni pagina costa O(PAGINA_STORICO): lo storico completo non viene mai copiato.
+     */
+    private void caricaPaginaStorico() {
+        if (prossimaPaginaStorico <= 0) return;
+        List<Prestito> pagina = gestionePrestiti.getPaginaStorico(prossimaPaginaStorico, PAGINA_STORICO);
+        prossimaPaginaStorico -= pagina.size();
+        List<ObservableList<String>> righe = new ArrayList<>(pagina.size());
+        for (Prestito p : pagina) {
+            righe.add(new RigaVista<Prestito>(p, colonneStorico));
+        }
+        view.getTabellaStorico().getItems().addAll(righe);
+    }
+    /** @brief nome, cognome o blacklist di un utente compaiono nelle righe dei suoi prestiti. */
+    private void utenteModificato(ModificheModello.Tipo tipo, Utente utente) {
+        if (tipo == ModificheModello.Tipo.MODIFICATO) {
+            aggiornatore.aggiornaSe(p -> p.getUtente() == utente);
+            aggiornatoreStorico.aggiornaSe(p -> p.getUtente() == utente);
+        }
+    }
+    /** @brief il titolo di un libro compare nelle righe dei suoi prestiti. */
+    private void libroModificato(ModificheModello.Tipo tipo, Libro libro) {
+        if (tipo == ModificheModello.Tipo.MODIFICATO) {
+            aggiornatore.aggiornaSe(p -> p.getLibro() == libro);
+            aggiornatoreStorico.aggiornaSe(p -> p.getLibro() == libro);
+        }
+    }
     private void gestisciNuovoPrestito() {
         String matricolaStr = view.getMatricolaInserita();
         String isbnStr = view.getIsbnInserito();
@@ -105,12 +218,8 @@ public class PrestitiController {
             mostraErrore("L'utente è in blacklist e non può effettuare nuovi prestiti.");
             return;
         }
-        int attivi = 0;
-        for (Prestito p : gestionePrestiti.getPrestitiAttivi()) {
-            if (p.getUtente() != null && matricola.equals(p.getUtente().getMatricola())) attivi++;
-        }
-        if (attivi >= 3) {
-            mostraErrore("Impossibile registrare il prestito: l'utente ha già 3 prestiti attivi.");
+        if (gestionePrestiti.contaPrestitiAttivi(utente) >= Utente.MAX_PRESTITI) {
+            mostraErrore("Impossibile registrare il prestito: l'utente ha già " + Utente.MAX_PRESTITI + " prestiti attivi.");
             return;
         }
         Libro libro = gestioneLibri.trovaLibro(isbn);
@@ -118,21 +227,16 @@ public class PrestitiController {
             mostraErrore("Nessun libro trovato con ISBN " + isbn);
             return;
         }
+        Prestito prestito;
         try {
-            gestionePrestiti.registraPrestito(utente, libro, LocalDate.now(), dataPrevista);
+            prestito = gestionePrestiti.registraPrestito(utente, libro, LocalDate.now(), dataPrevista);
         } catch (Exception ex) {
             mostraErrore(ex.getMessage());
             return;
         }
-        archivio.salvaPrestiti(gestionePrestiti);
-        archivio.salvaLibri(gestioneLibri);
-        archivio.salvaUtenti(gestioneUtenti);
+        archivio.registraPrestito(gestionePrestiti, gestioneLibri, gestioneUtenti, prestito);
 
         view.pulisciCampi();
-        aggiornaTabella(gestionePrestiti.getPrestitiAttivi());
-
-        if (libriController != null) libriController.aggiornaDaModel();
-        if (utentiController != null) utentiController.aggiornaDaModel();
     }   
     private void gestisciRestituzione() {
         ObservableList<String> rigaSel = view.getTabellaPrestiti().getSelectionModel().getSelectedItem();
@@ -155,12 +259,7 @@ public class PrestitiController {
             return;
         }
         gestionePrestiti.registraRestituzione(daRestituire, null);
-        archivio.salvaPrestiti(gestionePrestiti);
-        archivio.salvaLibri(gestioneLibri);
-        archivio.salvaUtenti(gestioneUtenti);
-        aggiornaTabella(gestionePrestiti.getPrestitiAttivi());
-        if (libriController != null) libriController.aggiornaDaModel();
-        if (utentiController != null) utentiController.aggiornaDaModel();
+        archivio.registraRestituzione(gestionePrestiti, gestioneLibri, gestioneUtenti, daRestituire);
     } 
     private void gestisciBlacklist() {
         ObservableList<String> rigaSel = view.getTabellaPrestiti().getSelectionModel().getSelectedItem();
@@ -174,50 +273,32 @@ public class PrestitiController {
             mostraErrore("Utente non trovato.");
             return;
         }
-        utente.setInBlacklist(true);
-        archivio.salvaUtenti(gestioneUtenti);
+        if (!haPrestitiInRitardo(utente) && !conferma("L'utente " + utente.getNome() + " " + utente.getCognome()
+                + " non ha prestiti in ritardo. Inserirlo comunque in blacklist?")) {
+            return;
+        }
+        // passando da gestioneUtenti si aggiornano le righe dell'utente in entrambe le tabelle
+        gestioneUtenti.setBlacklist(utente, true);
+        archivio.registraUtente(gestioneUtenti, utente);
         mostraInfo("Utente " + utente.getNome() + " " + utente.getCognome() + " inserito in blacklist.");
-        if (utentiController != null) utentiController.aggiornaDaModel();
-        aggiornaTabella(gestionePrestiti.getPrestitiAttivi());
     }  
-    private void aggiornaTabella(Collection<Prestito> prestitiDaMostrare) {
-        List<Prestito> lista = new ArrayList<>(prestitiDaMostrare);
-        lista.sort(Comparator.comparing(Prestito::getDataPrevistaRestituzione));
-        ObservableList<ObservableList<String>> righe = FXCollections.observableArrayList();
+    /** @brief O(k) con k prestiti in ritardo, senza scorrere tutti i prestiti attivi. */
+    private boolean haPrestitiInRitardo(Utente utente) {
+        for (Prestito p : inRitardo) {
+            if (p.getUtente() == utente) return true;
+        }
+        return false;
+    }
+    private void aggiornaTabella() {
+        List<Prestito> lista = gestionePrestiti.getPrestitiAttiviPerScadenza();
+        oggi = LocalDate.now();
+        inRitardo.clear();
+        inRitardo.addAll(gestionePrestiti.getPrestitiInRitardo(oggi));
+        List<ObservableList<String>> righe = new ArrayList<>(lista.size());
         for (Prestito p : lista) {
-            Utente uPrestito = p.getUtente();
-            Utente u = null;
-            if (uPrestito != null && uPrestito.getMatricola() != null) {
-                u = gestioneUtenti.trovaUtente(uPrestito.getMatricola());
-            }
-            if (u == null) u = uPrestito;
-
-            Libro lPrestito = p.getLibro();
-            Libro l = null;
-            if (lPrestito != null) {
-                l = gestioneLibri.trovaLibro(lPrestito.getIsbn());
-            }
-            if (l == null) l = lPrestito;
-
-            ObservableList<String> riga = FXCollections.observableArrayList();
-            riga.add(u != null ? u.getMatricola() : "");
-            riga.add(u != null ? u.getNome() : "");
-            riga.add(u != null ? u.getCognome() : "");
-            riga.add(l != null ? String.valueOf(l.getIsbn()) : "");
-            riga.add(l != null ? l.getTitolo() : "");
-            riga.add(p.getDataInizio().toString());
-            riga.add(p.getDataPrevistaRestituzione().toString());
-
-            boolean inRitardo = LocalDate.now().isAfter(p.getDataPrevistaRestituzione());
-            riga.add(inRitardo ? "Sì" : "No");
-
-            boolean inBlacklist = (u != null && u.isInBlacklist());
-            riga.add(inBlacklist ? "Sì" : "No");
-
-            righe.add(riga);
+            righe.add(new RigaVista<Prestito>(p, colonne));
         }
-
-        view.getTabellaPrestiti().setItems(righe);
+        view.getTabellaPrestiti().setItems(FXCollections.observableArrayList(righe));
     }  
     private boolean isVuoto(String s) {
         return s == null || s.trim().isEmpty();
@@ -244,16 +325,31 @@ public class PrestitiController {
         alert.setTitle("Errore");
         alert.showAndWait();
     }  
+    private boolean conferma(String messaggio) {
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION, messaggio, ButtonType.YES, ButtonType.NO);
+        alert.setHeaderText(null);
+        alert.setTitle("Conferma");
+        return alert.showAndWait().orElse(ButtonType.NO) == ButtonType.YES;
+    }
     private void mostraInfo(String messaggio) {
         Alert alert = new Alert(Alert.AlertType.INFORMATION, messaggio, ButtonType.OK);
         alert.setHeaderText(null);
         alert.setTitle("Informazione");
         alert.showAndWait();
     }
+    /**
+     * @brief Ricarica la tabella solo se è cambiato il giorno dall'ultimo caricamento, cioè se la colonna
+     * "In ritardo" potrebbe non essere più corretta; tutto il resto è già aggiornato riga per riga.
+     */
+    public void aggiornaRitardi() {
+        if (!LocalDate.now().equals(oggi)) {
+            aggiornaTabella();
+        }
+    }
     /**
      * @brief Aggiorna la view recuperando i dati più recenti dal modello.
      */
     public void aggiornaDaModel() {
-        aggiornaTabella(gestionePrestiti.getPrestitiAttivi());
+        aggiornaTabella();
     }
 }
\ No newline at end of file
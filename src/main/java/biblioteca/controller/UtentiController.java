@@ -2,8 +2,10 @@ package biblioteca.controller;
 
 import biblioteca.model.GestioneUtenti;
 import biblioteca.model.GestionePrestiti;
+import biblioteca.model.ModificheModello;
 import biblioteca.model.Utente;
 import biblioteca.persistence.ArchivioFile;
+import biblioteca.view.RigaVista;
 import biblioteca.view.UtentiPanel;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -14,6 +16,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * @brief Controller per la gestione degli utenti.
@@ -28,8 +31,15 @@ public class UtentiController {
     private final GestionePrestiti gestionePrestiti;
     private final UtentiPanel view;
     private final ArchivioFile archivio;
+    /** testi delle colonne: [Matricola, Nome, Cognome, Email, Prestiti attivi, Blacklist] */
+    private final List<Function<Utente, String>> colonne;
+    private final AggiornatoreTabella<Utente> aggiornatore;
+    private final ModificheModello.Ascoltatore<Utente> ascoltatore = this::utenteModificato;
 
-    private PrestitiController prestitiController;
+    /** ordine delle righe: per cognome e poi per nome, senza distinzione tra maiuscole e minuscole */
+    private static final Comparator<Utente> ORDINE = Comparator
+            .comparing((Utente u) -> safeLower(u.getCognome()))
+            .thenComparing(u -> safeLower(u.getNome()));
 
     private boolean inModalitaRicerca = false;
 
@@ -52,20 +62,47 @@ public class UtentiController {
         this.gestionePrestiti = gestionePrestiti;
         this.view = view;
         this.archivio = archivio;
+        this.colonne = List.of(
+                Utente::getMatricola,
+                Utente::getNome,
+                Utente::getCognome,
+                Utente::getEmail,
+                u -> String.valueOf(gestionePrestiti != null ? gestionePrestiti.contaPrestitiAttivi(u) : 0),
+                u -> u.isInBlacklist() ? "Sì" : "No");
+        this.aggiornatore = new AggiornatoreTabella<Utente>(view.getTabellaUtenti(), colonne, ORDINE);
 
         inizializzaTabella();
         collegaEventi();
+        gestioneUtenti.getModifiche().aggiungi(ascoltatore);
     }
     /**
-     * @brief Imposta il controller dei prestiti.
-     * 
-     * Necessario per notificare aggiornamenti alla view prestiti quando lo stato di un utente cambia.
-     * 
-     * @param prestitiController Il controller della gestione prestiti.
+     * @brief Smette di seguire le modifiche del modello; da chiamare quando il pannello non viene più usato.
      */
-    public void setPrestitiController(PrestitiController prestitiController) {
-        this.prestitiController = prestitiController;
-    }   
+    public void scollega() {
+        gestioneUtenti.getModifiche().rimuovi(ascoltatore);
+    }
+    /**
+     * @brief Ricalcola la riga di un utente cambiato fuori da questo pannello (ad esempio il numero di prestiti
+     * attivi dopo un prestito o una restituzione), lasciando invariate le altre righe e la selezione.
+     * @param utente utente da aggiornare in tabella
+     */
+    public void aggiornaRiga(Utente utente) {
+        if (utente != null) aggiornatore.modificato(utente);
+    }
+    private void utenteModificato(ModificheModello.Tipo tipo, Utente utente) {
+        switch (tipo) {
+            case AGGIUNTO:
+                // i risultati di una ricerca non si toccano: l'utente potrebbe non corrispondere
+                if (!inModalitaRicerca) aggiornatore.aggiunto(utente);
+                break;
+            case MODIFICATO:
+                aggiornatore.modificato(utente);
+                break;
+            case RIMOSSO:
+                aggiornatore.rimosso(utente);
+                break;
+        }
+    }
     private void inizializzaTabella() {
         aggiornaTabella(gestioneUtenti.getUtenti());
     }
@@ -118,11 +155,10 @@ public class UtentiController {
         Utente utente = new Utente(matricola, nome, cognome, email);
         gestioneUtenti.inserisciUtente(utente);
 
-        archivio.salvaUtenti(gestioneUtenti);
+        archivio.registraUtente(gestioneUtenti, utente);
 
         resetFormESelezione();
-        resetModalitaRicerca();
-        aggiornaTabella(gestioneUtenti.getUtenti());
+        esciDallaRicerca();
     }   
     private void gestisciModifica() {
         String matricola = view.getMatricolaInserita();
@@ -151,8 +187,11 @@ public class UtentiController {
         String cognome = view.getCognomeInserito();
         String email   = view.getEmailInserita();
 
-        if (!isVuoto(nome))    utente.setNome(nome);
-        if (!isVuoto(cognome)) utente.setCognome(cognome);
+        Utente modificato = new Utente(matricola,
+                isVuoto(nome) ? utente.getNome() : nome,
+                isVuoto(cognome) ? utente.getCognome() : cognome,
+                utente.getEmail());
+        modificato.setInBlacklist(utente.isInBlacklist());
 
         if (!isVuoto(email)) {
             email = email.trim().toLowerCase();
@@ -170,14 +209,14 @@ public class UtentiController {
                 return;
             }
 
-            utente.setEmail(email);
+            modificato.setEmail(email);
         }
+        gestioneUtenti.modificaUtente(modificato);
 
-        archivio.salvaUtenti(gestioneUtenti);
+        archivio.registraUtente(gestioneUtenti, utente);
 
         resetFormESelezione();
-        resetModalitaRicerca();
-        aggiornaTabella(gestioneUtenti.getUtenti());
+        esciDallaRicerca();
     }
     private void gestisciElimina() {
         String matricola = view.getMatricolaInserita();
@@ -196,11 +235,10 @@ public class UtentiController {
         matricola = matricola.trim();
         gestioneUtenti.eliminaUtente(matricola);
 
-        archivio.salvaUtenti(gestioneUtenti);
+        archivio.registraEliminazioneUtente(gestioneUtenti, matricola);
 
         resetFormESelezione();
-        resetModalitaRicerca();
-        aggiornaTabella(gestioneUtenti.getUtenti());
+        esciDallaRicerca();
     } 
     private void gestisciToggleBlacklist() {
         ObservableList<String> selezionato =
@@ -222,15 +260,11 @@ public class UtentiController {
         boolean nuovoStato = !utente.isInBlacklist();
         gestioneUtenti.setBlacklist(utente, nuovoStato);
 
-        archivio.salvaUtenti(gestioneUtenti);
+        archivio.registraUtente(gestioneUtenti, utente);
 
+        // la riga dell'utente (e quelle dei suoi prestiti) sono già aggiornate dagli ascoltatori del modello
         resetFormESelezione();
-        resetModalitaRicerca();
-        aggiornaTabella(gestioneUtenti.getUtenti());
-
-        if (prestitiController != null) {
-            prestitiController.aggiornaDaModel();
-        }
+        esciDallaRicerca();
     } 
     private void gestisciCercaOIndietro() {
         if (!inModalitaRicerca) {
@@ -262,35 +296,27 @@ public class UtentiController {
     private void aggiornaTabella(Collection<Utente> utentiDaMostrare) {
         List<Utente> lista = new ArrayList<>(utentiDaMostrare);
 
-        lista.sort(
-                Comparator
-                        .comparing((Utente u) -> safeLower(u.getCognome()))
-                        .thenComparing(u -> safeLower(u.getNome()))
-        );
-
-        ObservableList<ObservableList<String>> righe = FXCollections.observableArrayList();
+        lista.sort(ORDINE);
 
+        // le righe leggono i testi dall'utente solo quando vengono mostrate
+        List<ObservableList<String>> righe = new ArrayList<>(lista.size());
         for (Utente u : lista) {
-            ObservableList<String> riga = FXCollections.observableArrayList();
-
-            riga.add(u.getMatricola());
-            riga.add(u.getNome());
-            riga.add(u.getCognome());
-            riga.add(u.getEmail());
-
-            int attivi = (gestionePrestiti != null)
-                    ? gestionePrestiti.contaPrestitiAttivi(u)
-                    : 0;
-
-            riga.add(String.valueOf(attivi));  // Prestiti attivi
-            riga.add(u.isInBlacklist() ? "Sì" : "No");
-
-            righe.add(riga);
+            righe.add(new RigaVista<Utente>(u, colonne));
         }
-
-        view.getTabellaUtenti().setItems(righe);
+        view.getTabellaUtenti().setItems(FXCollections.observableArrayList(righe));
     } 
-    private String safeLower(String s) {
+    /**
+     * @brief esce dalla modalità ricerca dopo un'operazione: solo se si stavano mostrando dei risultati
+     * serve ricaricare l'elenco completo, altrimenti la tabella è già aggiornata riga per riga.
+     */
+    private void esciDallaRicerca() {
+        boolean eraInRicerca = inModalitaRicerca;
+        resetModalitaRicerca();
+        if (eraInRicerca) {
+            aggiornaTabella(gestioneUtenti.getUtenti());
+        }
+    }
+    private static String safeLower(String s) {
         return (s == null) ? "" : s.toLowerCase();
     }
     private boolean isVuoto(String s) {
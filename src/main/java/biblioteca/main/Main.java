@@ -4,6 +4,7 @@ import biblioteca.controller.LibriController;
 import biblioteca.controller.PrestitiController;
 import biblioteca.controller.UtentiController;
 import biblioteca.model.Autenticazione;
+import biblioteca.model.DatiBiblioteca;
 import biblioteca.model.GestioneLibri;
 import biblioteca.model.GestionePrestiti;
 import biblioteca.model.GestioneUtenti;
@@ -12,6 +13,8 @@ import biblioteca.view.LoginView;
 import biblioteca.view.MainFrame;
 import biblioteca.view.MenuView;
 import javafx.application.Application;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.PasswordField;
@@ -19,11 +22,16 @@ import javafx.scene.control.TextField;
 import javafx.scene.image.Image;
 import javafx.stage.Stage;
 import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 /**
  * @brief Classe principale dell'applicazione.
  * Questa classe estende Application di JavaFX e gestisce il ciclo di vita dell'applicazione.
  * Si occupa di caricare i dati all'avvio, inizializzare i modelli e gestire la navigazione
  * tra le diverse scene (Login, Menu, Schermata Principale).
+ * All'avvio si legge subito solo login.dat, così il login è utilizzabile immediatamente; catalogo, utenti e
+ * prestiti vengono caricati in background e il menu ne mostra l'avanzamento finché non sono pronti.
  */
 public class Main extends Application {
     private GestioneLibri gestioneLibri;
@@ -31,6 +39,21 @@ public class Main extends Application {
     private GestionePrestiti gestionePrestiti;
     private Autenticazione bibliotecario;
     private ArchivioFile archivio;
+    /**
+     * schermata principale e relativi controller: creati alla prima apertura e poi riusati, le tabelle
+     * restano aggiornate tramite gli ascoltatori del modello
+     */
+    private MainFrame mainView;
+    private Scene mainScene;
+    /** scena del menu, anch'essa creata una sola volta */
+    private MenuView menuView;
+    private Scene menuScene;
+    private static final String ERRORE_CARICAMENTO = "Errore nel caricamento dell'archivio (guarda console).";
+    /** caricamento in background di libri, utenti e prestiti */
+    private Task<DatiBiblioteca> caricamento;
+    private LibriController libriCtrl;
+    private UtentiController utentiCtrl;
+    private PrestitiController prestitiCtrl;
     /**
      * @brief Metodo di avvio dell'applicazione JavaFX.
      *  Inizializza la persistenza, carica i dati dai file, imposta l'icona dell'applicazione
@@ -40,11 +63,9 @@ public class Main extends Application {
     @Override
     public void start(Stage primaryStage) {
         archivio = new ArchivioFile(".");
-        gestioneLibri = archivio.caricaLibri();
-        gestioneUtenti = archivio.caricaUtenti();
-        gestionePrestiti = archivio.caricaPrestiti();
+        // per il login basta login.dat: il resto dell'archivio arriva in background
         bibliotecario = archivio.caricaAutenticazione();
-        if (gestioneUtenti != null && gestionePrestiti != null) gestioneUtenti.setGestionePrestiti(gestionePrestiti);
+        avviaCaricamento();
         try {
             Image ico = new Image(getClass().getResourceAsStream("/biblioteca/view/img/logo.png"));
             primaryStage.getIcons().add(ico);
@@ -55,6 +76,58 @@ public class Main extends Application {
         mostraLogin(primaryStage);
         primaryStage.show();
     }
+    /**
+     * @brief avvia su un thread in background la lettura di libri, utenti e prestiti e la riapplicazione del giornale.
+     */
+    private void avviaCaricamento() {
+        caricamento = new Task<DatiBiblioteca>() {
+            @Override
+            protected DatiBiblioteca call() {
+                // i file sono indipendenti: si leggono in parallelo, uno per thread
+                int thread = Math.min(4, Runtime.getRuntime().availableProcessors());
+                ExecutorService esecutore = Executors.newFixedThreadPool(thread, r -> {
+                    Thread t = new Thread(r, "lettura-archivio");
+                    t.setDaemon(true);
+                    return t;
+                });
+                AtomicInteger fileLetti = new AtomicInteger();
+                try {
+                    updateProgress(0, 5);
+                    updateMessage("Caricamento di catalogo, utenti e prestiti...");
+                    DatiBiblioteca dati = archivio.caricaTuttoInParallelo(esecutore,
+                            f -> updateProgress(fileLetti.incrementAndGet(), 5)).join();
+                    updateMessage("Applicazione delle ultime modifiche...");
+                    archivio.attivaGiornale(dati.gestioneLibri, dati.gestioneUtenti, dati.gestionePrestiti);
+                    updateProgress(5, 5);
+                    // le credenziali restano quelle lette all'avvio, che il login potrebbe aver già aggiornato
+                    return new DatiBiblioteca(dati.gestioneLibri, dati.gestioneUtenti, dati.gestionePrestiti, bibliotecario);
+                } finally {
+                    esecutore.shutdown();
+                }
+            }
+        };
+        caricamento.setOnSucceeded(e -> datiCaricati(caricamento.getValue()));
+        caricamento.setOnFailed(e -> {
+            caricamento.getException().printStackTrace();
+            if (menuView != null) menuView.caricamentoFallito(ERRORE_CARICAMENTO);
+        });
+        Thread t = new Thread(caricamento, "caricamento-archivio");
+        t.setDaemon(true);
+        t.start();
+    }
+    /**
+     * @brief chiamato sul thread JavaFX quando l'archivio è stato caricato: rende disponibili i dati al menu.
+     */
+    private void datiCaricati(DatiBiblioteca dati) {
+        gestioneLibri = dati.gestioneLibri;
+        gestioneUtenti = dati.gestioneUtenti;
+        gestionePrestiti = dati.gestionePrestiti;
+        archivio.abilitaSalvataggioAsincrono();
+        if (menuView != null) menuView.caricamentoCompletato();
+    }
+    private boolean isArchivioCaricato() {
+        return gestioneLibri != null;
+    }
     private void applicaTema(Scene scene) {
         try {
             URL css = Main.class.getResource("/biblioteca/view/file.css");
@@ -154,17 +227,25 @@ public class Main extends Application {
     }
     private void mostraMenu(Stage stage) {
         try {
-            MenuView menu = new MenuView("Bibliotecario");
-            Scene menuScene = new Scene(menu.getRoot(), 500, 400);
-            applicaTema(menuScene);
+            if (menuScene == null) {
+                MenuView menu = new MenuView("Bibliotecario");
+                Scene scena = new Scene(menu.getRoot(), 500, 400);
+                applicaTema(scena);
+                menu.setOnGestioneLibri(() -> mostraMain(stage, 0));
+                menu.setOnGestioneUtenti(() -> mostraMain(stage, 1));
+                menu.setOnGestionePrestiti(() -> mostraMain(stage, 2));
+                menu.setOnLogout(() -> esci(stage));
+                if (!isArchivioCaricato()) {
+                    menu.mostraCaricamento(caricamento.progressProperty(), caricamento.messageProperty());
+                    if (caricamento.getState() == Worker.State.FAILED) menu.caricamentoFallito(ERRORE_CARICAMENTO);
+                }
+                menuView = menu;
+                menuScene = scena;
+            }
             stage.setTitle("Menu Biblioteca");
             stage.setScene(menuScene);
             
             stage.centerOnScreen();
-            menu.setOnGestioneLibri(() -> mostraMain(stage, 0));
-            menu.setOnGestioneUtenti(() -> mostraMain(stage, 1));
-            menu.setOnGestionePrestiti(() -> mostraMain(stage, 2));
-            menu.setOnLogout(() -> mostraLogin(stage));
         } catch (Exception ex) {
             ex.printStackTrace();
             mostraLogin(stage);
@@ -172,26 +253,67 @@ public class Main extends Application {
     }
     private void mostraMain(Stage stage, int tabIndex) {
         try {
-            MainFrame mainView = new MainFrame(tabIndex);
-            Scene mainScene = new Scene(mainView.getRoot(), 1000, 600);
-            applicaTema(mainScene);
+            if (mainView == null) {
+                creaMain(stage, tabIndex);
+            } else {
+                mainView.selezionaTab(tabIndex);
+                prestitiCtrl.aggiornaRitardi();
+            }
             stage.setTitle("Biblioteca universitaria");
             stage.setScene(mainScene);
             stage.setResizable(true);
             stage.setMaximized(true);     
             stage.setFullScreen(false);    
             stage.centerOnScreen();
-            LibriController libriCtrl = new LibriController(gestioneLibri, mainView.getLibriView(), archivio);
-            UtentiController utentiCtrl = new UtentiController(gestioneUtenti, gestionePrestiti, mainView.getUtentiView(), archivio);
-            PrestitiController prestitiCtrl = new PrestitiController(gestionePrestiti, mainView.getPrestitiView(), archivio, gestioneLibri, gestioneUtenti, libriCtrl, utentiCtrl);
-            mainView.setOnTabPrestitiSelected(prestitiCtrl::aggiornaDaModel);
-            mainView.getBtnMenu().setOnAction(e -> mostraMenu(stage));
-            mainView.getBtnLogout().setOnAction(e -> mostraLogin(stage));
         } catch (Exception ex) {
             ex.printStackTrace();
             mostraMenu(stage);
         }
     }
+    /**
+     * @brief costruisce una sola volta la schermata principale e i controller, che riempiono le tabelle.
+     */
+    private void creaMain(Stage stage, int tabIndex) {
+        MainFrame vista = new MainFrame(tabIndex);
+        Scene scena = new Scene(vista.getRoot(), 1000, 600);
+        applicaTema(scena);
+        libriCtrl = new LibriController(gestioneLibri, vista.getLibriView(), archivio);
+        utentiCtrl = new UtentiController(gestioneUtenti, gestionePrestiti, vista.getUtentiView(), archivio);
+        prestitiCtrl = new PrestitiController(gestionePrestiti, vista.getPrestitiView(), archivio, gestioneLibri, gestioneUtenti, libriCtrl, utentiCtrl);
+        vista.setOnTabPrestitiSelected(prestitiCtrl::aggiornaRitardi);
+        vista.getBtnMenu().setOnAction(e -> mostraMenu(stage));
+        vista.getBtnLogout().setOnAction(e -> esci(stage));
+        mainView = vista;
+        mainScene = scena;
+    }
+    /**
+     * @brief toglie dal modello gli ascoltatori dei controller, alla chiusura dell'applicazione.
+     */
+    private void scollegaController() {
+        if (libriCtrl != null) libriCtrl.scollega();
+        if (utentiCtrl != null) utentiCtrl.scollega();
+        if (prestitiCtrl != null) prestitiCtrl.scollega();
+        libriCtrl = null;
+        utentiCtrl = null;
+        prestitiCtrl = null;
+        mainView = null;
+        mainScene = null;
+    }
+    private void esci(Stage stage) {
+        if (archivio != null && isArchivioCaricato()) {
+            archivio.compatta();
+            archivio.flush();
+        }
+        mostraLogin(stage);
+    }
+    /**
+     * @brief Chiamato alla chiusura dell'applicazione: compatta il giornale e completa i salvataggi in sospeso.
+     */
+    @Override
+    public void stop() {
+        scollegaController();
+        if (archivio != null) archivio.chiudi();
+    }
     /**
      * @brief Metodo main standard di Java.
      * Lancia l'applicazione .
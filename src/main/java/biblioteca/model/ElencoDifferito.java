@@ -0,0 +1,26 @@
+package biblioteca.model;
+
+import java.util.List;
+/**
+ * @brief Elementi letti da un file e decodificati solo quando servono.
+ * Gli elementi sono nell'ordine naturale della collezione (isbn per i libri, matricola per gli utenti), così una
+ * ricerca per chiave decodifica solo gli elementi che confronta. Ogni elemento viene creato una sola volta:
+ * le chiamate successive, anche da thread diversi, restituiscono la stessa istanza.
+ * @param <T> tipo degli elementi
+ */
+public interface ElencoDifferito<T> {
+    /**
+     * @brief numero di elementi, noto senza decodificarli.
+     */
+    int dimensione();
+    /**
+     * @brief elemento in posizione i, decodificato al primo accesso.
+     * @throws java.io.UncheckedIOException se il record non è leggibile
+     */
+    T get(int i);
+    /**
+     * @brief tutti gli elementi in ordine, decodificando quelli che mancano; prima verifica l'integrità del file.
+     * @throws java.io.UncheckedIOException se il file risulta danneggiato
+     */
+    List<T> tutti();
+}
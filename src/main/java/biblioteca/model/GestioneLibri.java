@@ -1,33 +1,87 @@
 package biblioteca.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * @brief Gestore dei libri della biblioteca.
- * Incapsula il TreeSet<Libro2> .
+ * Incapsula il TreeSet<Libro> del catalogo, con un IndiceIsbn per le ricerche per codice e due IndiceTrigrammi
+ * per quelle su titoli e autori, tutti costruiti al primo uso.
+ * Caricata da file con un ElencoDifferito, decodifica i libri solo quando servono: trovaLibro cerca per isbn tra
+ * quelli ancora da decodificare, il primo accesso all'intero catalogo (o una modifica) li decodifica tutti.
+ * Può essere usato da più thread (banchi di prestito, ricerche e salvataggi in background): le modifiche prendono
+ * il lock in scrittura, le ricerche per ISBN provano prima una lettura ottimistica senza bloccare e le altre
+ * letture prendono il lock condiviso. Gli insiemi restituiti sono copie, quindi si possono scorrere senza lock.
+ * Gli ascoltatori vengono avvisati dopo aver rilasciato il lock, così possono richiamare la gestione.
  */
 public class GestioneLibri implements Serializable {
     private static final long serialVersionUID = 1L;
     private final TreeSet<Libro> libri;
+    /** libri del file non ancora aggiunti a libri; null quando il catalogo è tutto in memoria. */
+    private transient ElencoDifferito<Libro> daCaricare;
+    /** indice isbn -> libro, non serializzato: viene ricostruito al primo accesso dopo la deserializzazione. */
+    private transient IndiceIsbn indice;
+    /** indici a trigrammi su titoli e autori per la ricerca di sottostringhe, anch'essi ricostruiti al primo uso. */
+    private transient IndiceTrigrammi<Libro> titoli;
+    private transient IndiceTrigrammi<Libro> autori;
+    /** ascoltatori delle modifiche, non serializzati. */
+    private transient ModificheModello<Libro> modifiche = new ModificheModello<Libro>();
+    /** protegge libri e indici; non è rientrante, quindi i metodi pubblici non si richiamano tra loro col lock preso. */
+    private transient StampedLock lock = new StampedLock();
     /**
      * @brief costruttore per la gestione dei libri
-     * @param libri è un treeset che contieme l'insieme di libri ordinati.
+     * @param libri è un treeset che contieme l'insieme di libri ordinati; viene copiato (in tempo lineare, è già
+     * ordinato), così le modifiche fatte dopo sull'insieme passato non toccano la gestione né i suoi indici.
      */
     public GestioneLibri(TreeSet<Libro> libri) {
-        this.libri = (libri != null) ? libri : new TreeSet<Libro>();}
+        this.libri = (libri != null) ? new TreeSet<Libro>(libri) : new TreeSet<Libro>();}
+    /**
+     * @brief crea un catalogo letto da file, i cui libri vengono decodificati solo quando servono.
+     * @param daCaricare libri ordinati per ISBN
+     * @return gestione ancora senza libri decodificati
+     */
+    public static GestioneLibri daFile(ElencoDifferito<Libro> daCaricare) {
+        GestioneLibri gestione = new GestioneLibri();
+        gestione.daCaricare = daCaricare;
+        return gestione;
+    }
     /**
      * @brief Costruttore senza paramteri di ingresso: crea un nuovo TreeSet.
      */
     public GestioneLibri() {
         this(new TreeSet<Libro>());}
-    /** @brief Ritorna l’insieme dei libri (ordinati per ISBN). */
+    /**
+     * @brief restituisce gli ascoltatori delle modifiche ai libri.
+     * @return elenco degli ascoltatori a cui aggiungerne o toglierne
+     */
+    public ModificheModello<Libro> getModifiche() {
+        return modifiche;
+    }
+    /**
+     * @brief Ritorna una copia dell’insieme dei libri (ordinati per ISBN), presa in modo consistente.
+     * Modificare la copia non cambia la gestione: per aggiungere libri si usano inserisciLibro o aggiungiLibro.
+     */
     public TreeSet<Libro> getLibri() {
-        return libri;
+        long stamp = leggiCaricati();
+        try {
+            return new TreeSet<Libro>(libri);
+        } finally {
+            lock.unlockRead(stamp);
+        }
     }
     /** @brief Restituisce i libri ordinati per titolo (A-Z, case insensitive). */
     public List<Libro> getLibriOrdinatiPerTitolo() {
-        List<Libro> lista = new ArrayList<Libro>(libri);
+        List<Libro> lista;
+        long stamp = leggiCaricati();
+        try {
+            lista = new ArrayList<Libro>(libri);
+        } finally {
+            lock.unlockRead(stamp);
+        }
         Collections.sort(
                 lista,
                 Comparator.comparing(
@@ -50,19 +104,52 @@ public class GestioneLibri implements Serializable {
         if (copieTotali <= 0) {
             throw new IllegalArgumentException("Le copie totali devono essere > 0");
         }
-        Libro esistente = trovaLibro(isbn);
-        if (esistente != null) {
-            // logica "aggiungo copie" se il libro esiste già
-            esistente.setCopieTotali(esistente.getCopieTotali() + copieTotali);
-            esistente.setCopieDisponibili(
-                    esistente.getCopieDisponibili() + copieTotali
-            );
-            return esistente;
+        Libro libro;
+        ModificheModello.Tipo tipo;
+        long stamp = lock.writeLock();
+        try {
+            libro = indice().get(isbn);
+            if (libro != null) {
+                // logica "aggiungo copie" se il libro esiste già
+                libro.aggiungiCopie(copieTotali);
+                tipo = ModificheModello.Tipo.MODIFICATO;
+            } else {
+                libro = new Libro(isbn, titolo, autori, annoPubblicazione, copieTotali);
+                aggiungi(libro);
+                tipo = ModificheModello.Tipo.AGGIUNTO;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
         }
-        Libro libro = new Libro(isbn, titolo, autori, annoPubblicazione, copieTotali);
-        libri.add(libro);
+        modifiche.notifica(tipo, libro);
         return libro;
     }
+    /**
+     * @brief Aggiunge un libro così com'è, con le sue copie disponibili, se non esiste già un libro con lo stesso ISBN.
+     * Serve a ricostruire la collezione (per esempio rileggendo il giornale delle modifiche).
+     * @param libro libro da aggiungere
+     * @return true se il libro è stato aggiunto, false se era null o l'ISBN era già presente
+     */
+    public boolean aggiungiLibro(Libro libro) {
+        if (libro == null) return false;
+        long stamp = lock.writeLock();
+        try {
+            if (indice().get(libro.getIsbn()) != null) return false;
+            aggiungi(libro);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        modifiche.notifica(ModificheModello.Tipo.AGGIUNTO, libro);
+        return true;
+    }
+    /** @brief aggiunge un libro nuovo all'insieme e agli indici; va chiamato col lock in scrittura. */
+    private void aggiungi(Libro libro) {
+        IndiceIsbn indice = indice();
+        indiciRicerca();
+        libri.add(libro);
+        indice.put(libro);
+        indicizza(libro);
+    }
     /**
      * @brief Modifica di un libro già esistente.
      * (Qui si passa direttamente l'oggetto libro da aggiornare.)
@@ -71,14 +158,33 @@ public class GestioneLibri implements Serializable {
      * @param autori lista che contiene gli autori del libro.
      * @param annoPubblicazione contiene l'anno di pubblicazione del libro.
      * @param copieTotali rappresenta i numero di copie totali di quel libro disponibili.
+     * Le copie in prestito restano tali: le disponibili diventano copieTotali meno quelle in prestito.
+     * @return false (e il libro non viene modificato) se copieTotali è minore delle copie in prestito
      */
-    public void modificaLibro(Libro libro, String titolo, List<String> autori,
-                              int annoPubblicazione, int copieTotali) {
-        if (libro == null) return;
-        libro.setTitolo(titolo);
-        libro.setAutori(autori);
-        libro.setAnnoPubblicazione(annoPubblicazione);
-        libro.setCopieTotali(copieTotali);
+    public boolean modificaLibro(Libro libro, String titolo, List<String> autori,
+                                 int annoPubblicazione, int copieTotali) {
+        if (libro == null) return false;
+        boolean presente;
+        long stamp = lock.writeLock();
+        try {
+            if (!libro.cambiaCopieTotali(copieTotali)) {
+                return false;
+            }
+            indiciRicerca();
+            libro.setTitolo(titolo);
+            libro.setAutori(autori);
+            libro.setAnnoPubblicazione(annoPubblicazione);
+            presente = libri.contains(libro);
+            if (presente) {
+                indicizza(libro);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        if (presente) {
+            modifiche.notifica(ModificheModello.Tipo.MODIFICATO, libro);
+        }
+        return true;
     }
     /** @brief Elimina un libro dato il codice ISBN (formato stringa).
      *@param codiceIsbn codice isbn del libro di cui ci serviamo per procedere all'eliminazione del libro.
@@ -91,9 +197,28 @@ public class GestioneLibri implements Serializable {
             isbn = Long.parseLong(codiceIsbn.trim());
         } catch (NumberFormatException ex) {
             return;}
-        libri.removeIf(l -> l.getIsbn() == isbn);}
+        Libro libro;
+        long stamp = lock.writeLock();
+        try {
+            indiciRicerca();
+            libro = indice().remove(isbn);
+            if (libro != null) {
+                libri.remove(libro);
+                titoli.rimuovi(libro);
+                autori.rimuovi(libro);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        if (libro != null) {
+            modifiche.notifica(ModificheModello.Tipo.RIMOSSO, libro);
+        }
+    }
     /**
      * @brief Ricerca libri per ISBN / Titolo / Autore.
+     * Titolo e autore sono cercati come sottostringhe senza distinzione tra maiuscole e minuscole,
+     * tramite gli indici a trigrammi: non serve scorrere tutto il catalogo. La ricerca per ISBN di norma non prende
+     * lock (vedi trovaLibro), le altre prendono il lock condiviso e possono girare in parallelo tra loro.
      * @param codiceIsbn codice isbn del libro.
      * @param titolo titolo del libro.
      * @param autore rappresenta l' autore del libro.
@@ -107,40 +232,199 @@ public class GestioneLibri implements Serializable {
             } catch (NumberFormatException ignored) {
             }
         }
-        String titoloNorm = (titolo == null) ? "" : titolo.trim().toLowerCase();
-        String autoreNorm = (autore == null) ? "" : autore.trim().toLowerCase();
-        TreeSet<Libro> risultato = new TreeSet<Libro>();
-        for (Libro l : libri) {
-            if (isbn != null && l.getIsbn() != isbn.longValue()) {
-                continue;
+        String titoloNorm = (titolo == null) ? "" : IndiceTrigrammi.normalizza(titolo);
+        String autoreNorm = (autore == null) ? "" : IndiceTrigrammi.normalizza(autore);
+        if (isbn != null) {
+            TreeSet<Libro> risultato = new TreeSet<Libro>();
+            Libro l = trovaLibro(isbn);
+            if (l != null && corrisponde(l, titoloNorm, autoreNorm)) {
+                risultato.add(l);
             }
-            if (!titoloNorm.isEmpty() &&
-                    (l.getTitolo() == null ||
-                            !l.getTitolo().toLowerCase().contains(titoloNorm))) {
-                continue;
+            return risultato;
+        }
+        if (titoloNorm.isEmpty() && autoreNorm.isEmpty()) {
+            return getLibri();
+        }
+        List<Libro> candidati;
+        List<Libro> perAutore = null;
+        long stamp = leggiConIndici(true);
+        try {
+            candidati = titoloNorm.isEmpty() ? autori.cerca(autoreNorm) : titoli.cerca(titoloNorm);
+            if (!titoloNorm.isEmpty() && !autoreNorm.isEmpty()) {
+                perAutore = autori.cerca(autoreNorm);
             }
-            if (!autoreNorm.isEmpty()) {
-                boolean matchAutore = false;
-                for (String a : l.getAutori()) {
-                    if (a != null && a.toLowerCase().contains(autoreNorm)) {
-                        matchAutore = true;
-                        break;
-                    }
-                }
-                if (!matchAutore) continue;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        TreeSet<Libro> risultato = new TreeSet<Libro>();
+        if (perAutore != null) {
+            Set<Libro> autoriTrovati = Collections.newSetFromMap(new IdentityHashMap<Libro, Boolean>());
+            autoriTrovati.addAll(perAutore);
+            for (Libro l : candidati) {
+                if (autoriTrovati.contains(l)) risultato.add(l);
             }
-            risultato.add(l);
+        } else {
+            risultato.addAll(candidati);
         }
         return risultato;
     }
+    /** @brief verifica un singolo libro sui filtri di titolo e autore, già normalizzati. */
+    private static boolean corrisponde(Libro l, String titoloNorm, String autoreNorm) {
+        if (!titoloNorm.isEmpty() &&
+                (l.getTitolo() == null ||
+                        !l.getTitolo().toLowerCase(Locale.ROOT).contains(titoloNorm))) {
+            return false;
+        }
+        if (autoreNorm.isEmpty()) return true;
+        for (String a : l.getAutori()) {
+            if (a != null && a.toLowerCase(Locale.ROOT).contains(autoreNorm)) {
+                return true;
+            }
+        }
+        return false;
+    }
     /** @brief Trova un libro per ISBN oppure null se non esiste.
+     * Prima prova una lettura ottimistica dell'indice, senza bloccare né essere bloccata dagli altri lettori;
+     * se nel frattempo c'è stata una modifica (o l'indice va ricostruito) ripete la lettura col lock condiviso.
      * @param isbn codice isbn del libro.
      @return libro trovato
      */
     public Libro trovaLibro(long isbn) {
-        for (Libro l : libri) {
-            if (l.getIsbn() == isbn) return l;
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                IndiceIsbn i = indice;
+                if (i != null) {
+                    Libro l = i.get(isbn);
+                    if (lock.validate(stamp)) return l;
+                }
+            } catch (RuntimeException letturaIncoerente) {
+                // una scrittura concorrente ha lasciato l'indice a metà: si riprova sotto lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            if (daCaricare != null) return cercaDaCaricare(isbn);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        stamp = leggiConIndici(false);
+        try {
+            return indice.get(isbn);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    /**
+     * @brief ricerca binaria tra i libri ancora da decodificare: decodifica solo quelli che confronta.
+     * Va chiamato con il lock preso.
+     */
+    private Libro cercaDaCaricare(long isbn) {
+        int basso = 0;
+        int alto = daCaricare.dimensione() - 1;
+        while (basso <= alto) {
+            int medio = (basso + alto) >>> 1;
+            Libro l = daCaricare.get(medio);
+            int confronto = Long.compare(l.getIsbn(), isbn);
+            if (confronto < 0) {
+                basso = medio + 1;
+            } else if (confronto > 0) {
+                alto = medio - 1;
+            } else {
+                return l;
+            }
         }
         return null;
     }
-}
\ No newline at end of file
+    /**
+     * @brief prende il lock condiviso con tutti i libri già in memoria, decodificandoli prima col lock in scrittura
+     * se serve.
+     * @return stamp da rilasciare con unlockRead
+     */
+    private long leggiCaricati() {
+        long stamp = lock.readLock();
+        if (daCaricare == null) {
+            return stamp;
+        }
+        lock.unlockRead(stamp);
+        stamp = lock.writeLock();
+        carica();
+        return lock.tryConvertToReadLock(stamp);
+    }
+    /**
+     * @brief aggiunge all'insieme i libri ancora da decodificare. Va chiamato col lock in scrittura.
+     */
+    private void carica() {
+        if (daCaricare != null) {
+            libri.addAll(daCaricare.tutti());
+            daCaricare = null;
+        }
+    }
+    /**
+     * @brief prende il lock condiviso con gli indici pronti. Se un indice va ricostruito lo fa prima col lock
+     * in scrittura, che poi viene convertito in lettura senza lasciare spazio ad altri scrittori.
+     * @param ricerca true se servono anche gli indici su titoli e autori
+     * @return stamp da rilasciare con unlockRead
+     */
+    private long leggiConIndici(boolean ricerca) {
+        long stamp = lock.readLock();
+        if (indice != null && (!ricerca || (titoli != null && autori != null))) {
+            return stamp;
+        }
+        lock.unlockRead(stamp);
+        stamp = lock.writeLock();
+        indice();
+        if (ricerca) indiciRicerca();
+        return lock.tryConvertToReadLock(stamp);
+    }
+    /**
+     * @brief restituisce l'indice isbn, costruendolo se manca (al primo uso e dopo la deserializzazione).
+     * Una volta costruito viene aggiornato da ogni modifica. Va chiamato col lock in scrittura.
+     */
+    private IndiceIsbn indice() {
+        if (indice == null) {
+            carica();
+            IndiceIsbn nuovo = new IndiceIsbn(libri.size());
+            for (Libro l : libri) {
+                nuovo.put(l);
+            }
+            indice = nuovo;
+        }
+        return indice;
+    }
+    /**
+     * @brief prepara gli indici di ricerca su titoli e autori, costruendoli con la stessa regola dell'indice isbn.
+     * Va chiamato col lock in scrittura.
+     */
+    private void indiciRicerca() {
+        if (titoli == null || autori == null) {
+            carica();
+            titoli = new IndiceTrigrammi<Libro>();
+            autori = new IndiceTrigrammi<Libro>();
+            for (Libro l : libri) {
+                indicizza(l);
+            }
+        }
+    }
+
+    private void indicizza(Libro libro) {
+        titoli.aggiorna(libro, Collections.singletonList(libro.getTitolo()));
+        autori.aggiorna(libro, libro.getAutori());
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        long stamp = lock.writeLock();
+        try {
+            carica();
+            out.defaultWriteObject();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        modifiche = new ModificheModello<Libro>();
+        lock = new StampedLock();
+    }
+}
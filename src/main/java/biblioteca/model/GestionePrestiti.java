@@ -1,24 +1,65 @@
 package biblioteca.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * @brief classe che si occupa di gestire i prestiti di libri permette di registrare nuovi prestiti, contarli e trovarli nel sistema.
+ * I prestiti attivi sono tenuti separati dallo storico dei prestiti chiusi: le operazioni di tutti i giorni (ricerca,
+ * conteggio, restituzione) lavorano solo sui prestiti in corso, mentre lo storico cresce solo in coda.
+ * Più banchi possono registrare prestiti e restituzioni in parallelo: le modifiche prendono il lock in scrittura
+ * (controllo delle copie, del numero di prestiti dell'utente e aggiornamento degli indici avvengono insieme),
+ * le letture il lock condiviso e le liste restituite sono copie. Gli ascoltatori sono avvisati fuori dal lock.
  * @author tommy
  */
 public class GestionePrestiti implements Serializable {
     private static final long serialVersionUID = 1L;
-    private final List<Prestito> prestiti;
+    /**
+     * Forma serializzata: "prestiti" contiene lo storico dei prestiti chiusi, "attivi" quelli in corso.
+     * I file scritti prima della separazione hanno solo "prestiti" con tutti i prestiti insieme.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("prestiti", List.class),
+            new ObjectStreamField("attivi", List.class)
+    };
+    /** storico dei prestiti restituiti, in ordine di restituzione (solo append). */
+    private transient List<Prestito> storico;
+    /** prestiti in corso in ordine di registrazione, indicizzati per (matricola, isbn, data di inizio). */
+    private transient LinkedHashMap<ChiavePrestito, Prestito> attivi;
+    /**
+     * numero più alto di copia usato nelle chiavi di attivi: 0, a meno che un file vecchio contenga più prestiti
+     * attivi con la stessa terna, che vengono tenuti tutti con chiavi di copia 1, 2, ...
+     */
+    private transient int copiaMassima;
+    /** numero di prestiti attivi per matricola, non serializzato: viene ricostruito al primo accesso. */
+    private transient Map<String, Integer> attiviPerMatricola;
+    /** prestiti attivi raggruppati per data prevista di restituzione, non serializzato: viene ricostruito al primo accesso. */
+    private transient TreeMap<LocalDate, List<Prestito>> perScadenza;
+    /** ascoltatori delle modifiche ai prestiti attivi, non serializzati. */
+    private transient ModificheModello<Prestito> modifiche;
+    /** protegge storico, prestiti attivi e indici; non è rientrante. */
+    private transient StampedLock lock;
 /**
  * @brief costruttore che crea una nuova lista di prestiti.
- * @param prestiti parametro che contiene tutti i prestiti del sistema
+ * @param prestiti parametro che contiene tutti i prestiti del sistema, attivi e già restituiti.
  */
     public GestionePrestiti(List<Prestito> prestiti) {
-        this.prestiti = (prestiti != null) ? prestiti : new ArrayList<Prestito>();
+        modifiche = new ModificheModello<Prestito>();
+        lock = new StampedLock();
+        inizializza(prestiti, null);
     }
 /**
  * @brief costruttore senza parametri di ingresso, istanzia un nuovo array list di prestiti.
@@ -26,27 +67,130 @@ public class GestionePrestiti implements Serializable {
     public GestionePrestiti() {
         this(new ArrayList<Prestito>());
     }
-    /** @brief Restituisce la lista di tutti i prestiti (solo lettura). */
+    /**
+     * @brief restituisce gli ascoltatori delle modifiche ai prestiti attivi, creati col gestore (e ricreati dopo la deserializzazione).
+     * Un prestito registrato arriva come AGGIUNTO, una restituzione come RIMOSSO (il prestito passa nello storico).
+     * @return elenco degli ascoltatori a cui aggiungerne o toglierne
+     */
+    public ModificheModello<Prestito> getModifiche() {
+        return modifiche;
+    }
+    /** @brief Restituisce la lista di tutti i prestiti (solo lettura): prima lo storico, poi i prestiti attivi. */
     public List<Prestito> getPrestiti() {
-        return Collections.unmodifiableList(prestiti);
+        long stamp = lock.readLock();
+        try {
+            List<Prestito> tutti = new ArrayList<Prestito>(storico.size() + attivi.size());
+            tutti.addAll(storico);
+            tutti.addAll(attivi.values());
+            return Collections.unmodifiableList(tutti);
+        } finally {
+            lock.unlockRead(stamp);
+        }
     }
-    /** @brief Restituisce solo i prestiti ancora attivi. */
+    /** @brief Restituisce una copia dei prestiti ancora attivi. */
     public List<Prestito> getPrestitiAttivi() {
-        List<Prestito> attivi = new ArrayList<Prestito>();
-        for (Prestito p : prestiti) {
-            if (p.isAttivo()) {
-                attivi.add(p);
+        long stamp = lock.readLock();
+        try {
+            return new ArrayList<Prestito>(attivi.values());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    /**
+     * @brief Restituisce il numero di prestiti nello storico (prestiti già restituiti).
+     * Va usato come punto di partenza per sfogliare lo storico a pagine con getPaginaStorico.
+     * @return numero di prestiti restituiti
+     */
+    public int getNumeroPrestitiStorico() {
+        long stamp = lock.tryOptimisticRead();
+        int numero = storico.size();
+        if (lock.validate(stamp)) return numero;
+        stamp = lock.readLock();
+        try {
+            return storico.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    /**
+     * @brief Restituisce una pagina dello storico, dal prestito restituito più di recente al più vecchio.
+     * Lo storico cresce solo in coda, quindi la posizione di un prestito non cambia mai e può fare da chiave:
+     * si parte da getNumeroPrestitiStorico() e ogni pagina successiva parte da dove è finita la precedente
+     * (posizione meno il numero di prestiti ricevuti). Le restituzioni fatte nel frattempo finiscono dopo
+     * la posizione di partenza e non spostano le pagine già lette. Costa O(quanti), qualunque sia la
+     * dimensione dello storico.
+     * @param prima posizione esclusa da cui andare all'indietro (al massimo getNumeroPrestitiStorico())
+     * @param quanti numero massimo di prestiti da restituire
+     * @return i prestiti nelle posizioni da prima - quanti a prima - 1, dal più recente; vuota se prima è 0
+     */
+    public List<Prestito> getPaginaStorico(int prima, int quanti) {
+        if (quanti < 0) {
+            throw new IllegalArgumentException("Dimensione della pagina negativa: " + quanti);
+        }
+        long stamp = lock.readLock();
+        try {
+            int fine = Math.max(0, Math.min(prima, storico.size()));
+            int inizio = Math.max(0, fine - quanti);
+            List<Prestito> pagina = new ArrayList<Prestito>(fine - inizio);
+            for (int i = fine - 1; i >= inizio; i--) {
+                pagina.add(storico.get(i));
+            }
+            return pagina;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    /**
+     * @brief Restituisce i prestiti attivi ordinati per data prevista di restituzione, senza doverli riordinare.
+     * A parità di scadenza vale l'ordine di registrazione; gli eventuali prestiti senza scadenza sono in fondo.
+     */
+    public List<Prestito> getPrestitiAttiviPerScadenza() {
+        long stamp = leggiConIndici();
+        try {
+            List<Prestito> ordinati = new ArrayList<Prestito>(attivi.size());
+            for (List<Prestito> stessaData : perScadenza.values()) {
+                ordinati.addAll(stessaData);
+            }
+            if (ordinati.size() < attivi.size()) {
+                for (Prestito p : attivi.values()) {
+                    if (p.getDataPrevistaRestituzione() == null) ordinati.add(p);
+                }
+            }
+            return ordinati;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    /**
+     * @brief Restituisce i prestiti attivi in ritardo rispetto alla data indicata, dal più vecchio al più recente.
+     * Legge solo la parte iniziale dell'indice per scadenza: costa O(log n + k) con k prestiti in ritardo.
+     * @param oggi data di riferimento, se null si usa la data attuale
+     * @return i prestiti con data prevista di restituzione precedente a oggi
+     */
+    public List<Prestito> getPrestitiInRitardo(LocalDate oggi) {
+        LocalDate riferimento = (oggi != null) ? oggi : LocalDate.now();
+        List<Prestito> inRitardo = new ArrayList<Prestito>();
+        long stamp = leggiConIndici();
+        try {
+            for (List<Prestito> stessaData : perScadenza.headMap(riferimento, false).values()) {
+                inRitardo.addAll(stessaData);
             }
+        } finally {
+            lock.unlockRead(stamp);
         }
-        return attivi;
+        return inRitardo;
     }
    /**
     * @brief permette di registrare un nuovo prestito.
+    * La copia viene presa prima, con Libro.riservaCopia e senza lock: due banchi che prestano l'ultima copia nello
+    * stesso momento non possono riuscire entrambi, e chi la trova esaurita non occupa il lock della gestione.
+    * Limite di prestiti dell'utente e prestito duplicato sono controllati poi col lock in scrittura; se uno dei due
+    * controlli fallisce la copia viene rilasciata.
     * @param utente colui che riceve il libro in prestito
     * @param libro libro ricevuto in prestito.
     * @param dataPrestito data in cui il prestito viene registrato
     * @param dataPrevistaRestituzione data prevista per effettuare la restituzione del libro.
-    * @return 
+    * @return
     */
     public Prestito registraPrestito(Utente utente, Libro libro,
                                       LocalDate dataPrestito,
@@ -54,61 +198,134 @@ public class GestionePrestiti implements Serializable {
         if (utente == null || libro == null) {
             throw new IllegalArgumentException("Utente o libro null");
         }
-        if (!libro.isDisponibile()) {
+        Prestito prestito = new Prestito(utente, libro, dataPrestito, dataPrevistaRestituzione);
+        ChiavePrestito chiave = new ChiavePrestito(prestito);
+        if (!libro.riservaCopia()) {
             throw new IllegalStateException("Nessuna copia disponibile del libro");
         }
-
-        int attivi = contaPrestitiAttivi(utente);
-        if (attivi >= Utente.MAX_PRESTITI) {
-            throw new IllegalStateException(
-                    "Impossibile registrare il prestito: l'utente ha già "
-                            + attivi + " prestiti attivi (massimo consentito: "
-                            + Utente.MAX_PRESTITI + ")."
-            );
+        boolean registrato = false;
+        long stamp = lock.writeLock();
+        try {
+            Map<String, Integer> contatori = contatori();
+            Integer attivi = contatori.get(utente.getMatricola());
+            if (attivi != null && attivi >= Utente.MAX_PRESTITI) {
+                throw new IllegalStateException(
+                        "Impossibile registrare il prestito: l'utente ha già "
+                                + attivi + " prestiti attivi (massimo consentito: "
+                                + Utente.MAX_PRESTITI + ")."
+                );
+            }
+            if (primoAttivo(chiave) != null) {
+                throw new IllegalStateException("L'utente ha già in prestito questo libro dalla stessa data.");
+            }
+            TreeMap<LocalDate, List<Prestito>> scadenze = scadenze();
+            this.attivi.put(chiave, prestito);
+            contatori.merge(utente.getMatricola(), 1, Integer::sum);
+            if (dataPrevistaRestituzione != null) {
+                scadenze.computeIfAbsent(dataPrevistaRestituzione, d -> new ArrayList<Prestito>()).add(prestito);
+            }
+            utente.aggiungiPrestito(prestito);
+            registrato = true;
+        } finally {
+            lock.unlockWrite(stamp);
+            if (!registrato) {
+                libro.rilasciaCopia();
+            }
         }
-        Prestito prestito = new Prestito(utente, libro, dataPrestito, dataPrevistaRestituzione);
-        prestiti.add(prestito);
-        libro.decrementaCopiaDisponibile();
-        utente.aggiungiPrestito(prestito);
+        modifiche.notifica(ModificheModello.Tipo.AGGIUNTO, prestito);
         return prestito;
     }
 /**
- * @brief permette di registrare una restituzione.
+ * @brief permette di registrare una restituzione, spostando il prestito nello storico.
+ * La copia torna disponibile con Libro.rilasciaCopia dopo aver rilasciato il lock.
  * @param prestito porta con sè tutte le informazioni del prestito
  * @param dataRestituzione data in cui l'utente restituisce il libro
  */
     public void registraRestituzione(Prestito prestito, LocalDate dataRestituzione) {
-        if (prestito == null || !prestito.isAttivo()) {
+        if (prestito == null) {
             return;
         }
         LocalDate dataEffettiva = (dataRestituzione != null) ? dataRestituzione : LocalDate.now();
-        prestito.setDataRestituzione(dataEffettiva);
-        prestito.getLibro().incrementaCopiaDisponibile();
-        prestito.getUtente().rimuoviPrestito(prestito);
+        boolean restituito = false;
+        long stamp = lock.writeLock();
+        try {
+            // ricontrollato col lock: la stessa restituzione registrata da due banchi conta una volta sola
+            if (!prestito.isAttivo()) {
+                return;
+            }
+            Map<String, Integer> contatori = contatori();
+            TreeMap<LocalDate, List<Prestito>> scadenze = scadenze();
+            ChiavePrestito chiave = chiaveDi(prestito);
+            if (chiave != null) {
+                attivi.remove(chiave);
+                storico.add(prestito);
+                if (prestito.getUtente() != null) {
+                    contatori.computeIfPresent(prestito.getUtente().getMatricola(), (m, c) -> (c > 1) ? c - 1 : null);
+                }
+                List<Prestito> stessaData = (prestito.getDataPrevistaRestituzione() != null)
+                        ? scadenze.get(prestito.getDataPrevistaRestituzione()) : null;
+                if (stessaData != null) {
+                    stessaData.remove(prestito);
+                    if (stessaData.isEmpty()) {
+                        scadenze.remove(prestito.getDataPrevistaRestituzione());
+                    }
+                }
+            }
+            prestito.setDataRestituzione(dataEffettiva);
+            prestito.getUtente().rimuoviPrestito(prestito);
+            restituito = true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        if (restituito) {
+            prestito.getLibro().rilasciaCopia();
+            modifiche.notifica(ModificheModello.Tipo.RIMOSSO, prestito);
+        }
     }
     /**
      * @brief conta quanti prestiti in corso ha un determinato utente
      * @param utente utente in questione
-     * @return numero di presiti attivi 
-     */
-        public int contaPrestitiAttivi(Utente u) {
-         if (u == null || u.getMatricola() == null) return 0;
-         String m = u.getMatricola();
-         int c = 0;
-         for (Prestito p : getPrestitiAttivi()) {
-             if (p.getUtente() != null && m.equals(p.getUtente().getMatricola())) c++;
-         }
-         return c;
-     }
+     * @return numero di presiti attivi
+     */
+    public int contaPrestitiAttivi(Utente u) {
+        if (u == null || u.getMatricola() == null) return 0;
+        long stamp = leggiConIndici();
+        try {
+            Integer c = attiviPerMatricola.get(u.getMatricola());
+            return (c != null) ? c : 0;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
 
     /**
      * @brief rappresenta se un utente ha o meno prestiti in corso.
-     * @param utente 
+     * @param utente
      * @return true o false se un utente ha o meno prestiti attivi
      */
     public boolean haPrestitiAttiviPer(Utente utente) {
         return contaPrestitiAttivi(utente) > 0;
     }
+    /**
+     * @brief esegue un'azione col lock in scrittura preso, solo se l'utente non ha prestiti attivi.
+     * Serve a GestioneUtenti per eliminare un utente senza che nel frattempo gli venga registrato un prestito.
+     * @param utente utente da controllare
+     * @param azione azione da eseguire; non deve richiamare questa gestione
+     * @return true se l'azione è stata eseguita
+     */
+    boolean seSenzaPrestitiAttivi(Utente utente, Runnable azione) {
+        if (haPrestitiAttiviPer(utente)) return false;
+        long stamp = lock.writeLock();
+        try {
+            // ricontrollo col lock: un prestito può essere stato registrato dopo il primo controllo
+            Integer c = (utente != null) ? contatori().get(utente.getMatricola()) : null;
+            if (c != null && c > 0) return false;
+            azione.run();
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
 
     /**
      * @brief metodo che permette di trovare un determinato prestito.
@@ -118,14 +335,252 @@ public class GestionePrestiti implements Serializable {
      * @return ritorna il prestito trovato secondo i parametri inseriti.
      */
     public Prestito trovaPrestitoAttivo(String matricola, long isbn, LocalDate dataInizio) {
-        for (Prestito p : prestiti) {
-            if (p.isAttivo()
-                    && p.getUtente().getMatricola().equals(matricola)
-                    && p.getLibro().getIsbn() == isbn
-                    && p.getDataInizio().equals(dataInizio)) {
-                return p;
+        ChiavePrestito chiave = new ChiavePrestito(matricola, isbn, dataInizio);
+        long stamp = lock.readLock();
+        try {
+            return primoAttivo(chiave);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    /**
+     * @brief collega ogni prestito alle istanze di libro e utente presenti nelle rispettive gestioni.
+     * Serve dopo il caricamento da file separati (libri, utenti e prestiti letti in stream distinti), quando i
+     * prestiti contengono copie di libri e utenti: le copie vengono sostituite dalle istanze canoniche cercate
+     * per isbn e matricola, e l'elenco dei prestiti attivi di ogni utente viene ricostruito a partire da qui.
+     * Libri e utenti non più presenti restano quelli del prestito.
+     * Le ricerche su gl e gu sono fatte senza il lock dei prestiti, che viene preso solo per sostituire gli elenchi,
+     * così l'ordine dei lock resta quello di GestioneUtenti (prima utenti, poi prestiti).
+     * @param gl gestione libri con le istanze canoniche dei libri
+     * @param gu gestione utenti con le istanze canoniche degli utenti
+     */
+    public void ricollega(GestioneLibri gl, GestioneUtenti gu) {
+        List<Prestito> vecchioStorico;
+        List<Prestito> vecchiAttivi;
+        long stamp = lock.readLock();
+        try {
+            vecchioStorico = new ArrayList<Prestito>(storico);
+            vecchiAttivi = new ArrayList<Prestito>(attivi.values());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        List<Prestito> nuovoStorico = new ArrayList<Prestito>(vecchioStorico.size());
+        for (Prestito p : vecchioStorico) {
+            nuovoStorico.add(canonico(p, gl, gu));
+        }
+        List<Prestito> nuoviAttivi = new ArrayList<Prestito>(vecchiAttivi.size());
+        for (Prestito p : vecchiAttivi) {
+            nuoviAttivi.add(canonico(p, gl, gu));
+        }
+        if (gu != null) {
+            for (Utente u : gu.getUtenti()) {
+                for (Prestito vecchio : new ArrayList<Prestito>(u.getPrestitiAttivi())) {
+                    u.rimuoviPrestito(vecchio);
+                }
             }
         }
+        for (Prestito p : nuoviAttivi) {
+            if (p.getUtente() != null) {
+                p.getUtente().aggiungiPrestito(p);
+            }
+        }
+        stamp = lock.writeLock();
+        try {
+            inizializza(nuovoStorico, nuoviAttivi);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    private static Prestito canonico(Prestito p, GestioneLibri gl, GestioneUtenti gu) {
+        Utente u = p.getUtente();
+        Libro l = p.getLibro();
+        Utente uCanonico = (u != null && gu != null) ? gu.trovaUtente(u.getMatricola()) : null;
+        Libro lCanonico = (l != null && gl != null) ? gl.trovaLibro(l.getIsbn()) : null;
+        if ((uCanonico == null || uCanonico == u) && (lCanonico == null || lCanonico == l)) {
+            return p;
+        }
+        Prestito collegato = new Prestito(uCanonico != null ? uCanonico : u, lCanonico != null ? lCanonico : l,
+                p.getDataInizio(), p.getDataPrevistaRestituzione());
+        if (p.getDataRestituzione() != null) {
+            collegato.setDataRestituzione(p.getDataRestituzione());
+        }
+        return collegato;
+    }
+    /**
+     * @brief separa i prestiti ricevuti tra storico e prestiti attivi.
+     * @param prestiti storico, oppure tutti i prestiti se attiviSalvati è null (formato precedente alla separazione)
+     * @param attiviSalvati prestiti attivi già separati, può essere null
+     */
+    private void inizializza(List<Prestito> prestiti, List<Prestito> attiviSalvati) {
+        storico = new ArrayList<Prestito>();
+        attivi = new LinkedHashMap<ChiavePrestito, Prestito>();
+        copiaMassima = 0;
+        attiviPerMatricola = null;
+        perScadenza = null;
+        if (prestiti != null) {
+            for (Prestito p : prestiti) {
+                if (attiviSalvati == null && p.isAttivo()) {
+                    aggiungiAttivo(p);
+                } else {
+                    storico.add(p);
+                }
+            }
+        }
+        if (attiviSalvati != null) {
+            for (Prestito p : attiviSalvati) {
+                aggiungiAttivo(p);
+            }
+        }
+    }
+    /**
+     * @brief aggiunge un prestito attivo letto da file; se la sua terna c'è già (file vecchi, scritti prima del
+     * controllo sui duplicati) lo tiene con la prima copia libera della chiave invece di sostituire l'altro.
+     */
+    private void aggiungiAttivo(Prestito p) {
+        ChiavePrestito chiave = new ChiavePrestito(p);
+        int copia = 0;
+        while (attivi.containsKey(chiave.copia(copia))) {
+            copia++;
+        }
+        attivi.put(chiave.copia(copia), p);
+        copiaMassima = Math.max(copiaMassima, copia);
+    }
+    /**
+     * @brief primo prestito attivo con la terna della chiave, tra tutte le sue copie. Va chiamato col lock preso.
+     */
+    private Prestito primoAttivo(ChiavePrestito chiave) {
+        for (int copia = 0; copia <= copiaMassima; copia++) {
+            Prestito p = attivi.get(chiave.copia(copia));
+            if (p != null) return p;
+        }
+        return null;
+    }
+    /**
+     * @brief chiave con cui è registrato proprio questo prestito attivo, oppure null. Va chiamato col lock preso.
+     */
+    private ChiavePrestito chiaveDi(Prestito prestito) {
+        ChiavePrestito chiave = new ChiavePrestito(prestito);
+        for (int copia = 0; copia <= copiaMassima; copia++) {
+            ChiavePrestito k = chiave.copia(copia);
+            if (attivi.get(k) == prestito) return k;
+        }
         return null;
     }
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField campi = out.putFields();
+        long stamp = lock.readLock();
+        try {
+            campi.put("prestiti", new ArrayList<Prestito>(storico));
+            campi.put("attivi", new ArrayList<Prestito>(attivi.values()));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        out.writeFields();
+    }
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField campi = in.readFields();
+        modifiche = new ModificheModello<Prestito>();
+        lock = new StampedLock();
+        inizializza((List<Prestito>) campi.get("prestiti", null),
+                (List<Prestito>) campi.get("attivi", null));
+    }
+    /**
+     * @brief prende il lock condiviso con i contatori per matricola e l'indice per scadenza pronti,
+     * costruendoli prima col lock in scrittura se mancano.
+     * @return stamp da rilasciare con unlockRead
+     */
+    private long leggiConIndici() {
+        long stamp = lock.readLock();
+        if (attiviPerMatricola != null && perScadenza != null) {
+            return stamp;
+        }
+        lock.unlockRead(stamp);
+        stamp = lock.writeLock();
+        contatori();
+        scadenze();
+        return lock.tryConvertToReadLock(stamp);
+    }
+    /**
+     * @brief restituisce i contatori dei prestiti attivi per matricola, ricostruendoli se mancano (dopo la deserializzazione).
+     * Va chiamato col lock in scrittura.
+     */
+    private Map<String, Integer> contatori() {
+        if (attiviPerMatricola == null) {
+            Map<String, Integer> nuovi = new HashMap<String, Integer>();
+            for (Prestito p : attivi.values()) {
+                if (p.getUtente() != null && p.getUtente().getMatricola() != null) {
+                    nuovi.merge(p.getUtente().getMatricola(), 1, Integer::sum);
+                }
+            }
+            attiviPerMatricola = nuovi;
+        }
+        return attiviPerMatricola;
+    }
+    /**
+     * @brief restituisce l'indice dei prestiti attivi per data prevista di restituzione, ricostruendolo se manca.
+     * Va chiamato col lock in scrittura.
+     */
+    private TreeMap<LocalDate, List<Prestito>> scadenze() {
+        if (perScadenza == null) {
+            TreeMap<LocalDate, List<Prestito>> nuovo = new TreeMap<LocalDate, List<Prestito>>();
+            for (Prestito p : attivi.values()) {
+                if (p.getDataPrevistaRestituzione() != null) {
+                    nuovo.computeIfAbsent(p.getDataPrevistaRestituzione(), d -> new ArrayList<Prestito>()).add(p);
+                }
+            }
+            perScadenza = nuovo;
+        }
+        return perScadenza;
+    }
+    /**
+     * @brief chiave composta (matricola, isbn, data di inizio) che identifica un prestito attivo,
+     * la stessa terna usata dalla tabella dei prestiti per indicare la riga selezionata.
+     * La copia distingue i prestiti con la stessa terna che possono esserci nei file vecchi; è 0 per tutti gli altri.
+     */
+    private static final class ChiavePrestito {
+        private final String matricola;
+        private final long isbn;
+        private final LocalDate dataInizio;
+        private final int copia;
+
+        ChiavePrestito(String matricola, long isbn, LocalDate dataInizio) {
+            this(matricola, isbn, dataInizio, 0);
+        }
+
+        private ChiavePrestito(String matricola, long isbn, LocalDate dataInizio, int copia) {
+            this.matricola = matricola;
+            this.isbn = isbn;
+            this.dataInizio = dataInizio;
+            this.copia = copia;
+        }
+
+        ChiavePrestito(Prestito p) {
+            this(p.getUtente() != null ? p.getUtente().getMatricola() : null,
+                    p.getLibro() != null ? p.getLibro().getIsbn() : 0L,
+                    p.getDataInizio());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ChiavePrestito)) return false;
+            ChiavePrestito k = (ChiavePrestito) o;
+            return isbn == k.isbn && copia == k.copia
+                    && Objects.equals(matricola, k.matricola)
+                    && Objects.equals(dataInizio, k.dataInizio);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = Long.hashCode(isbn);
+            h = 31 * h + Objects.hashCode(matricola);
+            h = 31 * h + Objects.hashCode(dataInizio);
+            return 31 * h + copia;
+        }
+
+        ChiavePrestito copia(int n) {
+            return (n == copia) ? this : new ChiavePrestito(matricola, isbn, dataInizio, n);
+        }
+    }
 }
@@ -1,17 +1,37 @@
 package biblioteca.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * @brief gestisce gli utenti: inserisce, modifica, elimina e trova un utente nel sistema.
+ * È sicura tra più thread con le stesse regole di GestioneLibri: lock in scrittura per le modifiche, lock condiviso
+ * per le letture, copie per gli insiemi restituiti e ascoltatori avvisati fuori dal lock. Se serve prendere
+ * anche il lock dei prestiti lo si prende dopo quello degli utenti, mai il contrario.
+ * Come GestioneLibri, se viene da file decodifica gli utenti solo quando servono: trovaUtente cerca per matricola
+ * tra quelli ancora da decodificare, il primo accesso a tutti gli utenti (o una modifica) li decodifica tutti.
  * @author tommy
  */
 public class GestioneUtenti implements Serializable {
 
     private static final long serialVersionUID = 1L;
     private final TreeSet<Utente> utenti;
+    /** utenti del file non ancora aggiunti a utenti; null quando sono tutti in memoria. */
+    private transient ElencoDifferito<Utente> daCaricare;
     private transient GestionePrestiti gestionePrestiti;
+    /** indice matricola -> utente, non serializzato: viene ricostruito al primo accesso dopo il caricamento da file. */
+    private transient Map<String, Utente> indiceMatricole;
+    /** indici di ricerca su cognome e nome, anch'essi ricostruiti al primo uso. */
+    private transient IndiceTrigrammi<Utente> cognomi;
+    private transient IndiceTrigrammi<Utente> nomi;
+    /** ascoltatori delle modifiche, non serializzati. */
+    private transient ModificheModello<Utente> modifiche = new ModificheModello<Utente>();
+    /** protegge utenti e indici; non è rientrante. */
+    private transient StampedLock lock = new StampedLock();
 /**
  * costruttore di default che inizializza il treeset di utenti.
  */
@@ -20,11 +40,22 @@ public class GestioneUtenti implements Serializable {
     }  
 /**
  * costruttore che inizializza un treeset di utenti
- * @param utenti, il treeset che contiene gli utenti.
+ * @param utenti, il treeset che contiene gli utenti; viene copiato, così le modifiche fatte dopo sull'insieme
+ * passato non toccano la gestione né i suoi indici.
  */
     public GestioneUtenti(TreeSet<Utente> utenti) {
-        this.utenti = (utenti != null) ? utenti : new TreeSet<Utente>();
+        this.utenti = (utenti != null) ? new TreeSet<Utente>(utenti) : new TreeSet<Utente>();
     } 
+/**
+ * crea la gestione degli utenti letti da file, decodificati solo quando servono.
+ * @param daCaricare utenti ordinati per matricola
+ * @return gestione ancora senza utenti decodificati
+ */
+    public static GestioneUtenti daFile(ElencoDifferito<Utente> daCaricare) {
+        GestioneUtenti gestione = new GestioneUtenti();
+        gestione.daCaricare = daCaricare;
+        return gestione;
+    }
 /**
  * @brief imposta l'attributo gestione prestiti
  * @param gestionePrestiti 
@@ -32,20 +63,46 @@ public class GestioneUtenti implements Serializable {
     public void setGestionePrestiti(GestionePrestiti gestionePrestiti) {
         this.gestionePrestiti = gestionePrestiti;
     }
+    /**
+     * @brief restituisce gli ascoltatori delle modifiche agli utenti.
+     * @return elenco degli ascoltatori a cui aggiungerne o toglierne
+     */
+    public ModificheModello<Utente> getModifiche() {
+        return modifiche;
+    }
    /**
-    * @brief metodo getter, ritorna il treeset contenente gli utenti
-    * @return 
+    * @brief metodo getter, ritorna una copia del treeset contenente gli utenti
+    * @return copia presa in modo consistente; modificarla non cambia la gestione
     */
     public TreeSet<Utente> getUtenti() {
-        return utenti;
+        long stamp = leggiCaricati();
+        try {
+            return new TreeSet<Utente>(utenti);
+        } finally {
+            lock.unlockRead(stamp);
+        }
     }
     /**
      * @brief inserisce un nuovo utente nella collezione
      * @param utente nuovo utente da inserire
      */
     public void inserisciUtente(Utente utente) {
-        if (utente != null) {
-            utenti.add(utente);
+        if (utente == null) return;
+        boolean aggiunto;
+        long stamp = lock.writeLock();
+        try {
+            Map<String, Utente> indice = indice();
+            indiciRicerca();
+            aggiunto = utenti.add(utente);
+            if (aggiunto) {
+                indice.put(chiave(utente.getMatricola()), utente);
+                indicizza(utente);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        if (aggiunto) {
+            modifiche.notifica(ModificheModello.Tipo.AGGIUNTO, utente);
         }
     }
    /**
@@ -53,18 +110,31 @@ public class GestioneUtenti implements Serializable {
     * @param utenteMod  utente da modificare
     */
     public void modificaUtente(Utente utenteMod) {
-        if (utenteMod == null) return;
+        if (utenteMod == null || utenteMod.getMatricola() == null) return;
 
-        Utente esistente = trovaUtente(utenteMod.getMatricola());
+        Utente esistente;
+        long stamp = lock.writeLock();
+        try {
+            esistente = indice().get(utenteMod.getMatricola().trim());
+            if (esistente != null) {
+                esistente.setNome(utenteMod.getNome());
+                esistente.setCognome(utenteMod.getCognome());
+                esistente.setEmail(utenteMod.getEmail());
+                esistente.setInBlacklist(utenteMod.isInBlacklist());
+                indiciRicerca();
+                indicizza(esistente);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
         if (esistente != null) {
-            esistente.setNome(utenteMod.getNome());
-            esistente.setCognome(utenteMod.getCognome());
-            esistente.setEmail(utenteMod.getEmail());
-            esistente.setInBlacklist(utenteMod.isInBlacklist());
+            modifiche.notifica(ModificheModello.Tipo.MODIFICATO, esistente);
         }
     }
   /**
-   * @brief metodo che elimina un utente dalla collezione
+   * @brief metodo che elimina un utente dalla collezione, se non ha prestiti attivi.
+   * Il controllo sui prestiti e la rimozione avvengono con entrambi i lock presi, quindi un prestito registrato
+   * da un altro banco nello stesso momento non può restare intestato a un utente eliminato.
    * @param matricolaStr  matricola tramite la quale procediamo all'eliminazione dell'utente.
    */
     public void eliminaUtente(String matricolaStr) {
@@ -72,47 +142,100 @@ public class GestioneUtenti implements Serializable {
             return;
         }
         String matricola = matricolaStr.trim();
-        Utente utente = trovaUtente(matricola);
-        if (utente == null) return;
-
-        boolean haPrestitiAttivi = false;
-        if (gestionePrestiti != null) {
-            haPrestitiAttivi = gestionePrestiti.haPrestitiAttiviPer(utente);
+        Utente utente;
+        boolean rimosso;
+        long stamp = lock.writeLock();
+        try {
+            utente = indice().get(matricola);
+            if (utente == null) return;
+            Runnable rimuovi = () -> {
+                indiciRicerca();
+                indice().remove(matricola);
+                utenti.remove(utente);
+                cognomi.rimuovi(utente);
+                nomi.rimuovi(utente);
+            };
+            if (gestionePrestiti != null) {
+                rimosso = gestionePrestiti.seSenzaPrestitiAttivi(utente, rimuovi);
+            } else {
+                rimuovi.run();
+                rimosso = true;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
         }
-        if (!haPrestitiAttivi) {
-            utenti.remove(utente);
+        if (rimosso) {
+            modifiche.notifica(ModificheModello.Tipo.RIMOSSO, utente);
         }
     }
     /**
      * @brief metodo che ci permette di cercare un determinato utenti in base a determinati parametri
+     * Cognome e nome sono cercati come sottostringa, senza distinzione tra maiuscole e minuscole, tramite gli
+     * indici a trigrammi (con uno o due caratteri l'indice scorre i testi già normalizzati).
+     * Prende il lock condiviso, quindi più ricerche possono girare in parallelo.
      * @param matricola matricola dell'utente
      * @param cognome cognome dell'utente
      * @param nome nome dell'utente.
      * @return utente trovato ed aggiunto alla collezione altrimenti null
      */
     public TreeSet<Utente> cercaUtenti(String matricola, String cognome, String nome) {
+        return cerca(matricola, cognome, nome, false);
+    }
+    /**
+     * @brief cerca gli utenti il cui cognome e nome iniziano con i testi indicati (ricerca "mentre si scrive").
+     * Come cercaUtenti, ma confronta solo l'inizio dei campi; anche con una o due lettere usa l'indice dei prefissi.
+     * @param cognome iniziali del cognome (vuoto o null per non filtrare)
+     * @param nome iniziali del nome (vuoto o null per non filtrare)
+     * @return utenti trovati
+     */
+    public TreeSet<Utente> cercaUtentiPerIniziali(String cognome, String nome) {
+        return cerca(null, cognome, nome, true);
+    }
+    private TreeSet<Utente> cerca(String matricola, String cognome, String nome, boolean iniziali) {
         String matrNorm    = (matricola == null) ? "" : matricola.trim();
-        String cognomeNorm = (cognome   == null) ? "" : cognome.trim().toLowerCase();
-        String nomeNorm    = (nome      == null) ? "" : nome.trim().toLowerCase();
+        String cognomeNorm = (cognome   == null) ? "" : IndiceTrigrammi.normalizza(cognome);
+        String nomeNorm    = (nome      == null) ? "" : IndiceTrigrammi.normalizza(nome);
         TreeSet<Utente> risultato = new TreeSet<Utente>();
-        for (Utente u : utenti) {
-            if (!matrNorm.isEmpty()) {
-                String m = (u.getMatricola() != null) ? u.getMatricola().trim() : "";
-                if (!m.equals(matrNorm)) {
-                    continue; }}
-            if (!cognomeNorm.isEmpty()) {
-                String c = (u.getCognome() != null) ? u.getCognome().toLowerCase() : "";
-                if (!c.contains(cognomeNorm)) {
-                    continue;
-                }
+        if (!matrNorm.isEmpty()) {
+            Utente u = trovaUtente(matrNorm);
+            if (u != null && corrisponde(u.getCognome(), cognomeNorm) && corrisponde(u.getNome(), nomeNorm)) {
+                risultato.add(u);
+            }
+            return risultato;
+        }
+        if (cognomeNorm.isEmpty() && nomeNorm.isEmpty()) {
+            return getUtenti();
+        }
+        List<Utente> candidati;
+        List<Utente> perNome = null;
+        long stamp = leggiConIndici(true);
+        try {
+            candidati = cognomeNorm.isEmpty() ? cerca(nomi, nomeNorm, iniziali) : cerca(cognomi, cognomeNorm, iniziali);
+            if (!cognomeNorm.isEmpty() && !nomeNorm.isEmpty()) {
+                perNome = cerca(nomi, nomeNorm, iniziali);
             }
-            if (!nomeNorm.isEmpty()) {
-                String n = (u.getNome() != null) ? u.getNome().toLowerCase() : "";
-                if (!n.contains(nomeNorm)) {
-                    continue;
-                }
-            }risultato.add(u);
-        }return risultato;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        if (perNome != null) {
+            Set<Utente> nomiTrovati = Collections.newSetFromMap(new IdentityHashMap<Utente, Boolean>());
+            nomiTrovati.addAll(perNome);
+            for (Utente u : candidati) {
+                if (nomiTrovati.contains(u)) risultato.add(u);
+            }
+        } else {
+            risultato.addAll(candidati);
+        }
+        return risultato;
+    }
+    private static List<Utente> cerca(IndiceTrigrammi<Utente> indice, String cercato, boolean iniziali) {
+        return iniziali ? indice.cercaPrefisso(cercato) : indice.cerca(cercato);
+    }
+    /** @brief verifica un singolo campo con la stessa regola della ricerca per sottostringa. */
+    private static boolean corrisponde(String campo, String cercato) {
+        if (cercato.isEmpty()) return true;
+        String c = (campo != null) ? campo.toLowerCase(Locale.ROOT) : "";
+        return c.contains(cercato);
     }
 
    /**
@@ -122,14 +245,117 @@ public class GestioneUtenti implements Serializable {
     */
     public Utente trovaUtente(String matricola) {
         if (matricola == null) return null;
-        String mNorm = matricola.trim();
-        for (Utente u : utenti) {
-            if (mNorm.equals(u.getMatricola())) {
+        long stamp = lock.readLock();
+        try {
+            if (daCaricare != null) return cercaDaCaricare(matricola.trim());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        stamp = leggiConIndici(false);
+        try {
+            return indiceMatricole.get(matricola.trim());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    /**
+     * @brief ricerca binaria tra gli utenti ancora da decodificare: decodifica solo quelli che confronta.
+     * Va chiamato con il lock preso.
+     */
+    private Utente cercaDaCaricare(String matricola) {
+        int basso = 0;
+        int alto = daCaricare.dimensione() - 1;
+        while (basso <= alto) {
+            int medio = (basso + alto) >>> 1;
+            Utente u = daCaricare.get(medio);
+            String letta = chiave(u.getMatricola());
+            int confronto = (letta == null) ? -1 : letta.compareTo(matricola);
+            if (confronto < 0) {
+                basso = medio + 1;
+            } else if (confronto > 0) {
+                alto = medio - 1;
+            } else {
                 return u;
             }
         }
         return null;
     }
+    /**
+     * @brief prende il lock condiviso con tutti gli utenti già in memoria, decodificandoli prima col lock in
+     * scrittura se serve.
+     * @return stamp da rilasciare con unlockRead
+     */
+    private long leggiCaricati() {
+        long stamp = lock.readLock();
+        if (daCaricare == null) {
+            return stamp;
+        }
+        lock.unlockRead(stamp);
+        stamp = lock.writeLock();
+        carica();
+        return lock.tryConvertToReadLock(stamp);
+    }
+    /**
+     * @brief aggiunge all'insieme gli utenti ancora da decodificare. Va chiamato col lock in scrittura.
+     */
+    private void carica() {
+        if (daCaricare != null) {
+            utenti.addAll(daCaricare.tutti());
+            daCaricare = null;
+        }
+    }
+    /**
+     * @brief prende il lock condiviso con gli indici pronti, ricostruendoli prima col lock in scrittura se serve.
+     * @param ricerca true se servono anche gli indici su cognome e nome
+     * @return stamp da rilasciare con unlockRead
+     */
+    private long leggiConIndici(boolean ricerca) {
+        long stamp = lock.readLock();
+        if (indiceMatricole != null && (!ricerca || (cognomi != null && nomi != null))) {
+            return stamp;
+        }
+        lock.unlockRead(stamp);
+        stamp = lock.writeLock();
+        indice();
+        if (ricerca) indiciRicerca();
+        return lock.tryConvertToReadLock(stamp);
+    }
+    /**
+     * @brief restituisce l'indice delle matricole, costruendolo se manca (al primo uso e dopo la deserializzazione).
+     * Una volta costruito viene aggiornato da ogni modifica. Va chiamato col lock in scrittura.
+     */
+    private Map<String, Utente> indice() {
+        if (indiceMatricole == null) {
+            carica();
+            Map<String, Utente> nuovo = new HashMap<String, Utente>(Math.max(16, utenti.size() * 2));
+            for (Utente u : utenti) {
+                nuovo.put(chiave(u.getMatricola()), u);
+            }
+            indiceMatricole = nuovo;
+        }
+        return indiceMatricole;
+    }
+    /**
+     * @brief prepara gli indici di ricerca su cognome e nome, costruendoli con la stessa regola dell'indice matricole.
+     * Va chiamato col lock in scrittura.
+     */
+    private void indiciRicerca() {
+        if (cognomi == null || nomi == null) {
+            carica();
+            cognomi = new IndiceTrigrammi<Utente>(true);
+            nomi = new IndiceTrigrammi<Utente>(true);
+            for (Utente u : utenti) {
+                indicizza(u);
+            }
+        }
+    }
+    private void indicizza(Utente u) {
+        cognomi.aggiorna(u, Collections.singletonList(u.getCognome()));
+        nomi.aggiorna(u, Collections.singletonList(u.getNome()));
+    }
+    private static String chiave(String matricola) {
+        return (matricola == null) ? null : matricola.trim();
+    }
 /**
  * @brief inserisce un determinato utente in blacklist oppure se gia presente lo rimuove dalla blacklist
  * @param utente utente in questione
@@ -138,6 +364,21 @@ public class GestioneUtenti implements Serializable {
     public void setBlacklist(Utente utente, boolean toBlacklist) {
         if (utente != null) {
             utente.setInBlacklist(toBlacklist);
+            modifiche.notifica(ModificheModello.Tipo.MODIFICATO, utente);
         }
     }
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        long stamp = lock.writeLock();
+        try {
+            carica();
+            out.defaultWriteObject();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        modifiche = new ModificheModello<Utente>();
+        lock = new StampedLock();
+    }
 }
\ No newline at end of file
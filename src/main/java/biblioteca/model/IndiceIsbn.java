@@ -0,0 +1,130 @@
+package biblioteca.model;
+
+import java.util.Arrays;
+
+/**
+ * @brief Indice hash ISBN -> Libro a indirizzamento aperto.
+ * Le chiavi sono memorizzate come long primitivi (niente boxing) in un array parallelo a quello dei libri,
+ * con scansione lineare in caso di collisione. La ricerca costa O(1) in media anche su cataloghi molto grandi.
+ * Uno slot è libero quando il libro corrispondente è null.
+ */
+class IndiceIsbn {
+    private static final int CAPACITA_INIZIALE = 16;
+    private long[] chiavi;
+    private Libro[] valori;
+    private int dimensione;
+    /**
+     * @brief costruttore di default, crea un indice vuoto.
+     */
+    IndiceIsbn() {
+        this(CAPACITA_INIZIALE);
+    }
+    /**
+     * @brief costruttore che dimensiona l'indice per un numero atteso di libri.
+     * @param attesi numero di libri che si prevede di inserire.
+     */
+    IndiceIsbn(int attesi) {
+        int capacita = CAPACITA_INIZIALE;
+        while (capacita < attesi * 2) {
+            capacita <<= 1;
+        }
+        chiavi = new long[capacita];
+        valori = new Libro[capacita];
+    }
+    /**
+     * @brief numero di libri presenti nell'indice.
+     * @return dimensione dell'indice
+     */
+    int size() {
+        return dimensione;
+    }
+    /**
+     * @brief cerca il libro associato all'isbn.
+     * @param isbn codice isbn cercato
+     * @return il libro trovato oppure null
+     */
+    Libro get(long isbn) {
+        long[] k = chiavi;
+        Libro[] v = valori;
+        int maschera = k.length - 1;
+        for (int i = slot(isbn, maschera); v[i] != null; i = (i + 1) & maschera) {
+            if (k[i] == isbn) return v[i];
+        }
+        return null;
+    }
+    /**
+     * @brief inserisce o sostituisce il libro associato al suo isbn.
+     * @param libro libro da indicizzare
+     */
+    void put(Libro libro) {
+        if ((dimensione + 1) * 2 > chiavi.length) {
+            ridimensiona(chiavi.length << 1);
+        }
+        long isbn = libro.getIsbn();
+        int maschera = chiavi.length - 1;
+        int i = slot(isbn, maschera);
+        while (valori[i] != null) {
+            if (chiavi[i] == isbn) {
+                valori[i] = libro;
+                return;
+            }
+            i = (i + 1) & maschera;
+        }
+        chiavi[i] = isbn;
+        valori[i] = libro;
+        dimensione++;
+    }
+    /**
+     * @brief rimuove il libro associato all'isbn.
+     * Gli elementi successivi della stessa sequenza vengono spostati indietro, così non servono marcatori di cancellazione.
+     * @param isbn codice isbn da rimuovere
+     * @return il libro rimosso oppure null se non era presente
+     */
+    Libro remove(long isbn) {
+        int maschera = chiavi.length - 1;
+        int i = slot(isbn, maschera);
+        while (valori[i] != null && chiavi[i] != isbn) {
+            i = (i + 1) & maschera;
+        }
+        Libro rimosso = valori[i];
+        if (rimosso == null) return null;
+        int buco = i;
+        for (int j = (i + 1) & maschera; valori[j] != null; j = (j + 1) & maschera) {
+            int ideale = slot(chiavi[j], maschera);
+            // sposta j nel buco solo se il buco si trova tra lo slot ideale di j e j stesso
+            if (((j - ideale) & maschera) >= ((j - buco) & maschera)) {
+                chiavi[buco] = chiavi[j];
+                valori[buco] = valori[j];
+                buco = j;
+            }
+        }
+        chiavi[buco] = 0L;
+        valori[buco] = null;
+        dimensione--;
+        return rimosso;
+    }
+    /**
+     * @brief svuota l'indice mantenendo la capacità attuale.
+     */
+    void clear() {
+        Arrays.fill(chiavi, 0L);
+        Arrays.fill(valori, null);
+        dimensione = 0;
+    }
+    private void ridimensiona(int nuovaCapacita) {
+        long[] vecchieChiavi = chiavi;
+        Libro[] vecchiValori = valori;
+        chiavi = new long[nuovaCapacita];
+        valori = new Libro[nuovaCapacita];
+        dimensione = 0;
+        for (int i = 0; i < vecchiValori.length; i++) {
+            if (vecchiValori[i] != null) {
+                put(vecchiValori[i]);
+            }
+        }
+    }
+    private static int slot(long isbn, int maschera) {
+        long h = isbn * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & maschera;
+    }
+}
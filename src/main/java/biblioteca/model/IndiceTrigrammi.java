@@ -0,0 +1,235 @@
+package biblioteca.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * @brief Indice invertito a trigrammi per la ricerca di sottostringhe senza distinzione tra maiuscole e minuscole.
+ * Ogni elemento viene indicizzato con uno o più testi (ad esempio il titolo, oppure tutti gli autori di un libro):
+ * i testi vengono portati in minuscolo una sola volta e ogni trigramma (tre caratteri consecutivi) rimanda alla
+ * lista ordinata degli identificativi interi degli elementi che lo contengono.
+ * Una ricerca parte dalla lista più corta tra quelle dei trigrammi cercati, scarta con una ricerca binaria
+ * i candidati assenti dalle altre e verifica i pochi rimasti sui testi già normalizzati; le stringhe più corte
+ * di tre caratteri vengono cercate scorrendo i testi normalizzati.
+ * Se l'indice è creato con i prefissi, ogni testo è indicizzato anche preceduto da due caratteri di inizio:
+ * così anche un prefisso di uno o due caratteri diventa un trigramma e la ricerca per prefisso non scorre mai
+ * tutti gli elementi.
+ * Gli elementi sono confrontati per identità, quindi l'indice non dipende da equals/hashCode.
+ * @param <T> tipo degli elementi indicizzati
+ */
+class IndiceTrigrammi<T> {
+    /** caratteri che marcano l'inizio di un testo nei trigrammi dei prefissi (non compaiono nei testi reali) */
+    private static final String INIZIO = "\u0002\u0002";
+
+    private final boolean conPrefissi;
+    /** elemento -> identificativo interno */
+    private final Map<T, Integer> identificativi = new IdentityHashMap<T, Integer>();
+    /** identificativo -> elemento (null se libero) */
+    private final List<T> elementi = new ArrayList<T>();
+    /** identificativo -> testi normalizzati, usati per la verifica finale e per togliere l'elemento dall'indice */
+    private final List<String[]> testi = new ArrayList<String[]>();
+    /** identificativi liberati dalle rimozioni, riusati dai nuovi inserimenti */
+    private final List<Integer> liberi = new ArrayList<Integer>();
+    /** trigramma (tre char impacchettati in un long) -> identificativi degli elementi che lo contengono */
+    private final Map<Long, Lista> posting = new HashMap<Long, Lista>();
+
+    /**
+     * @brief crea un indice per la sola ricerca di sottostringhe.
+     */
+    IndiceTrigrammi() {
+        this(false);
+    }
+    /**
+     * @brief crea un indice vuoto.
+     * @param conPrefissi true per indicizzare anche l'inizio dei testi e poter usare cercaPrefisso
+     */
+    IndiceTrigrammi(boolean conPrefissi) {
+        this.conPrefissi = conPrefissi;
+    }
+    /**
+     * @brief numero di elementi presenti nell'indice.
+     * @return dimensione dell'indice
+     */
+    int size() {
+        return identificativi.size();
+    }
+    /**
+     * @brief indicizza un elemento; se era già presente, i testi precedenti vengono sostituiti.
+     * @param elemento elemento da indicizzare
+     * @param testiElemento testi in cui cercare (i null vengono ignorati)
+     */
+    void aggiorna(T elemento, List<String> testiElemento) {
+        rimuovi(elemento);
+        List<String> normalizzati = new ArrayList<String>(testiElemento.size());
+        for (String t : testiElemento) {
+            if (t != null) normalizzati.add(t.toLowerCase(Locale.ROOT));
+        }
+        String[] array = normalizzati.toArray(new String[0]);
+        int id;
+        if (liberi.isEmpty()) {
+            id = elementi.size();
+            elementi.add(elemento);
+            testi.add(array);
+        } else {
+            id = liberi.remove(liberi.size() - 1);
+            elementi.set(id, elemento);
+            testi.set(id, array);
+        }
+        identificativi.put(elemento, id);
+        for (String testo : array) {
+            String t = chiave(testo);
+            for (int i = 0; i + 3 <= t.length(); i++) {
+                posting.computeIfAbsent(trigramma(t, i), k -> new Lista()).aggiungi(id);
+            }
+        }
+    }
+    /**
+     * @brief toglie un elemento dall'indice.
+     * @param elemento elemento da rimuovere
+     */
+    void rimuovi(T elemento) {
+        Integer id = identificativi.remove(elemento);
+        if (id == null) return;
+        for (String testo : testi.get(id)) {
+            String t = chiave(testo);
+            for (int i = 0; i + 3 <= t.length(); i++) {
+                Long chiave = trigramma(t, i);
+                Lista lista = posting.get(chiave);
+                if (lista != null && lista.rimuovi(id) && lista.dimensione == 0) {
+                    posting.remove(chiave);
+                }
+            }
+        }
+        elementi.set(id, null);
+        testi.set(id, null);
+        liberi.add(id);
+    }
+    /**
+     * @brief cerca gli elementi che hanno almeno un testo contenente la stringa data.
+     * @param cercato stringa da cercare (già normalizzata con normalizza)
+     * @return elementi trovati, in ordine non specificato
+     */
+    List<T> cerca(String cercato) {
+        List<T> risultato = new ArrayList<T>();
+        if (cercato.length() < 3) {
+            for (int id = 0; id < elementi.size(); id++) {
+                String[] t = testi.get(id);
+                if (t != null && contiene(t, cercato)) risultato.add(elementi.get(id));
+            }
+            return risultato;
+        }
+        return filtra(cercato, cercato, false);
+    }
+    /**
+     * @brief cerca gli elementi che hanno almeno un testo che inizia con la stringa data.
+     * Disponibile solo se l'indice è stato creato con i prefissi.
+     * @param prefisso prefisso da cercare (già normalizzato con normalizza)
+     * @return elementi trovati, in ordine non specificato
+     */
+    List<T> cercaPrefisso(String prefisso) {
+        if (!conPrefissi) {
+            throw new IllegalStateException("Indice creato senza prefissi");
+        }
+        return filtra(INIZIO + prefisso, prefisso, true);
+    }
+    /**
+     * @brief interseca le liste dei trigrammi di chiave e verifica i candidati sui testi normalizzati.
+     */
+    private List<T> filtra(String chiave, String cercato, boolean prefisso) {
+        List<T> risultato = new ArrayList<T>();
+        List<Lista> liste = new ArrayList<Lista>();
+        Lista minima = null;
+        for (int i = 0; i + 3 <= chiave.length(); i++) {
+            Lista lista = posting.get(trigramma(chiave, i));
+            if (lista == null) return risultato;
+            liste.add(lista);
+            if (minima == null || lista.dimensione < minima.dimensione) minima = lista;
+        }
+        if (minima == null) {
+            // solo con un prefisso vuoto: vanno bene tutti gli elementi
+            for (int id = 0; id < elementi.size(); id++) {
+                if (elementi.get(id) != null) risultato.add(elementi.get(id));
+            }
+            return risultato;
+        }
+        candidati:
+        for (int k = 0; k < minima.dimensione; k++) {
+            int id = minima.valori[k];
+            for (Lista lista : liste) {
+                if (lista != minima && !lista.contiene(id)) continue candidati;
+            }
+            String[] t = testi.get(id);
+            if (prefisso ? iniziaCon(t, cercato) : contiene(t, cercato)) risultato.add(elementi.get(id));
+        }
+        return risultato;
+    }
+    /**
+     * @brief normalizza una stringa da cercare: spazi esterni rimossi e tutto in minuscolo, come i testi indicizzati.
+     * @param testo stringa da normalizzare
+     * @return stringa normalizzata
+     */
+    static String normalizza(String testo) {
+        return testo.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /** @brief testo su cui calcolare i trigrammi: con i prefissi è preceduto dai caratteri di inizio. */
+    private String chiave(String testo) {
+        return conPrefissi ? INIZIO + testo : testo;
+    }
+
+    private static boolean iniziaCon(String[] testi, String prefisso) {
+        for (String t : testi) {
+            if (t.startsWith(prefisso)) return true;
+        }
+        return false;
+    }
+
+    private static boolean contiene(String[] testi, String cercato) {
+        for (String t : testi) {
+            if (t.contains(cercato)) return true;
+        }
+        return false;
+    }
+
+    private static Long trigramma(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    /**
+     * @brief lista ordinata e senza duplicati di identificativi, su un array di int primitivi.
+     * I nuovi identificativi sono quasi sempre i più grandi, quindi l'inserimento è di solito un'aggiunta in coda.
+     */
+    private static final class Lista {
+        int[] valori = new int[4];
+        int dimensione;
+
+        void aggiungi(int id) {
+            int pos = Arrays.binarySearch(valori, 0, dimensione, id);
+            if (pos >= 0) return;
+            pos = -pos - 1;
+            if (dimensione == valori.length) {
+                valori = Arrays.copyOf(valori, dimensione * 2);
+            }
+            System.arraycopy(valori, pos, valori, pos + 1, dimensione - pos);
+            valori[pos] = id;
+            dimensione++;
+        }
+
+        boolean rimuovi(int id) {
+            int pos = Arrays.binarySearch(valori, 0, dimensione, id);
+            if (pos < 0) return false;
+            System.arraycopy(valori, pos + 1, valori, pos, dimensione - pos - 1);
+            dimensione--;
+            return true;
+        }
+
+        boolean contiene(int id) {
+            return Arrays.binarySearch(valori, 0, dimensione, id) >= 0;
+        }
+    }
+}
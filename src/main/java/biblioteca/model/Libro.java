@@ -5,7 +5,12 @@
  */
 package biblioteca.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -15,16 +20,33 @@ import java.util.Objects;
  * @brief classe libro permette di personalizzare libro in base ai suoi attributi
  * contiene tutti i getter e setter dei suoi campi.
  * ha come attributi titolo, isbn , autore, anno di pubblicazione, copie totali e copie disponibili.
+ * Un libro può essere letto e prestato da più thread: i campi modificabili sono volatile e le copie disponibili
+ * si prendono e si restituiscono con compare-and-set (riservaCopia, rilasciaCopia), senza lock: due prestiti
+ * dell'ultima copia non possono riuscire entrambi e i prestiti di titoli diversi non si aspettano a vicenda.
+ * Copie totali e disponibili stanno in un unico long, così ogni modifica delle copie (anche cambiaCopieTotali
+ * e aggiungiCopie) le aggiorna insieme con un solo compare-and-set e non perde prestiti o restituzioni
+ * concorrenti.
  * @author tommy
  */
 public class Libro implements Serializable, Comparable<Libro> {
     private static final long serialVersionUID = 1L;
     private final long isbn;
-    private String titolo;
-    private List<String> autori;
-    private int annoPubblicazione;
+    private volatile String titolo;
+    private volatile List<String> autori;
+    private volatile int annoPubblicazione;
+    /** copie totali e disponibili come sono scritte dalla serializzazione; i valori correnti sono in copie. */
     private int copieTotali;
     private int copieDisponibili;
+    /** copie totali nei 32 bit alti, copie disponibili nei 32 bit bassi. */
+    private transient volatile long copie;
+    private static final VarHandle COPIE;
+    static {
+        try {
+            COPIE = MethodHandles.lookup().findVarHandle(Libro.class, "copie", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
     /**
      * @brief costruttore per l'inizializzazione dei suoi attributi
      * @param isbn
@@ -42,8 +64,7 @@ public class Libro implements Serializable, Comparable<Libro> {
                 autori != null ? autori : Collections.<String>emptyList()
         );
         this.annoPubblicazione = annoPubblicazione;
-        this.copieTotali = copieTotali;
-        this.copieDisponibili = copieDisponibili;
+        this.copie = copie(copieTotali, copieDisponibili);
     }
 
     /**
@@ -114,31 +135,64 @@ public class Libro implements Serializable, Comparable<Libro> {
  * @return numero totale di copie disponibili
  */
     public int getCopieTotali() {
-        return copieTotali;
+        return totali(copie);
     }
 /**
- * @brief imposta il numero di copie totali del libro
+ * @brief imposta il numero di copie totali del libro; le copie disponibili vengono ridotte se le superano.
  * @param copieTotali 
  */
     public void setCopieTotali(int copieTotali) {
-        this.copieTotali = copieTotali;
-        if (copieDisponibili > copieTotali) {
-            copieDisponibili = copieTotali;
-        }
+        long attuale;
+        do {
+            attuale = copie;
+        } while (!COPIE.compareAndSet(this, attuale,
+                copie(copieTotali, Math.min(disponibili(attuale), copieTotali))));
+    }
+/**
+ * @brief cambia le copie totali lasciando invariate quelle in prestito (totali meno disponibili).
+ * Totali e disponibili cambiano insieme con un solo compare-and-set: un prestito o una restituzione
+ * contemporanei non vanno persi.
+ * @param nuove nuovo numero di copie totali
+ * @return true se le copie sono state cambiate, false se le nuove copie sono meno di quelle in prestito
+ */
+    public boolean cambiaCopieTotali(int nuove) {
+        long attuale;
+        long nuovo;
+        do {
+            attuale = copie;
+            int inPrestito = totali(attuale) - disponibili(attuale);
+            if (nuove < inPrestito) return false;
+            nuovo = copie(nuove, nuove - inPrestito);
+        } while (!COPIE.compareAndSet(this, attuale, nuovo));
+        return true;
+    }
+/**
+ * @brief aggiunge copie al libro: crescono sia le copie totali sia quelle disponibili.
+ * @param quante numero di copie da aggiungere
+ */
+    public void aggiungiCopie(int quante) {
+        long attuale;
+        do {
+            attuale = copie;
+        } while (!COPIE.compareAndSet(this, attuale,
+                copie(totali(attuale) + quante, disponibili(attuale) + quante)));
     }
 /**
  * @brief metodo getter sulle copie
  * @return il numero di copie disponibili
  */
     public int getCopieDisponibili() {
-        return copieDisponibili;
+        return disponibili(copie);
     }
 /**
  * @brief setter per le copie disponibili, imposta il numero di copie disponibili per un determinato libro.
  * @param copieDisponibili 
  */
     public void setCopieDisponibili(int copieDisponibili) {
-        this.copieDisponibili = copieDisponibili;
+        long attuale;
+        do {
+            attuale = copie;
+        } while (!COPIE.compareAndSet(this, attuale, copie(totali(attuale), copieDisponibili)));
     }
 
     /** Restituisce il numero di autori come stringa. */
@@ -151,26 +205,51 @@ public class Libro implements Serializable, Comparable<Libro> {
      * @return true o false in base alla disponibilità del libro
      */
     public boolean isDisponibile() {
-        return copieDisponibili > 0;
+        return disponibili(copie) > 0;
+    }
+
+    /**
+     * @brief prende una copia disponibile, se c'è, in modo atomico.
+     * Il controllo e il decremento sono un unico compare-and-set: con più banchi che prestano lo stesso titolo
+     * le copie non scendono mai sotto zero e nessuno resta bloccato ad aspettare un lock.
+     * @return true se la copia è stata presa, false se non ce n'erano
+     */
+    public boolean riservaCopia() {
+        long attuale;
+        do {
+            attuale = copie;
+            if (disponibili(attuale) <= 0) return false;
+        } while (!COPIE.compareAndSet(this, attuale, copie(totali(attuale), disponibili(attuale) - 1)));
+        return true;
+    }
+
+    /**
+     * @brief rimette a disposizione una copia presa con riservaCopia, senza superare le copie totali.
+     * @return true se la copia è stata rimessa, false se le copie disponibili erano già pari alle totali
+     */
+    public boolean rilasciaCopia() {
+        long attuale;
+        do {
+            attuale = copie;
+            if (disponibili(attuale) >= totali(attuale)) return false;
+        } while (!COPIE.compareAndSet(this, attuale, copie(totali(attuale), disponibili(attuale) + 1)));
+        return true;
     }
 
     /**
      * @brief metodo che serve a decrementare le copie disponibili, richiamato quando prestiamo un libro.
      */
     public void decrementaCopiaDisponibile() {
-        if (copieDisponibili <= 0) {
+        if (!riservaCopia()) {
             throw new IllegalStateException("Nessuna copia disponibile");
         }
-        copieDisponibili--;
     }
 
     /**
      * @brief incrementa le copie disponibili quando un libro viene restituito.
      */
     public void incrementaCopiaDisponibile() {
-        if (copieDisponibili < copieTotali) {
-            copieDisponibili++;
-        }
+        rilasciaCopia();
     }
 /**
  * @brief override del metodo compareTo per confrontare tra loto due isbn
@@ -210,8 +289,28 @@ public class Libro implements Serializable, Comparable<Libro> {
                 "isbn=" + isbn +
                 ", titolo='" + titolo + '\'' +
                 ", annoPubblicazione=" + annoPubblicazione +
-                ", copieTotali=" + copieTotali +
-                ", copieDisponibili=" + copieDisponibili +
+                ", copieTotali=" + getCopieTotali() +
+                ", copieDisponibili=" + getCopieDisponibili() +
                 '}';
     }
-}
\ No newline at end of file
+
+    private static long copie(int totali, int disponibili) {
+        return ((long) totali << 32) | (disponibili & 0xFFFFFFFFL);
+    }
+    private static int totali(long copie) {
+        return (int) (copie >> 32);
+    }
+    private static int disponibili(long copie) {
+        return (int) copie;
+    }
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        long attuale = copie;
+        copieTotali = totali(attuale);
+        copieDisponibili = disponibili(attuale);
+        out.defaultWriteObject();
+    }
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        copie = copie(copieTotali, copieDisponibili);
+    }
+}
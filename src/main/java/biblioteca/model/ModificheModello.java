@@ -0,0 +1,53 @@
+package biblioteca.model;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @brief Ascoltatori delle modifiche di una classe Gestione* (libri, utenti o prestiti).
+ * Dopo ogni inserimento, modifica o rimozione fatta tramite la gestione, gli ascoltatori ricevono il tipo
+ * di modifica e l'oggetto coinvolto, così la vista può aggiornare solo la riga interessata invece di
+ * ricostruire tutta la tabella. Gli ascoltatori vengono chiamati sul thread che ha fatto la modifica.
+ * @param <T> tipo degli oggetti gestiti (Libro, Utente, Prestito)
+ */
+public final class ModificheModello<T> {
+    /** @brief tipo di modifica notificata. */
+    public enum Tipo { AGGIUNTO, MODIFICATO, RIMOSSO }
+
+    /**
+     * @brief riceve le modifiche di una gestione.
+     * @param <T> tipo degli oggetti gestiti
+     */
+    @FunctionalInterface
+    public interface Ascoltatore<T> {
+        /**
+         * @brief chiamato dopo che la modifica è stata applicata al modello.
+         * @param tipo tipo di modifica
+         * @param elemento oggetto aggiunto, modificato o rimosso
+         */
+        void modificato(Tipo tipo, T elemento);
+    }
+
+    private final List<Ascoltatore<T>> ascoltatori = new CopyOnWriteArrayList<Ascoltatore<T>>();
+
+    /**
+     * @brief registra un ascoltatore.
+     * @param ascoltatore ascoltatore da avvisare a ogni modifica
+     */
+    public void aggiungi(Ascoltatore<T> ascoltatore) {
+        if (ascoltatore != null) ascoltatori.add(ascoltatore);
+    }
+    /**
+     * @brief rimuove un ascoltatore registrato in precedenza.
+     * @param ascoltatore ascoltatore da rimuovere
+     */
+    public void rimuovi(Ascoltatore<T> ascoltatore) {
+        ascoltatori.remove(ascoltatore);
+    }
+
+    void notifica(Tipo tipo, T elemento) {
+        for (Ascoltatore<T> a : ascoltatori) {
+            a.modificato(tipo, elemento);
+        }
+    }
+}
@@ -23,7 +23,7 @@ public class Prestito implements Serializable {
     private final Libro libro;
     private final LocalDate dataInizio;
     private final LocalDate dataPrevistaRestituzione;
-    private LocalDate dataRestituzione;
+    private volatile LocalDate dataRestituzione;
 /**
  * @brief costruttore per l'inizializzazione dell'oggetto prestito con tutti i suoi attributi.
  * @param utente
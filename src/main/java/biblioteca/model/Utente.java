@@ -13,16 +13,18 @@ import java.util.Objects;
 /**
  * @brief classe che contiene tutte le informazioni relative ad un utente: nome, cognome, matricola, email, se è o meno in blacklist, elenca e conta i prestiti attivi
  * Questa classe inoltre aggiunge o rimuove un prestito per un determinato utente oltre ad informare se un utente può o meno richiedere nuovi prestiti.
+ * I dati anagrafici sono volatile e l'elenco dei prestiti attivi è protetto dal monitor dell'utente, perché
+ * prestiti e restituzioni possono arrivare da thread diversi da quello che legge.
  * @author tommy
  */
 public class Utente implements Serializable, Comparable<Utente> {
     private static final long serialVersionUID = 1L;    
     public static final int MAX_PRESTITI = 3;
     private final String matricola;
-    private String nome;
-    private String cognome;
-    private String email;
-    private boolean inBlacklist;
+    private volatile String nome;
+    private volatile String cognome;
+    private volatile String email;
+    private volatile boolean inBlacklist;
     private final List<Prestito> prestitiAttivi;
 /**
  * @brief costruttore per l'inizializzazione degli attributi dell'utente.
@@ -104,36 +106,36 @@ public class Utente implements Serializable, Comparable<Utente> {
  * @brief metodo getter sul numero di prestiti attivi per un utente
  * @return il numero di prestiti in corso per un utente
  */
-    public int getNumPrestitiAttivi() {
+    public synchronized int getNumPrestitiAttivi() {
         return prestitiAttivi.size();
     }
 /**
  * @brief metodo getter per i prestiti attivi
- * @return la lista di prestiti in corso dell'utente
+ * @return copia in sola lettura della lista di prestiti in corso dell'utente
  */
-    public List<Prestito> getPrestitiAttivi() {
-        return Collections.unmodifiableList(prestitiAttivi);
+    public synchronized List<Prestito> getPrestitiAttivi() {
+        return Collections.unmodifiableList(new ArrayList<Prestito>(prestitiAttivi));
     }
 
     /**
      * @brief verifica se un utente può richiedere nuovi prestiti.
      * @return true o false in base all'esito della verifica, true se può richiedere nuovi prestiti altrimenti false.
      */
-    public boolean canNuovoPrestito() {
+    public synchronized boolean canNuovoPrestito() {
         return !inBlacklist && prestitiAttivi.size() < MAX_PRESTITI;
     }
 /**
  * @brief metodo che permette di aggiungere un nuovo prestito.
  * @param prestito prestito da aggiungere
  */
-    public void aggiungiPrestito(Prestito prestito) {
+    public synchronized void aggiungiPrestito(Prestito prestito) {
         if (prestito != null && !prestitiAttivi.contains(prestito)) {
             prestitiAttivi.add(prestito);}}
 /**
  * @brief metodo che permette di rimuovere un prestito.
  * @param prestito 
  */
-    public void rimuoviPrestito(Prestito prestito) {
+    public synchronized void rimuoviPrestito(Prestito prestito) {
         prestitiAttivi.remove(prestito);
     }
 /**
@@ -1,14 +1,40 @@
 package biblioteca.persistence;
 
 import biblioteca.model.Autenticazione;
+import biblioteca.model.DatiBiblioteca;
 import biblioteca.model.GestioneLibri;
 import biblioteca.model.GestioneUtenti;
 import biblioteca.model.GestionePrestiti;
+import biblioteca.model.Libro;
+import biblioteca.model.Prestito;
+import biblioteca.model.Utente;
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 /**
  * @brief Gestisce la persistenza dei dati del sistema bibliotecario su file binari.
- * Questa classe si occupa di serializzare e deserializzare gli oggetti principali del modello
- * (libri, utenti, prestiti e credenziali) utilizzando gli stream di oggetti Java.
+ * Libri, utenti e prestiti vengono salvati nel formato binario a layout fisso di FormatoBinario e riletti
+ * tramite file mappati in memoria; i file nel vecchio formato (serializzazione Java) vengono ancora letti e
+ * sono convertiti al primo salvataggio. Le credenziali restano serializzate con gli stream di oggetti Java.
+ * Con il giornale attivo (attivaGiornale) ogni modifica viene aggiunta in coda a giornale.log come record
+ * compatto, invece di riscrivere l'intera collezione; periodicamente il giornale viene compattato
+ * scrivendo gli snapshot completi (libri.dat, utenti.dat, prestiti.dat) e svuotando il log. Ogni compattazione
+ * scrive gli snapshot con una nuova generazione, indicata anche all'inizio del giornale svuotato: un giornale
+ * di una generazione già superata dagli snapshot (compattazione interrotta prima di svuotarlo) viene scartato.
+ * Se invece la compattazione si è interrotta a metà, gli snapshot più recenti del giornale vengono ignorati e
+ * si leggono le copie .bak della generazione del giornale, così libri, utenti e prestiti restano coerenti.
+ * Con abilitaSalvataggioAsincrono() tutte le scritture su disco passano a un thread in background.
+ * Ogni file viene scritto in modo atomico: prima in un file temporaneo sincronizzato sul disco, poi rinominato
+ * al posto di quello vecchio, che resta come generazione precedente (.bak). Se il file principale manca o è
+ * danneggiato (intestazione non valida, scrittura interrotta) il caricamento usa la generazione precedente.
+ * Libri e utenti vengono decodificati solo quando servono: il checksum dell'intero file si verifica allora.
  */
 public class ArchivioFile {
     private final String percorsoBase;
@@ -16,6 +42,29 @@ public class ArchivioFile {
     private static final String FILE_UTENTI     = "utenti.dat";
     private static final String FILE_PRESTITI   = "prestiti.dat";
     private static final String FILE_LOGIN      = "login.dat";
+    private static final String FILE_GIORNALE   = "giornale.log";
+    private static final String[] FILE_SNAPSHOT = { FILE_LIBRI, FILE_UTENTI, FILE_PRESTITI };
+    private static final String ESTENSIONE_TEMPORANEO = ".tmp";
+    private static final String ESTENSIONE_RISERVA    = ".bak";
+    private static final int DIMENSIONE_BUFFER = 64 * 1024;
+    /** dimensione del giornale oltre la quale viene compattato in uno snapshot. */
+    static final long SOGLIA_COMPATTAZIONE = 1L << 20;
+    private Giornale giornale;
+    private GestioneLibri libriGiornale;
+    private GestioneUtenti utentiGiornale;
+    private GestionePrestiti prestitiGiornale;
+    /** byte aggiunti al giornale dall'ultima compattazione, contati al momento della richiesta di scrittura. */
+    private long byteGiornale;
+    private volatile SalvataggioAsincrono asincrono;
+    /** generazione degli snapshot coerenti con il giornale; cambia solo quando una compattazione è completata. */
+    private volatile long generazione;
+    /** ultima generazione assegnata a una compattazione, anche se non ancora scritta (thread chiamante). */
+    private long ultimaGenerazione;
+    /**
+     * impostato dal thread di scrittura quando un record del giornale o una compattazione non viene scritto:
+     * il thread chiamante compatta appena può, anche senza nuovi record.
+     */
+    private volatile boolean daCompattare;
 
     /**
      * @brief Costruttore della classe.
@@ -29,7 +78,9 @@ public class ArchivioFile {
      * @return Un'istanza di GestioneLibri. Se il file non esiste, ritorna un nuovo oggetto vuoto.
      */
     public GestioneLibri caricaLibri() {
-        GestioneLibri gl = caricaOggetto(FILE_LIBRI, GestioneLibri.class);
+        GestioneLibri gl = leggi(FILE_LIBRI, f -> FormatoBinario.isBinario(f)
+                ? FormatoBinario.leggiLibri(f)
+                : deserializza(f, GestioneLibri.class));
         if (gl == null) {
             gl = new GestioneLibri();      // nuovo se il file non esiste
         }
@@ -41,13 +92,16 @@ public class ArchivioFile {
      * @param gl L'oggetto GestioneLibri da serializzare.
      */
     public void salvaLibri(GestioneLibri gl) {
-        salvaOggetto(FILE_LIBRI, gl);}
+        if (gl == null) return;
+        salvaFile(FILE_LIBRI, () -> FormatoBinario.codificaLibri(gl.getLibri(), generazione));}
     /**
      * @brief Carica l'elenco degli utenti dal file locale.
      * @return Un'istanza di GestioneUtenti. Se il file non esiste, ritorna un nuovo oggetto vuoto.
      */
     public GestioneUtenti caricaUtenti() {
-        GestioneUtenti gu = caricaOggetto(FILE_UTENTI, GestioneUtenti.class);
+        GestioneUtenti gu = leggi(FILE_UTENTI, f -> FormatoBinario.isBinario(f)
+                ? FormatoBinario.leggiUtenti(f)
+                : deserializza(f, GestioneUtenti.class));
         if (gu == null) {
             gu = new GestioneUtenti();
         }
@@ -58,32 +112,98 @@ public class ArchivioFile {
      * @param gu L'oggetto GestioneUtenti da serializzare.
      */
     public void salvaUtenti(GestioneUtenti gu) {
-        salvaOggetto(FILE_UTENTI, gu);
+        if (gu == null) return;
+        salvaFile(FILE_UTENTI, () -> FormatoBinario.codificaUtenti(gu.getUtenti(), generazione));
     }
     /**
-     * @brief Carica l'elenco dei prestiti dal file locale.
+     * @brief Carica l'elenco dei prestiti collegandolo ai libri e agli utenti già caricati.
+     * Ogni prestito fa riferimento alle istanze di libro e utente passate (anche per i file nel vecchio formato,
+     * che vengono ricollegati), e i prestiti attivi vengono aggiunti all'elenco dei prestiti del rispettivo utente.
+     * @param gl libri già caricati
+     * @param gu utenti già caricati
      * @return Un'istanza di GestionePrestiti. Se il file non esiste, ritorna un nuovo oggetto vuoto.
      */
-    public GestionePrestiti caricaPrestiti() {
-        GestionePrestiti gp = caricaOggetto(FILE_PRESTITI, GestionePrestiti.class);
-        if (gp == null) {
-            gp = new GestionePrestiti();
-        }
-        return gp;
+    public GestionePrestiti caricaPrestiti(GestioneLibri gl, GestioneUtenti gu) {
+        return leggiPrestitiDaCollegare().collega(gl, gu);
+    }
+    /**
+     * @brief legge prestiti.dat senza aver bisogno di libri e utenti; il collegamento alle loro istanze
+     * avviene dopo, quando sono stati caricati.
+     */
+    private PrestitiDaCollegare leggiPrestitiDaCollegare() {
+        PrestitiDaCollegare letti = leggi(FILE_PRESTITI, f -> {
+            if (FormatoBinario.isBinario(f)) {
+                return FormatoBinario.decodificaPrestiti(f)::collega;
+            }
+            GestionePrestiti letto = deserializza(f, GestionePrestiti.class);
+            if (letto == null) return null;
+            return (gl, gu) -> {
+                letto.ricollega(gl, gu);
+                return letto;
+            };
+        });
+        return (letti != null) ? letti : (gl, gu) -> new GestionePrestiti();
+    }
+    private interface PrestitiDaCollegare {
+        GestionePrestiti collega(GestioneLibri gl, GestioneUtenti gu);
+    }
+    /**
+     * @brief Carica tutti i dati della biblioteca con un'unica identità per ogni libro e utente.
+     * I prestiti fanno riferimento alle stesse istanze contenute in gestione libri e gestione utenti,
+     * e la gestione utenti è già collegata alla gestione prestiti.
+     * @return i dati caricati; le parti senza file sono vuote.
+     */
+    public DatiBiblioteca caricaTutto() {
+        GestioneLibri gl = caricaLibri();
+        GestioneUtenti gu = caricaUtenti();
+        GestionePrestiti gp = caricaPrestiti(gl, gu);
+        gu.setGestionePrestiti(gp);
+        return new DatiBiblioteca(gl, gu, gp, caricaAutenticazione());
+    }
+    /**
+     * @brief Carica tutti i dati come caricaTutto(), leggendo i quattro file in parallelo.
+     * Libri, utenti, prestiti e credenziali vengono letti e decodificati contemporaneamente sull'esecutore;
+     * quando tutte le letture sono finite i prestiti vengono collegati alle istanze di libri e utenti
+     * e la gestione utenti viene collegata alla gestione prestiti, come in caricaTutto().
+     * @param esecutore esecutore su cui fare le letture (con un solo thread equivale al caricamento sequenziale)
+     * @param fileLetto chiamato con il nome di ogni file appena letto, dal thread che l'ha letto; può essere null
+     * @return future completato con i dati caricati
+     */
+    public CompletableFuture<DatiBiblioteca> caricaTuttoInParallelo(Executor esecutore, Consumer<String> fileLetto) {
+        CompletableFuture<GestioneLibri> libri =
+                CompletableFuture.supplyAsync(() -> letto(FILE_LIBRI, caricaLibri(), fileLetto), esecutore);
+        CompletableFuture<GestioneUtenti> utenti =
+                CompletableFuture.supplyAsync(() -> letto(FILE_UTENTI, caricaUtenti(), fileLetto), esecutore);
+        CompletableFuture<PrestitiDaCollegare> prestiti =
+                CompletableFuture.supplyAsync(() -> letto(FILE_PRESTITI, leggiPrestitiDaCollegare(), fileLetto), esecutore);
+        CompletableFuture<Autenticazione> autenticazione =
+                CompletableFuture.supplyAsync(() -> letto(FILE_LOGIN, caricaAutenticazione(), fileLetto), esecutore);
+        return CompletableFuture.allOf(libri, utenti, prestiti, autenticazione).thenApply(v -> {
+            GestioneLibri gl = libri.join();
+            GestioneUtenti gu = utenti.join();
+            GestionePrestiti gp = prestiti.join().collega(gl, gu);
+            gu.setGestionePrestiti(gp);
+            return new DatiBiblioteca(gl, gu, gp, autenticazione.join());
+        });
+    }
+    private static <T> T letto(String nomeFile, T valore, Consumer<String> fileLetto) {
+        if (fileLetto != null) fileLetto.accept(nomeFile);
+        return valore;
     }
     /**
      * @brief Salva lo stato attuale dei prestiti su file.
      * @param gp L'oggetto GestionePrestiti da serializzare.
      */
     public void salvaPrestiti(GestionePrestiti gp) {
-        salvaOggetto(FILE_PRESTITI, gp);
+        if (gp == null) return;
+        salvaFile(FILE_PRESTITI, () -> FormatoBinario.codificaPrestiti(gp.getPrestiti(), generazione));
     }
     /**
      * @brief Carica i dati di autenticazione (credenziali admin) dal file locale.
      * @return Un'istanza di Autenticazione. Se il file non esiste, ritorna un'istanza con valori predefiniti.
      */
     public Autenticazione caricaAutenticazione() {
-        Autenticazione a = caricaOggetto(FILE_LOGIN, Autenticazione.class);
+        Autenticazione a = leggi(FILE_LOGIN, f -> deserializza(f, Autenticazione.class));
         if (a == null) {
             a = new Autenticazione();  // password default (es. "admin")
         }
@@ -96,34 +216,464 @@ public class ArchivioFile {
     public void salvaAutenticazione(Autenticazione a) {
         salvaOggetto(FILE_LOGIN, a);
     }
-    private <T> T caricaOggetto(String nomeFile, Class<T> tipo) {
-        File file = new File(percorsoBase, nomeFile);
-        if (!file.exists()) {
-            return null;
+    /**
+     * @brief Sposta le scritture su file in un thread in background.
+     * Da questo momento i salvataggi completi (salva*) vengono codificati subito e scritti poco dopo l'ultima
+     * modifica, raggruppando le richieste per lo stesso file; i record del giornale vengono codificati subito e
+     * scritti in background nello stesso ordine.
+     * Il thread chiamante (tipicamente il thread JavaFX) non esegue più I/O su disco; flush() attende il completamento.
+     */
+    public synchronized void abilitaSalvataggioAsincrono() {
+        if (asincrono == null) {
+            asincrono = new SalvataggioAsincrono();
         }
-        try (ObjectInputStream ois =
-                     new ObjectInputStream(new FileInputStream(file))) {
-            Object obj = ois.readObject();
-            if (tipo.isInstance(obj)) {
-                return tipo.cast(obj);
+    }
+    /**
+     * @brief Attende che tutte le scritture richieste finora siano state eseguite.
+     * Se intanto la scrittura di un record del giornale è fallita, compatta e attende anche gli snapshot.
+     */
+    public void flush() {
+        SalvataggioAsincrono a = asincrono;
+        if (a == null) return;
+        a.flush();
+        if (giornale != null && daCompattare) {
+            compatta();
+            a.flush();
+        }
+    }
+    /**
+     * @brief Attiva la modalità con giornale per i modelli indicati.
+     * Riapplica sui modelli (appena caricati dagli snapshot) le operazioni rimaste nel giornale e, se ce n'erano,
+     * compatta subito. Se gli snapshot sono già di una generazione successiva a quella del giornale, il giornale
+     * è già compreso in essi e viene solo svuotato. In caso di errore resta attiva la modalità classica a file interi.
+     * @param gl gestione libri caricata con caricaLibri()
+     * @param gu gestione utenti caricata con caricaUtenti(), già collegata alla gestione prestiti
+     * @param gp gestione prestiti caricata con caricaPrestiti(gl, gu)
+     */
+    public void attivaGiornale(GestioneLibri gl, GestioneUtenti gu, GestionePrestiti gp) {
+        chiudiGiornale();
+        flush();
+        daCompattare = false;
+        try {
+            File file = new File(percorsoBase, FILE_GIORNALE);
+            long letta = Giornale.generazione(file);
+            Giornale g = new Giornale(file);
+            int riapplicati = 0;
+            if (letta != Giornale.NESSUNA_GENERAZIONE && snapshotSuccessivi(letta)) {
+                // compattazione interrotta dopo aver scritto gli snapshot: le operazioni sono già comprese
+                generazione = generazioneSnapshot();
+                g.svuota(generazione);
+            } else {
+                riapplicati = g.ripristina(gl, gu, gp);
+                generazione = (letta != Giornale.NESSUNA_GENERAZIONE) ? letta : generazioneSnapshot();
+                if (riapplicati == 0 && g.getGenerazione() != generazione) {
+                    g.svuota(generazione);
+                }
             }
-        } catch (Exception e) {
+            this.giornale = g;
+            this.byteGiornale = (riapplicati > 0) ? g.dimensione() : 0;
+            this.libriGiornale = gl;
+            this.utentiGiornale = gu;
+            this.prestitiGiornale = gp;
+            if (riapplicati > 0) {
+                compatta();
+            }
+        } catch (IOException e) {
             e.printStackTrace();
+            this.giornale = null;
+        }
+    }
+    /**
+     * @brief indica se tutti e tre gli snapshot esistono e sono di una generazione successiva a quella indicata.
+     */
+    private boolean snapshotSuccessivi(long generazione) {
+        for (String nomeFile : FILE_SNAPSHOT) {
+            File file = new File(percorsoBase, nomeFile);
+            if (!file.isFile() || FormatoBinario.generazione(file) <= generazione) return false;
+        }
+        return true;
+    }
+    /**
+     * @brief generazione più recente tra gli snapshot presenti (0 se non ce ne sono).
+     */
+    private long generazioneSnapshot() {
+        long massima = 0;
+        for (String nomeFile : FILE_SNAPSHOT) {
+            massima = Math.max(massima, FormatoBinario.generazione(new File(percorsoBase, nomeFile)));
+        }
+        return massima;
+    }
+    /**
+     * @brief Indica se le modifiche vengono registrate nel giornale.
+     */
+    public boolean isGiornaleAttivo() {
+        return giornale != null;
+    }
+    /**
+     * @brief Registra l'inserimento o la modifica di un libro.
+     * Senza giornale salva l'intero catalogo come salvaLibri.
+     * @param gl gestione libri che contiene il libro
+     * @param libro libro inserito o modificato
+     */
+    public void registraLibro(GestioneLibri gl, Libro libro) {
+        if (giornale == null || libro == null) {
+            salvaLibri(gl);
+            return;
+        }
+        try {
+            accoda(Giornale.codificaLibro(libro));
+        } catch (IOException e) {
+            e.printStackTrace();
+            salvaLibri(gl);
+        }
+    }
+    /**
+     * @brief Registra l'eliminazione di un libro.
+     * @param gl gestione libri da cui è stato eliminato il libro
+     * @param codiceIsbn isbn del libro eliminato, nello stesso formato accettato da eliminaLibro
+     */
+    public void registraEliminazioneLibro(GestioneLibri gl, String codiceIsbn) {
+        long isbn;
+        try {
+            isbn = Long.parseLong(codiceIsbn.trim());
+        } catch (RuntimeException ex) {
+            return;
+        }
+        if (giornale == null) {
+            salvaLibri(gl);
+            return;
+        }
+        try {
+            accoda(Giornale.codificaEliminazioneLibro(isbn));
+        } catch (IOException e) {
+            e.printStackTrace();
+            salvaLibri(gl);
+        }
+    }
+    /**
+     * @brief Registra l'inserimento o la modifica di un utente (blacklist compresa).
+     * @param gu gestione utenti che contiene l'utente
+     * @param utente utente inserito o modificato
+     */
+    public void registraUtente(GestioneUtenti gu, Utente utente) {
+        if (giornale == null || utente == null) {
+            salvaUtenti(gu);
+            return;
+        }
+        try {
+            accoda(Giornale.codificaUtente(utente));
+        } catch (IOException e) {
+            e.printStackTrace();
+            salvaUtenti(gu);
+        }
+    }
+    /**
+     * @brief Registra l'eliminazione di un utente.
+     * @param gu gestione utenti da cui è stato eliminato l'utente
+     * @param matricola matricola dell'utente eliminato
+     */
+    public void registraEliminazioneUtente(GestioneUtenti gu, String matricola) {
+        if (giornale == null || matricola == null) {
+            salvaUtenti(gu);
+            return;
+        }
+        try {
+            accoda(Giornale.codificaEliminazioneUtente(matricola.trim()));
+        } catch (IOException e) {
+            e.printStackTrace();
+            salvaUtenti(gu);
+        }
+    }
+    /**
+     * @brief Registra un nuovo prestito (comprende la copia tolta al libro e il prestito aggiunto all'utente).
+     * Senza giornale salva prestiti, libri e utenti per intero.
+     */
+    public void registraPrestito(GestionePrestiti gp, GestioneLibri gl, GestioneUtenti gu, Prestito prestito) {
+        if (giornale == null || prestito == null) {
+            salvaTutto(gp, gl, gu);
+            return;
+        }
+        try {
+            accoda(Giornale.codificaPrestito(prestito));
+        } catch (IOException e) {
+            e.printStackTrace();
+            salvaTutto(gp, gl, gu);
+        }
+    }
+    /**
+     * @brief Registra la restituzione di un prestito.
+     * Senza giornale salva prestiti, libri e utenti per intero.
+     */
+    public void registraRestituzione(GestionePrestiti gp, GestioneLibri gl, GestioneUtenti gu, Prestito prestito) {
+        if (giornale == null || prestito == null) {
+            salvaTutto(gp, gl, gu);
+            return;
+        }
+        try {
+            accoda(Giornale.codificaRestituzione(prestito));
+        } catch (IOException e) {
+            e.printStackTrace();
+            salvaTutto(gp, gl, gu);
+        }
+    }
+    /**
+     * @brief Compatta il giornale: scrive gli snapshot completi e svuota il log.
+     * Gli snapshot vengono codificati sul thread chiamante, così contengono esattamente le modifiche già
+     * registrate; la scrittura avviene in background se il salvataggio asincrono è attivo.
+     * I tre snapshot hanno una generazione nuova, con cui viene svuotato il giornale; solo allora diventa la
+     * generazione corrente. Se la scrittura fallisce il giornale resta della generazione precedente, i file già
+     * riscritti non ne sostituiscono la copia .bak e la compattazione successiva viene fatta anche senza nuovi record.
+     * Senza giornale, o con il giornale vuoto, non fa nulla.
+     */
+    public void compatta() {
+        if (giornale == null || (byteGiornale == 0 && !daCompattare)) return;
+        final Giornale g = giornale;
+        final long nuova = Math.max(ultimaGenerazione, generazione) + 1;
+        final byte[] libri;
+        final byte[] utenti;
+        final byte[] prestiti;
+        try {
+            libri = FormatoBinario.codificaLibri(libriGiornale.getLibri(), nuova);
+            utenti = FormatoBinario.codificaUtenti(utentiGiornale.getUtenti(), nuova);
+            prestiti = FormatoBinario.codificaPrestiti(prestitiGiornale.getPrestiti(), nuova);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        ultimaGenerazione = nuova;
+        byteGiornale = 0;
+        daCompattare = false;
+        SalvataggioAsincrono a = asincrono;
+        if (a != null) {
+            // un salvataggio intero ancora in attesa verrebbe scritto dopo, sopra lo snapshot più recente
+            a.annulla(FILE_SNAPSHOT);
+        }
+        eseguiScrittura(() -> {
+            try {
+                g.sincronizza();
+                long confermata = generazione;
+                scriviFile(FILE_PRESTITI, prestiti, confermata);
+                scriviFile(FILE_LIBRI, libri, confermata);
+                scriviFile(FILE_UTENTI, utenti, confermata);
+                g.svuota(nuova);
+                generazione = nuova;
+            } catch (IOException e) {
+                e.printStackTrace();
+                daCompattare = true;
+            }
+        });
+    }
+    /**
+     * @brief Compatta e chiude il giornale e completa tutte le scritture in sospeso.
+     * L'archivio torna alla modalità sincrona a file interi.
+     */
+    public void chiudi() {
+        chiudiGiornale();
+        SalvataggioAsincrono a;
+        synchronized (this) {
+            a = asincrono;
+            asincrono = null;
+        }
+        if (a != null) a.chiudi();
+    }
+    private void chiudiGiornale() {
+        if (giornale == null) return;
+        flush();
+        compatta();
+        final Giornale g = giornale;
+        eseguiScrittura(() -> {
+            try {
+                g.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        giornale = null;
+        libriGiornale = null;
+        utentiGiornale = null;
+        prestitiGiornale = null;
+    }
+    /**
+     * @brief aggiunge un record già codificato al giornale.
+     * Se la scrittura fallisce il thread di scrittura lo segnala soltanto: gli snapshot che comprendono la modifica
+     * vengono codificati qui, sul thread chiamante, alla prima occasione (subito senza salvataggio asincrono,
+     * altrimenti al record successivo o al flush).
+     */
+    private void accoda(byte[] record) {
+        final Giornale g = giornale;
+        eseguiScrittura(() -> {
+            try {
+                g.accoda(record);
+            } catch (IOException e) {
+                e.printStackTrace();
+                daCompattare = true;
+            }
+        });
+        byteGiornale += record.length + 8;
+        if (byteGiornale > SOGLIA_COMPATTAZIONE || daCompattare) {
+            compatta();
+        } else if (asincrono != null) {
+            // i record restano sincronizzati anche quando non ne arrivano altri
+            asincrono.segna(FILE_GIORNALE, () -> {
+                try {
+                    g.sincronizza();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+    private void salvaTutto(GestionePrestiti gp, GestioneLibri gl, GestioneUtenti gu) {
+        salvaPrestiti(gp);
+        salvaLibri(gl);
+        salvaUtenti(gu);
+    }
+    /**
+     * @brief esegue subito l'operazione oppure, con il salvataggio asincrono, la accoda al thread in background.
+     */
+    private void eseguiScrittura(Runnable scrittura) {
+        SalvataggioAsincrono a = asincrono;
+        if (a != null) {
+            a.esegui(scrittura);
+        } else {
+            scrittura.run();
+        }
+    }
+    /**
+     * @brief legge un file provando prima la versione principale e poi la generazione precedente (.bak).
+     * Vengono saltate le versioni più recenti della generazione del giornale (vedi generazioneDaCaricare).
+     * @return il valore letto, oppure null se nessuna delle due versioni è leggibile
+     */
+    private <T> T leggi(String nomeFile, Lettura<T> lettura) {
+        File principale = new File(percorsoBase, nomeFile);
+        File riserva = new File(percorsoBase, nomeFile + ESTENSIONE_RISERVA);
+        long limite = generazioneDaCaricare();
+        for (File file : new File[] { principale, riserva }) {
+            if (!file.isFile() || FormatoBinario.generazione(file) > limite) continue;
+            try {
+                T valore = lettura.leggi(file);
+                if (valore != null) return valore;
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
         }
         return null;
     }
-    private void salvaOggetto(String nomeFile, Object obj) {
-        if (obj == null) return;
+    /**
+     * @brief generazione massima degli snapshot da leggere.
+     * Se il giornale indica la generazione g e non tutti gli snapshot sono già successivi, una compattazione si è
+     * interrotta a metà: i file già riscritti (generazione g+1) vanno sostituiti dalla loro copia .bak, e un file
+     * che non ha versioni di generazione al più g non esisteva ancora, quindi viene letto come vuoto.
+     * @return la generazione del giornale, oppure Long.MAX_VALUE se non c'è niente da escludere
+     */
+    private long generazioneDaCaricare() {
+        long g;
+        try {
+            g = Giornale.generazione(new File(percorsoBase, FILE_GIORNALE));
+        } catch (IOException e) {
+            return Long.MAX_VALUE;
+        }
+        if (g == Giornale.NESSUNA_GENERAZIONE || snapshotSuccessivi(g)) return Long.MAX_VALUE;
+        return g;
+    }
+    private interface Lettura<T> {
+        T leggi(File file) throws Exception;
+    }
+    private static <T> T deserializza(File file, Class<T> tipo) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(file), DIMENSIONE_BUFFER))) {
+            Object obj = ois.readObject();
+            return tipo.isInstance(obj) ? tipo.cast(obj) : null;
+        }
+    }
+    /**
+     * @brief salva un file intero; con il salvataggio asincrono segna solo il file come da scrivere.
+     * Il contenuto viene codificato sul thread chiamante, che vede il modello già aggiornato; al thread in
+     * background passano solo i byte. Più richieste ravvicinate per lo stesso file vengono raggruppate in
+     * un'unica scrittura dell'ultimo contenuto.
+     */
+    private void salvaFile(String nomeFile, Codifica codifica) {
+        final byte[] dati;
+        try {
+            dati = codifica.codifica();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        SalvataggioAsincrono a = asincrono;
+        if (a != null) {
+            a.segna(nomeFile, () -> scriviOSegnala(nomeFile, dati));
+        } else {
+            scriviOSegnala(nomeFile, dati);
+        }
+    }
+    private void scriviOSegnala(String nomeFile, byte[] dati) {
+        try {
+            scriviFile(nomeFile, dati, Long.MAX_VALUE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    /**
+     * @brief scrittura atomica: file temporaneo + fsync, il file attuale diventa la copia .bak,
+     * infine il temporaneo viene rinominato al suo posto.
+     * Un file attuale di generazione successiva a riservaFinoA è il resto di una compattazione fallita e viene
+     * sostituito senza diventare la copia .bak, che resta quella coerente con il giornale.
+     */
+    private void scriviFile(String nomeFile, byte[] dati, long riservaFinoA) throws IOException {
         File dir = new File(percorsoBase);
         if (!dir.exists()) {
             dir.mkdirs();
         }
-        File file = new File(dir, nomeFile);
-        try (ObjectOutputStream oos =
-                     new ObjectOutputStream(new FileOutputStream(file))) {
-            oos.writeObject(obj);
-        } catch (Exception e) {
-            e.printStackTrace();
+        Path destinazione = new File(dir, nomeFile).toPath();
+        Path temporaneo = new File(dir, nomeFile + ESTENSIONE_TEMPORANEO).toPath();
+        Path riserva = new File(dir, nomeFile + ESTENSIONE_RISERVA).toPath();
+        try {
+            try (FileOutputStream fos = new FileOutputStream(temporaneo.toFile());
+                 BufferedOutputStream out = new BufferedOutputStream(fos, DIMENSIONE_BUFFER)) {
+                out.write(dati);
+                out.flush();
+                fos.getFD().sync();
+            }
+            if (Files.isRegularFile(destinazione)
+                    && FormatoBinario.generazione(destinazione.toFile()) <= riservaFinoA) {
+                sposta(destinazione, riserva);
+            }
+            sposta(temporaneo, destinazione);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporaneo);
+            throw e;
+        }
+        sincronizzaCartella(dir);
+    }
+    private static void sposta(Path da, Path a) throws IOException {
+        try {
+            Files.move(da, a, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(da, a, StandardCopyOption.REPLACE_EXISTING);
         }
     }
-}
\ No newline at end of file
+    /**
+     * @brief rende persistenti le rinomine; non tutti i sistemi permettono di aprire una cartella, in quel caso si ignora.
+     */
+    private static void sincronizzaCartella(File dir) {
+        try (FileChannel canale = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            canale.force(true);
+        } catch (IOException e) {
+            // cartella non sincronizzabile su questo sistema
+        }
+    }
+    private interface Codifica {
+        byte[] codifica() throws IOException;
+    }
+    private void salvaOggetto(String nomeFile, Object obj) {
+        if (obj == null) return;
+        salvaFile(nomeFile, () -> {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+                oos.writeObject(obj);
+            }
+            return bytes.toByteArray();
+        });
+    }
+}
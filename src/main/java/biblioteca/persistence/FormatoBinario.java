@@ -0,0 +1,439 @@
+package biblioteca.persistence;
+
+import biblioteca.model.ElencoDifferito;
+import biblioteca.model.GestioneLibri;
+import biblioteca.model.GestionePrestiti;
+import biblioteca.model.GestioneUtenti;
+import biblioteca.model.Libro;
+import biblioteca.model.Prestito;
+import biblioteca.model.Utente;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+/**
+ * @brief Formato binario a layout fisso per libri, utenti e prestiti, letto tramite MappedByteBuffer.
+ * Struttura del file:
+ * - intestazione di 40 byte: magia "BIBL", versione, tipo di record, numero di record, dimensione di un record,
+ *   inizio della zona stringhe, crc32 di tutto ciò che segue, generazione dello snapshot e lunghezza del file;
+ * - i record, tutti della stessa dimensione, uno dopo l'altro (il record i-esimo si trova a un offset calcolabile);
+ * - la zona stringhe: ogni stringa è [lunghezza][byte UTF-8] e compare una sola volta, i record la indicano con
+ *   il suo offset (-1 per null). Gli autori di un libro sono un elenco [numero][offset...] nella stessa zona.
+ * I prestiti non copiano utente e libro ma li indicano con matricola e isbn, le date sono giorni dall'epoca.
+ * La decodifica non usa la riflessione: ogni campo viene letto direttamente dalla sua posizione nel buffer.
+ * Libri e utenti vengono decodificati solo quando servono (ElencoDifferito): all'apertura si controllano
+ * l'intestazione e la lunghezza del file, il crc32 quando vengono decodificati tutti. Così il caricamento non
+ * dipende dal numero di record. I prestiti invece sono decodificati e verificati subito, perché quelli attivi vanno
+ * collegati ai rispettivi utenti.
+ */
+final class FormatoBinario {
+    static final int MAGIA = 0x4249424C; // "BIBL"
+    static final short VERSIONE = 4;
+    static final byte TIPO_LIBRI = 1;
+    static final byte TIPO_UTENTI = 2;
+    static final byte TIPO_PRESTITI = 3;
+    static final int INTESTAZIONE = 40;
+    /** il crc32 copre tutto ciò che segue questa posizione, generazione e lunghezza comprese. */
+    private static final int INIZIO_CRC = 24;
+    static final int RECORD_LIBRO = 32;
+    static final int RECORD_UTENTE = 20;
+    static final int RECORD_PRESTITO = 40;
+    private static final int NESSUNO = -1;
+    private static final long NESSUNA_DATA = Long.MIN_VALUE;
+
+    private FormatoBinario() { }
+    /**
+     * @brief verifica se il file inizia con l'intestazione di questo formato (altrimenti è un file serializzato Java).
+     */
+    static boolean isBinario(File file) {
+        if (!file.isFile() || file.length() < INTESTAZIONE) return false;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIA;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    /**
+     * @brief generazione dello snapshot scritta nell'intestazione; 0 per i file serializzati Java e per i file
+     * illeggibili.
+     */
+    static long generazione(File file) {
+        if (!isBinario(file)) return 0;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readInt();
+            if (in.readShort() != VERSIONE) return 0;
+            in.skipNBytes(INIZIO_CRC - 6);
+            return in.readLong();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    static byte[] codificaLibri(Collection<Libro> libri, long generazione) throws IOException {
+        Scrittore s = new Scrittore(TIPO_LIBRI, RECORD_LIBRO, libri.size(), generazione);
+        for (Libro l : libri) {
+            ByteBuffer r = s.record();
+            r.putLong(l.getIsbn());
+            r.putInt(s.stringa(l.getTitolo()));
+            r.putInt(s.elenco(l.getAutori()));
+            r.putInt(l.getAnnoPubblicazione());
+            r.putInt(l.getCopieTotali());
+            r.putInt(l.getCopieDisponibili());
+            r.putInt(0);
+        }
+        return s.bytes();
+    }
+
+    static byte[] codificaUtenti(Collection<Utente> utenti, long generazione) throws IOException {
+        Scrittore s = new Scrittore(TIPO_UTENTI, RECORD_UTENTE, utenti.size(), generazione);
+        for (Utente u : utenti) {
+            ByteBuffer r = s.record();
+            r.putInt(s.stringa(u.getMatricola()));
+            r.putInt(s.stringa(u.getNome()));
+            r.putInt(s.stringa(u.getCognome()));
+            r.putInt(s.stringa(u.getEmail()));
+            r.put((byte) (u.isInBlacklist() ? 1 : 0));
+            r.put((byte) 0);
+            r.putShort((short) 0);
+        }
+        return s.bytes();
+    }
+
+    static byte[] codificaPrestiti(List<Prestito> prestiti, long generazione) throws IOException {
+        Scrittore s = new Scrittore(TIPO_PRESTITI, RECORD_PRESTITO, prestiti.size(), generazione);
+        for (Prestito p : prestiti) {
+            ByteBuffer r = s.record();
+            r.putInt(s.stringa(p.getUtente() != null ? p.getUtente().getMatricola() : null));
+            r.putInt(0);
+            r.putLong(p.getLibro() != null ? p.getLibro().getIsbn() : 0L);
+            r.putLong(giorno(p.getDataInizio()));
+            r.putLong(giorno(p.getDataPrevistaRestituzione()));
+            r.putLong(giorno(p.getDataRestituzione()));
+        }
+        return s.bytes();
+    }
+
+    /**
+     * @brief apre il file dei libri; i record vengono decodificati dalla gestione quando servono.
+     */
+    static GestioneLibri leggiLibri(File file) throws IOException {
+        Lettore in = new Lettore(file, TIPO_LIBRI, RECORD_LIBRO);
+        return GestioneLibri.daFile(new Elenco<Libro>(in, pos -> {
+            ByteBuffer b = in.buffer;
+            return new Libro(b.getLong(pos), in.stringa(b.getInt(pos + 8)), in.elenco(b.getInt(pos + 12)),
+                    b.getInt(pos + 16), b.getInt(pos + 20), b.getInt(pos + 24));
+        }));
+    }
+    /**
+     * @brief apre il file degli utenti; i record vengono decodificati dalla gestione quando servono.
+     */
+    static GestioneUtenti leggiUtenti(File file) throws IOException {
+        Lettore in = new Lettore(file, TIPO_UTENTI, RECORD_UTENTE);
+        return GestioneUtenti.daFile(new Elenco<Utente>(in, pos -> {
+            ByteBuffer b = in.buffer;
+            Utente u = new Utente(in.stringa(b.getInt(pos)), in.stringa(b.getInt(pos + 4)),
+                    in.stringa(b.getInt(pos + 8)), in.stringa(b.getInt(pos + 12)));
+            u.setInBlacklist(b.get(pos + 16) != 0);
+            return u;
+        }));
+    }
+    /**
+     * @brief record di un file mappato, decodificati al primo accesso e poi conservati.
+     * Il file resta mappato finché la gestione non li ha chiesti tutti (tutti()), poi il buffer può essere liberato.
+     */
+    private static final class Elenco<T> implements ElencoDifferito<T> {
+        private final Lettore in;
+        private final Decodifica<T> decodifica;
+        private final AtomicReferenceArray<T> decodificati;
+
+        Elenco(Lettore in, Decodifica<T> decodifica) {
+            this.in = in;
+            this.decodifica = decodifica;
+            this.decodificati = new AtomicReferenceArray<T>(in.numero);
+        }
+
+        @Override
+        public int dimensione() {
+            return in.numero;
+        }
+
+        @Override
+        public T get(int i) {
+            T elemento = decodificati.get(i);
+            if (elemento != null) return elemento;
+            try {
+                elemento = decodifica.decodifica(in.record(i));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            // se un altro thread l'ha decodificato nel frattempo vale la sua istanza
+            return decodificati.compareAndSet(i, null, elemento) ? elemento : decodificati.get(i);
+        }
+
+        @Override
+        public List<T> tutti() {
+            try {
+                in.verifica();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            List<T> elementi = new ArrayList<T>(in.numero);
+            for (int i = 0; i < in.numero; i++) {
+                elementi.add(get(i));
+            }
+            return elementi;
+        }
+    }
+    private interface Decodifica<T> {
+        T decodifica(int pos) throws IOException;
+    }
+    /**
+     * @brief legge e verifica il file dei prestiti senza bisogno di libri e utenti, che possono essere
+     * caricati nel frattempo da altri thread; il collegamento si fa dopo con PrestitiLetti.collega.
+     */
+    static PrestitiLetti decodificaPrestiti(File file) throws IOException {
+        Lettore in = new Lettore(file, TIPO_PRESTITI, RECORD_PRESTITO);
+        in.verifica();
+        PrestitiLetti letti = new PrestitiLetti(in.numero);
+        for (int i = 0; i < in.numero; i++) {
+            int pos = in.record(i);
+            ByteBuffer b = in.buffer;
+            letti.matricole[i] = in.stringa(b.getInt(pos));
+            letti.isbn[i] = b.getLong(pos + 8);
+            letti.inizio[i] = data(b.getLong(pos + 16));
+            letti.prevista[i] = data(b.getLong(pos + 24));
+            letti.restituzione[i] = data(b.getLong(pos + 32));
+        }
+        return letti;
+    }
+    /**
+     * @brief campi dei prestiti letti dal file, con libro e utente indicati solo da isbn e matricola.
+     */
+    static final class PrestitiLetti {
+        private final String[] matricole;
+        private final long[] isbn;
+        private final LocalDate[] inizio;
+        private final LocalDate[] prevista;
+        private final LocalDate[] restituzione;
+
+        private PrestitiLetti(int numero) {
+            matricole = new String[numero];
+            isbn = new long[numero];
+            inizio = new LocalDate[numero];
+            prevista = new LocalDate[numero];
+            restituzione = new LocalDate[numero];
+        }
+        /**
+         * @brief crea i prestiti facendoli puntare alle istanze di gl e gu (o a segnaposto se mancano).
+         */
+        GestionePrestiti collega(GestioneLibri gl, GestioneUtenti gu) {
+            List<Prestito> prestiti = new ArrayList<Prestito>(isbn.length);
+            Map<String, Utente> segnapostoUtenti = new HashMap<String, Utente>();
+            Map<Long, Libro> segnapostoLibri = new HashMap<Long, Libro>();
+            for (int i = 0; i < isbn.length; i++) {
+                String matricola = matricole[i];
+                Utente u = (gu != null) ? gu.trovaUtente(matricola) : null;
+                if (u == null) {
+                    u = segnapostoUtenti.computeIfAbsent(matricola, m -> new Utente(m, "", "", ""));
+                }
+                Libro l = (gl != null) ? gl.trovaLibro(isbn[i]) : null;
+                if (l == null) {
+                    l = segnapostoLibri.computeIfAbsent(isbn[i], k -> new Libro(k, "", null, 0, 0, 0));
+                }
+                Prestito p = new Prestito(u, l, inizio[i], prevista[i]);
+                if (restituzione[i] != null) {
+                    p.setDataRestituzione(restituzione[i]);
+                } else {
+                    u.aggiungiPrestito(p);
+                }
+                prestiti.add(p);
+            }
+            return new GestionePrestiti(prestiti);
+        }
+    }
+
+    private static long giorno(LocalDate d) {
+        return (d != null) ? d.toEpochDay() : NESSUNA_DATA;
+    }
+
+    private static LocalDate data(long giorno) {
+        return (giorno != NESSUNA_DATA) ? LocalDate.ofEpochDay(giorno) : null;
+    }
+    /**
+     * @brief costruisce in memoria record e zona stringhe, restituiti come un unico array pronto da scrivere.
+     */
+    private static final class Scrittore {
+        private final ByteBuffer record;
+        private final ByteArrayOutputStream bytesStringhe = new ByteArrayOutputStream();
+        private final DataOutputStream stringhe = new DataOutputStream(bytesStringhe);
+        private final Map<String, Integer> offsetStringhe = new HashMap<String, Integer>();
+        private final int dimensioneRecord;
+
+        Scrittore(byte tipo, int dimensioneRecord, int numero, long generazione) {
+            this.dimensioneRecord = dimensioneRecord;
+            this.record = ByteBuffer.allocate(INTESTAZIONE + dimensioneRecord * numero);
+            record.putInt(MAGIA);
+            record.putShort(VERSIONE);
+            record.put(tipo);
+            record.put((byte) 0);
+            record.putInt(numero);
+            record.putInt(dimensioneRecord);
+            record.putInt(0); // inizio zona stringhe, scritto alla fine
+            record.putInt(0);
+            record.putLong(generazione);
+            record.putLong(0); // lunghezza del file, scritta alla fine
+        }
+
+        ByteBuffer record() {
+            if (record.remaining() < dimensioneRecord) {
+                throw new IllegalStateException("La collezione è cambiata durante il salvataggio");
+            }
+            return record;
+        }
+
+        int stringa(String s) throws IOException {
+            if (s == null) return NESSUNO;
+            Integer offset = offsetStringhe.get(s);
+            if (offset == null) {
+                offset = stringhe.size();
+                byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+                stringhe.writeInt(utf8.length);
+                stringhe.write(utf8);
+                offsetStringhe.put(s, offset);
+            }
+            return offset;
+        }
+
+        int elenco(List<String> valori) throws IOException {
+            if (valori == null || valori.isEmpty()) return NESSUNO;
+            int[] riferimenti = new int[valori.size()];
+            for (int i = 0; i < riferimenti.length; i++) {
+                riferimenti[i] = stringa(valori.get(i));
+            }
+            int offset = stringhe.size();
+            stringhe.writeInt(riferimenti.length);
+            for (int r : riferimenti) {
+                stringhe.writeInt(r);
+            }
+            return offset;
+        }
+
+        byte[] bytes() throws IOException {
+            if (record.hasRemaining()) {
+                throw new IllegalStateException("La collezione è cambiata durante il salvataggio");
+            }
+            record.putInt(16, record.capacity());
+            stringhe.flush();
+            record.putLong(32, (long) record.capacity() + bytesStringhe.size());
+            ByteArrayOutputStream out = new ByteArrayOutputStream(record.capacity() + bytesStringhe.size());
+            out.write(record.array());
+            bytesStringhe.writeTo(out);
+            byte[] bytes = out.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes, INIZIO_CRC, bytes.length - INIZIO_CRC);
+            ByteBuffer.wrap(bytes).putInt(20, (int) crc.getValue());
+            return bytes;
+        }
+    }
+    /**
+     * @brief mappa il file in memoria e ne verifica l'intestazione; i campi vengono letti per posizione.
+     * Un file troncato viene riconosciuto subito dalla lunghezza scritta nell'intestazione; il crc32 dell'intero
+     * contenuto viene controllato da verifica().
+     */
+    private static final class Lettore {
+        final MappedByteBuffer buffer;
+        final int numero;
+        private final int dimensioneRecord;
+        private final int inizioStringhe;
+        private final File file;
+
+        Lettore(File file, byte tipo, int dimensioneMinima) throws IOException {
+            try (FileChannel canale = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                buffer = canale.map(FileChannel.MapMode.READ_ONLY, 0, canale.size());
+            }
+            this.file = file;
+            if (buffer.capacity() < INTESTAZIONE || buffer.getInt(0) != MAGIA) {
+                throw new IOException("Formato non riconosciuto: " + file);
+            }
+            short versione = buffer.getShort(4);
+            if (versione != VERSIONE) {
+                throw new IOException("Versione del formato non supportata: " + versione);
+            }
+            if (buffer.getLong(32) != buffer.capacity()) {
+                throw new IOException("File incompleto: " + file);
+            }
+            if (buffer.get(6) != tipo) {
+                throw new IOException("Il file " + file + " non contiene il tipo di record atteso");
+            }
+            numero = buffer.getInt(8);
+            dimensioneRecord = buffer.getInt(12);
+            inizioStringhe = buffer.getInt(16);
+            if (numero < 0 || dimensioneRecord < dimensioneMinima
+                    || (long) INTESTAZIONE + (long) numero * dimensioneRecord > inizioStringhe
+                    || inizioStringhe > buffer.capacity()) {
+                throw new IOException("File danneggiato: " + file);
+            }
+        }
+
+        /**
+         * @brief controlla il crc32 di tutto il contenuto: legge l'intero file, quindi si fa una volta sola.
+         */
+        void verifica() throws IOException {
+            CRC32 crc = new CRC32();
+            ByteBuffer contenuto = buffer.duplicate();
+            contenuto.position(INIZIO_CRC);
+            crc.update(contenuto);
+            if ((int) crc.getValue() != buffer.getInt(20)) {
+                throw new IOException("Checksum non valido, file danneggiato: " + file);
+            }
+        }
+
+        int record(int i) {
+            return INTESTAZIONE + i * dimensioneRecord;
+        }
+
+        String stringa(int offset) throws IOException {
+            if (offset == NESSUNO) return null;
+            int pos = posizione(offset, 4);
+            int lunghezza = buffer.getInt(pos);
+            byte[] utf8 = new byte[lunghezza];
+            buffer.get(posizione(offset + 4, lunghezza), utf8);
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+
+        List<String> elenco(int offset) throws IOException {
+            if (offset == NESSUNO) return new ArrayList<String>();
+            int n = buffer.getInt(posizione(offset, 4));
+            List<String> valori = new ArrayList<String>(n);
+            int pos = posizione(offset + 4, n * 4);
+            for (int i = 0; i < n; i++) {
+                valori.add(stringa(buffer.getInt(pos + i * 4)));
+            }
+            return valori;
+        }
+
+        private int posizione(int offset, int lunghezza) throws IOException {
+            long pos = (long) inizioStringhe + offset;
+            if (offset < 0 || lunghezza < 0 || pos + lunghezza > buffer.capacity()) {
+                throw new IOException("Riferimento a stringa non valido");
+            }
+            return (int) pos;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package biblioteca.persistence;
+
+import biblioteca.model.GestioneLibri;
+import biblioteca.model.GestionePrestiti;
+import biblioteca.model.GestioneUtenti;
+import biblioteca.model.Libro;
+import biblioteca.model.Prestito;
+import biblioteca.model.Utente;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+/**
+ * @brief Giornale delle operazioni (write-ahead log) in sola aggiunta.
+ * Ogni modifica al modello viene scritta come un record compatto: [lunghezza][crc32][tipo, dati].
+ * I record vengono scritti subito sul file, mentre la sincronizzazione sul disco (fsync) è raggruppata
+ * ogni RECORD_PER_SINCRONIZZAZIONE record o dopo MILLIS_PER_SINCRONIZZAZIONE millisecondi.
+ * All'avvio il giornale viene riapplicato sull'ultimo snapshot; un record finale incompleto o con crc
+ * errato (scrittura interrotta) viene scartato. Il primo record indica la generazione degli snapshot su cui
+ * il giornale va riapplicato (vedi svuota(long)): se gli snapshot sul disco sono già di una generazione
+ * successiva, il giornale è già compreso in essi e non va riapplicato (ArchivioFile lo svuota e basta).
+ * Un prestito già attivo non viene comunque registrato di nuovo e una restituzione senza prestito attivo
+ * viene ignorata.
+ */
+public class Giornale implements Closeable {
+    static final int RECORD_PER_SINCRONIZZAZIONE = 32;
+    static final long MILLIS_PER_SINCRONIZZAZIONE = 200;
+    private static final int INTESTAZIONE = 8;
+
+    private static final byte LIBRO = 1;
+    private static final byte LIBRO_ELIMINATO = 2;
+    private static final byte UTENTE = 3;
+    private static final byte UTENTE_ELIMINATO = 4;
+    private static final byte PRESTITO = 5;
+    private static final byte RESTITUZIONE = 6;
+    private static final byte GENERAZIONE = 7;
+    /** generazione restituita per un giornale che non ne indica una (vuoto o scritto da versioni precedenti). */
+    static final long NESSUNA_GENERAZIONE = -1;
+    /** dimensione in byte del record di generazione, unico contenuto di un giornale appena svuotato. */
+    static final int DIMENSIONE_RECORD_GENERAZIONE = INTESTAZIONE + 9;
+
+    private final FileChannel canale;
+    private int nonSincronizzati;
+    private long ultimaSincronizzazione;
+    private long generazione = NESSUNA_GENERAZIONE;
+    /**
+     * @brief apre (o crea) il file del giornale, posizionandosi in coda.
+     * @param file file del giornale
+     * @throws IOException se il file non può essere aperto
+     */
+    public Giornale(File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+        this.canale = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.canale.position(canale.size());
+        this.ultimaSincronizzazione = System.currentTimeMillis();
+    }
+    /**
+     * @brief legge la generazione indicata dal primo record del giornale, senza aprirlo in scrittura.
+     * @return la generazione, oppure NESSUNA_GENERAZIONE se il file manca o non inizia con un record di generazione
+     */
+    static long generazione(File file) throws IOException {
+        if (!file.isFile() || file.length() < DIMENSIONE_RECORD_GENERAZIONE) return NESSUNA_GENERAZIONE;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            int lunghezza = in.readInt();
+            int crc = in.readInt();
+            if (lunghezza != 9) return NESSUNA_GENERAZIONE;
+            byte[] dati = new byte[lunghezza];
+            in.readFully(dati);
+            if (crc(dati) != crc || dati[0] != GENERAZIONE) return NESSUNA_GENERAZIONE;
+            return ByteBuffer.wrap(dati, 1, 8).getLong();
+        }
+    }
+    /**
+     * @brief generazione degli snapshot a cui si riferisce il giornale, letta da ripristina o scritta da svuota(long).
+     */
+    public long getGenerazione() {
+        return generazione;
+    }
+    /**
+     * @brief dimensione attuale del giornale in byte.
+     */
+    public long dimensione() throws IOException {
+        return canale.size();
+    }
+    /**
+     * @brief riapplica sul modello tutti i record validi del giornale, troncando un'eventuale coda danneggiata.
+     * Va chiamato subito dopo l'apertura, prima di scrivere nuovi record.
+     * @return numero di record riapplicati
+     */
+    public int ripristina(GestioneLibri gl, GestioneUtenti gu, GestionePrestiti gp) throws IOException {
+        long lunghezzaFile = canale.size();
+        ByteBuffer buf = ByteBuffer.allocate((int) lunghezzaFile);
+        canale.position(0);
+        while (buf.hasRemaining() && canale.read(buf) >= 0) {
+            // lettura completa del file
+        }
+        buf.flip();
+        int applicati = 0;
+        long ultimoValido = 0;
+        while (buf.remaining() >= INTESTAZIONE) {
+            int lunghezza = buf.getInt();
+            int crc = buf.getInt();
+            if (lunghezza <= 0 || lunghezza > buf.remaining()) break;
+            byte[] dati = new byte[lunghezza];
+            buf.get(dati);
+            if (crc(dati) != crc) break;
+            ultimoValido = buf.position();
+            if (dati[0] == GENERAZIONE && dati.length == 9) {
+                generazione = ByteBuffer.wrap(dati, 1, 8).getLong();
+                continue;
+            }
+            try {
+                applica(dati, gl, gu, gp);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            applicati++;
+        }
+        if (ultimoValido < lunghezzaFile) {
+            canale.truncate(ultimoValido);
+            canale.force(true);
+        }
+        canale.position(ultimoValido);
+        return applicati;
+    }
+    /** @brief registra l'inserimento o la modifica di un libro (stato completo). */
+    public void scriviLibro(Libro l) throws IOException {
+        accoda(codificaLibro(l));
+    }
+    static byte[] codificaLibro(Libro l) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(LIBRO);
+        out.writeLong(l.getIsbn());
+        scriviStringa(out, l.getTitolo());
+        List<String> autori = l.getAutori();
+        out.writeInt(autori.size());
+        for (String a : autori) {
+            scriviStringa(out, a);
+        }
+        out.writeInt(l.getAnnoPubblicazione());
+        out.writeInt(l.getCopieTotali());
+        out.writeInt(l.getCopieDisponibili());
+        return bytes.toByteArray();
+    }
+    /** @brief registra l'eliminazione di un libro. */
+    public void scriviEliminazioneLibro(long isbn) throws IOException {
+        accoda(codificaEliminazioneLibro(isbn));
+    }
+    static byte[] codificaEliminazioneLibro(long isbn) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(9);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(LIBRO_ELIMINATO);
+        out.writeLong(isbn);
+        return bytes.toByteArray();
+    }
+    /** @brief registra l'inserimento o la modifica di un utente (stato completo, blacklist compresa). */
+    public void scriviUtente(Utente u) throws IOException {
+        accoda(codificaUtente(u));
+    }
+    static byte[] codificaUtente(Utente u) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(UTENTE);
+        scriviStringa(out, u.getMatricola());
+        scriviStringa(out, u.getNome());
+        scriviStringa(out, u.getCognome());
+        scriviStringa(out, u.getEmail());
+        out.writeBoolean(u.isInBlacklist());
+        return bytes.toByteArray();
+    }
+    /** @brief registra l'eliminazione di un utente. */
+    public void scriviEliminazioneUtente(String matricola) throws IOException {
+        accoda(codificaEliminazioneUtente(matricola));
+    }
+    static byte[] codificaEliminazioneUtente(String matricola) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(UTENTE_ELIMINATO);
+        scriviStringa(out, matricola);
+        return bytes.toByteArray();
+    }
+    /** @brief registra un nuovo prestito tramite i riferimenti a utente e libro. */
+    public void scriviPrestito(Prestito p) throws IOException {
+        accoda(codificaPrestito(p));
+    }
+    static byte[] codificaPrestito(Prestito p) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(48);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(PRESTITO);
+        scriviChiave(out, p);
+        out.writeLong(giorno(p.getDataPrevistaRestituzione()));
+        return bytes.toByteArray();
+    }
+    /** @brief registra la restituzione di un prestito. */
+    public void scriviRestituzione(Prestito p) throws IOException {
+        accoda(codificaRestituzione(p));
+    }
+    static byte[] codificaRestituzione(Prestito p) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(48);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(RESTITUZIONE);
+        scriviChiave(out, p);
+        out.writeLong(giorno(p.getDataRestituzione()));
+        return bytes.toByteArray();
+    }
+    /**
+     * @brief forza sul disco i record scritti finora.
+     */
+    public void sincronizza() throws IOException {
+        if (nonSincronizzati > 0) {
+            canale.force(false);
+            nonSincronizzati = 0;
+        }
+        ultimaSincronizzazione = System.currentTimeMillis();
+    }
+    /**
+     * @brief svuota il giornale, da chiamare dopo aver scritto uno snapshot completo.
+     */
+    public void svuota() throws IOException {
+        canale.truncate(0);
+        canale.position(0);
+        canale.force(true);
+        nonSincronizzati = 0;
+        ultimaSincronizzazione = System.currentTimeMillis();
+        generazione = NESSUNA_GENERAZIONE;
+    }
+    /**
+     * @brief svuota il giornale e lo fa ripartire dagli snapshot della generazione indicata.
+     * Il record di generazione viene sincronizzato subito: i record aggiunti dopo valgono solo sopra
+     * quegli snapshot.
+     * @param generazione generazione degli snapshot appena scritti
+     */
+    public void svuota(long generazione) throws IOException {
+        svuota();
+        ByteBuffer dati = ByteBuffer.allocate(9);
+        dati.put(GENERAZIONE);
+        dati.putLong(generazione);
+        accoda(dati.array());
+        sincronizza();
+        this.generazione = generazione;
+    }
+    /**
+     * @brief sincronizza e chiude il file del giornale.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!canale.isOpen()) return;
+        try {
+            sincronizza();
+        } finally {
+            canale.close();
+        }
+    }
+    /**
+     * @brief aggiunge in coda un record già codificato con uno dei metodi codifica*.
+     * Permette di codificare il record sul thread che modifica il modello e scriverlo da un altro thread.
+     */
+    public void accoda(byte[] dati) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(INTESTAZIONE + dati.length);
+        record.putInt(dati.length);
+        record.putInt(crc(dati));
+        record.put(dati);
+        record.flip();
+        while (record.hasRemaining()) {
+            canale.write(record);
+        }
+        nonSincronizzati++;
+        if (nonSincronizzati >= RECORD_PER_SINCRONIZZAZIONE
+                || System.currentTimeMillis() - ultimaSincronizzazione >= MILLIS_PER_SINCRONIZZAZIONE) {
+            sincronizza();
+        }
+    }
+    private static void applica(byte[] dati, GestioneLibri gl, GestioneUtenti gu, GestionePrestiti gp) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(dati));
+        byte tipo = in.readByte();
+        switch (tipo) {
+            case LIBRO: {
+                long isbn = in.readLong();
+                String titolo = leggiStringa(in);
+                int n = in.readInt();
+                List<String> autori = new ArrayList<String>(n);
+                for (int i = 0; i < n; i++) {
+                    autori.add(leggiStringa(in));
+                }
+                int anno = in.readInt();
+                int totali = in.readInt();
+                int disponibili = in.readInt();
+                Libro esistente = gl.trovaLibro(isbn);
+                if (esistente != null) {
+                    // il record è lo stato salvato: le copie si impostano prima, così modificaLibro non trova
+                    // più copie in prestito di quelle del record e applica anche gli altri campi
+                    int vecchieTotali = esistente.getCopieTotali();
+                    int vecchieDisponibili = esistente.getCopieDisponibili();
+                    esistente.setCopieTotali(totali);
+                    esistente.setCopieDisponibili(disponibili);
+                    if (!gl.modificaLibro(esistente, titolo, autori, anno, totali)) {
+                        esistente.setCopieTotali(vecchieTotali);
+                        esistente.setCopieDisponibili(vecchieDisponibili);
+                        throw new IllegalStateException("Record non applicabile al libro " + isbn);
+                    }
+                } else {
+                    gl.aggiungiLibro(new Libro(isbn, titolo, autori, anno, totali, disponibili));
+                }
+                break;
+            }
+            case LIBRO_ELIMINATO:
+                gl.eliminaLibro(String.valueOf(in.readLong()));
+                break;
+            case UTENTE: {
+                Utente u = new Utente(leggiStringa(in), leggiStringa(in), leggiStringa(in), leggiStringa(in));
+                u.setInBlacklist(in.readBoolean());
+                if (gu.trovaUtente(u.getMatricola()) != null) {
+                    gu.modificaUtente(u);
+                } else {
+                    gu.inserisciUtente(u);
+                }
+                break;
+            }
+            case UTENTE_ELIMINATO:
+                gu.eliminaUtente(leggiStringa(in));
+                break;
+            case PRESTITO: {
+                String matricola = leggiStringa(in);
+                long isbn = in.readLong();
+                LocalDate inizio = data(in.readLong());
+                LocalDate prevista = data(in.readLong());
+                Utente u = gu.trovaUtente(matricola);
+                Libro l = gl.trovaLibro(isbn);
+                if (u != null && l != null && gp.trovaPrestitoAttivo(u.getMatricola(), isbn, inizio) == null) {
+                    gp.registraPrestito(u, l, inizio, prevista);
+                }
+                break;
+            }
+            case RESTITUZIONE: {
+                String matricola = leggiStringa(in);
+                long isbn = in.readLong();
+                LocalDate inizio = data(in.readLong());
+                LocalDate restituzione = data(in.readLong());
+                Prestito p = gp.trovaPrestitoAttivo(matricola, isbn, inizio);
+                if (p != null) {
+                    gp.registraRestituzione(p, restituzione);
+                }
+                break;
+            }
+            default:
+                throw new IOException("Tipo di record sconosciuto nel giornale: " + tipo);
+        }
+    }
+    private static void scriviChiave(DataOutputStream out, Prestito p) throws IOException {
+        scriviStringa(out, p.getUtente().getMatricola());
+        out.writeLong(p.getLibro().getIsbn());
+        out.writeLong(giorno(p.getDataInizio()));
+    }
+    private static void scriviStringa(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) out.writeUTF(s);
+    }
+    private static String leggiStringa(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+    private static long giorno(LocalDate d) {
+        return (d != null) ? d.toEpochDay() : Long.MIN_VALUE;
+    }
+    private static LocalDate data(long giorno) {
+        return (giorno != Long.MIN_VALUE) ? LocalDate.ofEpochDay(giorno) : null;
+    }
+    private static int crc(byte[] dati) {
+        CRC32 crc = new CRC32();
+        crc.update(dati, 0, dati.length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,110 @@
+package biblioteca.persistence;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+/**
+ * @brief Esecutore dei salvataggi in background, su un unico thread daemon.
+ * Le scritture dei file interi vengono segnate come "da fare" e raggruppate: più modifiche ravvicinate
+ * allo stesso file producono una sola scrittura, eseguita RITARDO_MILLIS dopo la prima segnalazione.
+ * Le altre operazioni (ad esempio i record del giornale) vengono eseguite nell'ordine in cui arrivano; chi accoda
+ * una scrittura che sostituisce un file segnato deve prima annullare la scrittura in attesa (annulla), che
+ * altrimenti verrebbe eseguita dopo con un contenuto più vecchio.
+ * Le operazioni ricevono dati già codificati dal thread chiamante: questo thread non legge mai il modello.
+ */
+final class SalvataggioAsincrono {
+    static final long RITARDO_MILLIS = 300;
+
+    private final ScheduledExecutorService esecutore;
+    private final Map<String, Runnable> inSospeso = new LinkedHashMap<String, Runnable>();
+    private boolean programmato;
+
+    SalvataggioAsincrono() {
+        this.esecutore = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "salvataggio-biblioteca");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+    /**
+     * @brief segna una scrittura da fare; se per la stessa chiave ce n'è già una in attesa, la sostituisce.
+     * @param chiave identifica il file (o la risorsa) da scrivere
+     * @param scrittura operazione da eseguire in background
+     */
+    synchronized void segna(String chiave, Runnable scrittura) {
+        inSospeso.put(chiave, scrittura);
+        programma();
+    }
+    /**
+     * @brief toglie le scritture in attesa per le chiavi indicate, se non sono ancora iniziate.
+     * @param chiavi file (o risorse) le cui scritture segnate non vanno più eseguite
+     */
+    synchronized void annulla(String... chiavi) {
+        for (String chiave : chiavi) {
+            inSospeso.remove(chiave);
+        }
+    }
+    /**
+     * @brief accoda un'operazione da eseguire in background rispettando l'ordine di arrivo.
+     */
+    void esegui(Runnable operazione) {
+        esecutore.execute(() -> {
+            try {
+                operazione.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+    /**
+     * @brief esegue subito le scritture in attesa e aspetta che tutte le operazioni accodate finora siano concluse.
+     */
+    void flush() {
+        if (esecutore.isShutdown()) return;
+        try {
+            esecutore.submit(this::eseguiInSospeso).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+    /**
+     * @brief completa le scritture in attesa e ferma il thread.
+     */
+    void chiudi() {
+        flush();
+        esecutore.shutdown();
+        try {
+            esecutore.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void programma() {
+        if (!programmato && !esecutore.isShutdown()) {
+            programmato = true;
+            esecutore.schedule(this::eseguiInSospeso, RITARDO_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void eseguiInSospeso() {
+        Map<String, Runnable> daEseguire;
+        synchronized (this) {
+            daEseguire = new LinkedHashMap<String, Runnable>(inSospeso);
+            inSospeso.clear();
+            programmato = false;
+        }
+        for (Runnable scrittura : daEseguire.values()) {
+            try {
+                scrittura.run();
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+}
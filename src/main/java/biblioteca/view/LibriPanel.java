@@ -4,7 +4,6 @@
  * and open the template in the editor.
  */
 package biblioteca.view;
-import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
@@ -95,27 +94,27 @@ public class LibriPanel {
         tabellaLibri.setColumnResizePolicy(TableView.UNCONSTRAINED_RESIZE_POLICY);
 
         TableColumn<ObservableList<String>, String> colIsbn = new TableColumn<>("ISBN");
-        colIsbn.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().get(0)));
+        colIsbn.setCellValueFactory(d -> RigaVista.cella(d.getValue(), 0));
         colIsbn.setPrefWidth(120);
 
         TableColumn<ObservableList<String>, String> colTitolo = new TableColumn<>("Titolo");
-        colTitolo.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().get(1)));
+        colTitolo.setCellValueFactory(d -> RigaVista.cella(d.getValue(), 1));
         colTitolo.setPrefWidth(250);
 
         TableColumn<ObservableList<String>, String> colAutori = new TableColumn<>("Autori");
-        colAutori.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().get(2)));
+        colAutori.setCellValueFactory(d -> RigaVista.cella(d.getValue(), 2));
         colAutori.setPrefWidth(250);
 
         TableColumn<ObservableList<String>, String> colAnno = new TableColumn<>("Anno");
-        colAnno.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().get(3)));
+        colAnno.setCellValueFactory(d -> RigaVista.cella(d.getValue(), 3));
         colAnno.setPrefWidth(80);
 
         TableColumn<ObservableList<String>, String> colCopieTot = new TableColumn<>("Copie totali");
-        colCopieTot.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().get(4)));
+        colCopieTot.setCellValueFactory(d -> RigaVista.cella(d.getValue(), 4));
         colCopieTot.setPrefWidth(100);
 
         TableColumn<ObservableList<String>, String> colCopieDisp = new TableColumn<>("Copie disp.");
-        colCopieDisp.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().get(5)));
+        colCopieDisp.setCellValueFactory(d -> RigaVista.cella(d.getValue(), 5));
         colCopieDisp.setPrefWidth(100);
 
         tabellaLibri.getColumns().addAll(colIsbn, colTitolo, colAutori, colAnno, colCopieTot, colCopieDisp);
@@ -211,6 +210,17 @@ public class LibriPanel {
      */
     public Button getBottoneCerca() { return bottoneCerca; }
 
+    /**
+     * @brief Registra un'azione da eseguire ogni volta che cambia il testo di ISBN, Titolo o Autore,
+     * i campi su cui si effettua la ricerca.
+     * @param azione azione da eseguire (sul thread JavaFX).
+     */
+    public void setOnRicercaModificata(Runnable azione) {
+        for (TextField campo : new TextField[] { campoIsbn, campoTitolo, campoAutore }) {
+            campo.textProperty().addListener((obs, vecchio, nuovo) -> azione.run());
+        }
+    }
+
     /**
      * @brief Imposta i campi di input del form a partire da una riga della tabella.
      *
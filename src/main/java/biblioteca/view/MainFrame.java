@@ -151,6 +151,13 @@ public class MainFrame {
      * @return Il tasto del menu.
      */
     public Button getBtnMenu() { return btnMenu; }
+    /**
+     * @brief Seleziona uno dei tab (Libri, Utenti, Prestiti) senza ricostruire la vista.
+     * @param tabIndex indice del tab da mostrare.
+     */
+    public void selezionaTab(int tabIndex) {
+        tabPane.getSelectionModel().select(tabIndex);
+    }
     /**
      * @brief Imposta un'azione da eseguire quando viene selezionato il tab "Prestiti".
      * Utile per aggiornare la view dei prestiti quando l'utente passa a questa scheda.
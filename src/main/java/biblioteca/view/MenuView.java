@@ -5,11 +5,13 @@
  */
 package biblioteca.view;
 
+import javafx.beans.value.ObservableValue;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Parent;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
@@ -28,6 +30,9 @@ public class MenuView {
     private final Button btnUtenti;
     private final Button btnPrestiti;
     private final Button btnLogout;
+    private final VBox boxCaricamento;
+    private final ProgressBar barraCaricamento;
+    private final Label lblCaricamento;
     private Runnable onGestioneLibri;
     private Runnable onGestioneUtenti;
     private Runnable onGestionePrestiti;
@@ -90,7 +95,16 @@ public class MenuView {
         row1.getChildren().addAll(btnLibri, btnUtenti);
         row2.getChildren().addAll(btnPrestiti);
 
-        card.getChildren().addAll(topLine, lblBenvenuto, lblDescrizione, row1, row2);
+        barraCaricamento = new ProgressBar();
+        barraCaricamento.setMaxWidth(Double.MAX_VALUE);
+        lblCaricamento = new Label();
+        lblCaricamento.getStyleClass().add("muted");
+        boxCaricamento = new VBox(6, lblCaricamento, barraCaricamento);
+        boxCaricamento.setAlignment(Pos.CENTER);
+        boxCaricamento.setVisible(false);
+        boxCaricamento.setManaged(false);
+
+        card.getChildren().addAll(topLine, lblBenvenuto, lblDescrizione, row1, row2, boxCaricamento);
         root.setCenter(card);
     }
 
@@ -123,6 +137,43 @@ public class MenuView {
     public void setOnGestionePrestiti(Runnable r) {
         this.onGestionePrestiti = r;
     }
+    /**
+     * @brief Mostra l'avanzamento del caricamento dell'archivio e disattiva le aree di gestione finché non termina.
+     * @param avanzamento valore tra 0 e 1 (negativo se indeterminato) da mostrare nella barra.
+     * @param messaggio descrizione della fase in corso.
+     */
+    public void mostraCaricamento(ObservableValue<? extends Number> avanzamento, ObservableValue<String> messaggio) {
+        barraCaricamento.progressProperty().bind(avanzamento);
+        lblCaricamento.textProperty().bind(messaggio);
+        boxCaricamento.setVisible(true);
+        boxCaricamento.setManaged(true);
+        impostaAreeAttive(false);
+    }
+    /**
+     * @brief Nasconde l'avanzamento e riattiva le aree di gestione, a caricamento completato.
+     */
+    public void caricamentoCompletato() {
+        barraCaricamento.progressProperty().unbind();
+        lblCaricamento.textProperty().unbind();
+        boxCaricamento.setVisible(false);
+        boxCaricamento.setManaged(false);
+        impostaAreeAttive(true);
+    }
+    /**
+     * @brief Segnala che il caricamento dell'archivio non è riuscito; le aree di gestione restano disattivate.
+     * @param messaggio messaggio da mostrare al posto dell'avanzamento.
+     */
+    public void caricamentoFallito(String messaggio) {
+        barraCaricamento.progressProperty().unbind();
+        lblCaricamento.textProperty().unbind();
+        barraCaricamento.setProgress(0);
+        lblCaricamento.setText(messaggio);
+    }
+    private void impostaAreeAttive(boolean attive) {
+        btnLibri.setDisable(!attive);
+        btnUtenti.setDisable(!attive);
+        btnPrestiti.setDisable(!attive);
+    }
     /**
      * @brief Imposta l'azione da eseguire al click su "Logout".
      * @param r Il Runnable che gestisce il ritorno alla schermata di Login.
@@ -1,6 +1,6 @@
 package biblioteca.view;
 
-import javafx.beans.property.SimpleStringProperty;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
@@ -8,7 +8,10 @@ import javafx.geometry.Pos;
 import javafx.scene.Parent;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
 import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableRow;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.BorderPane;
@@ -21,6 +24,7 @@ import javafx.scene.layout.VBox;
  * @brief Pannello per la gestione delle operazioni di prestito.
  * Permette agli operatori di visualizzare l'elenco dei prestiti, registrarne uno nuovo, registrare una restituzione, gestire lo stato
  * ed eventuali ritardi nelle restituzioni.
+ * Una seconda scheda mostra lo storico dei prestiti restituiti, caricato a pagine man mano che si scorre.
  */
 public class PrestitiPanel {
 
@@ -29,6 +33,12 @@ public class PrestitiPanel {
     private final TextField campoIsbn;
     private final TextField campoDataPrevista;
     private final TableView<ObservableList<String>> tabellaPrestiti;
+    private final TableView<ObservableList<String>> tabellaStorico;
+    private final TabPane schede;
+    private final Tab schedaStorico;
+    private Runnable azioneFineStorico;
+    /** numero di righe dello storico per cui è già stata chiesta la pagina successiva */
+    private int righeAllUltimaRichiesta = -1;
     private final Button bottoneNuovoPrestito;
     private final Button bottoneRestituzione;
     private final Button bottoneBlacklist;
@@ -75,36 +85,36 @@ public class PrestitiPanel {
         tabellaPrestiti.getStyleClass().add("table-in-card");
         tabellaPrestiti.setColumnResizePolicy(TableView.UNCONSTRAINED_RESIZE_POLICY);
         TableColumn<ObservableList<String>, String> colMatricola = new TableColumn<>("Matricola");
-        colMatricola.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().get(0)));
+        colMatricola.setCellValueFactory(d -> RigaVista.cella(d.getValue(), 0));
         colMatricola.setPrefWidth(120);
         TableColumn<ObservableList<String>, String> colNome = new TableColumn<>("Nome");
-        colNome.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().get(1)));
+        colNome.setCellValueFactory(d -> RigaVista.cella(d.getValue(), 1));
         colNome.setPrefWidth(120);
         TableColumn<ObservableList<String>, String> colCognome = new TableColumn<>("Cognome");
-        colCognome.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().get(2)));
+        colCognome.setCellValueFactory(d -> RigaVista.cella(d.getValue(), 2));
         colCognome.setPrefWidth(150);
 
         TableColumn<ObservableList<String>, String> colIsbn = new TableColumn<>("ISBN");
-        colIsbn.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().get(3)));
+        colIsbn.setCellValueFactory(d -> RigaVista.cella(d.getValue(), 3));
         colIsbn.setPrefWidth(130);
 
         TableColumn<ObservableList<String>, String> colTitolo = new TableColumn<>("Titolo");
-        colTitolo.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().get(4)));
+        colTitolo.setCellValueFactory(d -> RigaVista.cella(d.getValue(), 4));
         colTitolo.setPrefWidth(220);
 
         TableColumn<ObservableList<String>, String> colDataInizio = new TableColumn<>("Data inizio");
-        colDataInizio.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().get(5)));
+        colDataInizio.setCellValueFactory(d -> RigaVista.cella(d.getValue(), 5));
         colDataInizio.setPrefWidth(110);
 
         TableColumn<ObservableList<String>, String> colDataPrevista = new TableColumn<>("Data prevista");
-        colDataPrevista.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().get(6)));
+        colDataPrevista.setCellValueFactory(d -> RigaVista.cella(d.getValue(), 6));
         colDataPrevista.setPrefWidth(120);
         TableColumn<ObservableList<String>, String> colInRitardo = new TableColumn<>("In ritardo");
-        colInRitardo.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().get(7)));
+        colInRitardo.setCellValueFactory(d -> RigaVista.cella(d.getValue(), 7));
         colInRitardo.setPrefWidth(90);
 
         TableColumn<ObservableList<String>, String> colBlacklist = new TableColumn<>("Blacklist");
-        colBlacklist.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().get(8)));
+        colBlacklist.setCellValueFactory(d -> RigaVista.cella(d.getValue(), 8));
         colBlacklist.setPrefWidth(100);
 
         tabellaPrestiti.getColumns().addAll(
@@ -125,6 +135,40 @@ public class PrestitiPanel {
         ));
         tabellaPrestiti.setItems(datiFinti);
 
+        tabellaStorico = new TableView<>();
+        tabellaStorico.getStyleClass().add("table-in-card");
+        tabellaStorico.setColumnResizePolicy(TableView.UNCONSTRAINED_RESIZE_POLICY);
+        String[] intestazioniStorico = {
+                "Matricola", "Nome", "Cognome", "ISBN", "Titolo", "Data inizio", "Data prevista", "Restituito il"
+        };
+        double[] larghezzeStorico = { 120, 120, 150, 130, 220, 110, 120, 120 };
+        for (int i = 0; i < intestazioniStorico.length; i++) {
+            final int indice = i;
+            TableColumn<ObservableList<String>, String> col = new TableColumn<>(intestazioniStorico[i]);
+            col.setCellValueFactory(d -> RigaVista.cella(d.getValue(), indice));
+            col.setPrefWidth(larghezzeStorico[i]);
+            tabellaStorico.getColumns().add(col);
+        }
+        // quando diventa visibile l'ultima riga caricata si chiede la pagina successiva (una volta per dimensione)
+        tabellaStorico.setRowFactory(t -> new TableRow<ObservableList<String>>() {
+            @Override
+            protected void updateItem(ObservableList<String> riga, boolean vuota) {
+                super.updateItem(riga, vuota);
+                int righe = tabellaStorico.getItems().size();
+                if (!vuota && azioneFineStorico != null && getIndex() == righe - 1 && righe != righeAllUltimaRichiesta) {
+                    righeAllUltimaRichiesta = righe;
+                    // le righe non si aggiungono mentre la tabella si sta disegnando
+                    Platform.runLater(azioneFineStorico);
+                }
+            }
+        });
+
+        Tab schedaAttivi = new Tab("In corso", tabellaPrestiti);
+        schedaStorico = new Tab("Storico", tabellaStorico);
+        schedaAttivi.setClosable(false);
+        schedaStorico.setClosable(false);
+        schede = new TabPane(schedaAttivi, schedaStorico);
+
         bottoneNuovoPrestito = new Button("Nuovo prestito");
         bottoneRestituzione = new Button("Registrare restituzione");
         bottoneBlacklist = new Button("Blacklist utente");
@@ -137,11 +181,15 @@ public class PrestitiPanel {
         bottoniBox.getStyleClass().add("card-footer");
         bottoniBox.setAlignment(Pos.CENTER_RIGHT);
 
-        VBox contenuto = new VBox(14, form, tabellaPrestiti, bottoniBox);
+        // restituzione e blacklist agiscono sulla riga selezionata dei prestiti in corso
+        bottoneRestituzione.disableProperty().bind(schedaStorico.selectedProperty());
+        bottoneBlacklist.disableProperty().bind(schedaStorico.selectedProperty());
+
+        VBox contenuto = new VBox(14, form, schede, bottoniBox);
         contenuto.getStyleClass().add("card");
         contenuto.setPadding(new Insets(16));
 
-        VBox.setVgrow(tabellaPrestiti, Priority.ALWAYS);
+        VBox.setVgrow(schede, Priority.ALWAYS);
 
         root.setCenter(contenuto);
         BorderPane.setMargin(contenuto, new Insets(12));
@@ -169,6 +217,27 @@ public class PrestitiPanel {
      * @brief getter per la tabella dei prestiti.
      * @return la tabella dei prestiti. */
     public TableView<ObservableList<String>> getTabellaPrestiti() { return tabellaPrestiti; }
+    /**
+     * @brief getter per la tabella dello storico dei prestiti restituiti.
+     * @return la tabella dello storico. */
+    public TableView<ObservableList<String>> getTabellaStorico() { return tabellaStorico; }
+    /**
+     * @brief Registra un'azione da eseguire ogni volta che viene aperta la scheda dello storico.
+     * @param azione azione da eseguire (sul thread JavaFX).
+     */
+    public void setOnStoricoMostrato(Runnable azione) {
+        schedaStorico.selectedProperty().addListener((obs, vecchio, selezionata) -> {
+            if (selezionata) azione.run();
+        });
+    }
+    /**
+     * @brief Registra l'azione che carica la pagina successiva dello storico, eseguita quando si arriva
+     * all'ultima riga caricata.
+     * @param azione azione da eseguire (sul thread JavaFX).
+     */
+    public void setOnFineStoricoRaggiunta(Runnable azione) {
+        this.azioneFineStorico = azione;
+    }
     /** 
      * @brief getter per il tasto nuovo prestito
      * @return tasto nuovo prestito */
@@ -0,0 +1,115 @@
+package biblioteca.view;
+
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * @brief Riga di tabella in sola lettura costruita direttamente sopra un oggetto del modello.
+ * Per le tabelle è una normale ObservableList<String> (una stringa per colonna), ma i testi delle celle
+ * non vengono creati quando si costruisce la riga: ognuno viene calcolato la prima volta che serve
+ * (di solito quando la riga diventa visibile) e poi riusato.
+ * Anche il valore osservabile di ogni cella viene creato una sola volta, così il rendering della tabella
+ * non alloca una nuova property a ogni aggiornamento.
+ * @param <T> tipo dell'oggetto mostrato nella riga (Libro, Utente, Prestito)
+ */
+public class RigaVista<T> extends ObservableListBase<String> {
+    private static final Object NON_CALCOLATO = new Object();
+
+    private final T elemento;
+    private final List<? extends Function<? super T, String>> colonne;
+    private final Object[] valori;
+    private ReadOnlyStringWrapper[] celle;
+
+    /**
+     * @brief crea la riga; nessun testo viene calcolato finché non viene richiesto.
+     * @param elemento oggetto del modello mostrato nella riga
+     * @param colonne una funzione per colonna che ricava il testo della cella dall'oggetto
+     */
+    public RigaVista(T elemento, List<? extends Function<? super T, String>> colonne) {
+        this.elemento = elemento;
+        this.colonne = colonne;
+        this.valori = new Object[colonne.size()];
+        Arrays.fill(valori, NON_CALCOLATO);
+    }
+    /**
+     * @brief restituisce l'oggetto del modello mostrato nella riga.
+     * @return elemento della riga
+     */
+    public T getElemento() {
+        return elemento;
+    }
+
+    @Override
+    public String get(int indice) {
+        Object v = valori[indice];
+        if (v == NON_CALCOLATO) {
+            v = colonne.get(indice).apply(elemento);
+            valori[indice] = v;
+        }
+        return (String) v;
+    }
+
+    @Override
+    public int size() {
+        return valori.length;
+    }
+    /**
+     * @brief restituisce il valore osservabile della cella, creato al primo uso e poi sempre lo stesso.
+     * @param indice indice della colonna
+     * @return valore della cella
+     */
+    public ObservableValue<String> cella(int indice) {
+        if (celle == null) {
+            celle = new ReadOnlyStringWrapper[valori.length];
+        }
+        if (celle[indice] == null) {
+            celle[indice] = new ReadOnlyStringWrapper(get(indice));
+        }
+        return celle[indice].getReadOnlyProperty();
+    }
+    /**
+     * @brief due righe sono uguali solo se sono la stessa riga: confrontarne il contenuto obbligherebbe a calcolare
+     * tutti i testi, e due righe diverse con gli stessi testi confonderebbero la selezione della tabella.
+     */
+    @Override
+    public boolean equals(Object o) {
+        return this == o;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+    /**
+     * @brief ricalcola i testi della riga dopo una modifica dell'oggetto del modello.
+     * Le celle già mostrate vengono aggiornate subito; gli altri testi verranno ricalcolati al prossimo uso.
+     */
+    public void aggiorna() {
+        Arrays.fill(valori, NON_CALCOLATO);
+        if (celle != null) {
+            for (int i = 0; i < celle.length; i++) {
+                if (celle[i] != null) celle[i].set(get(i));
+            }
+        }
+    }
+    /**
+     * @brief valore osservabile per la cella di una riga qualsiasi: usa la cache se la riga è una RigaVista.
+     * Da usare come cell value factory delle colonne delle tabelle.
+     * @param riga riga della tabella
+     * @param indice indice della colonna
+     * @return valore della cella
+     */
+    public static ObservableValue<String> cella(ObservableList<String> riga, int indice) {
+        if (riga instanceof RigaVista) {
+            return ((RigaVista<?>) riga).cella(indice);
+        }
+        return new SimpleStringProperty(riga.get(indice));
+    }
+}
@@ -1,6 +1,5 @@
 package biblioteca.view;
 
-import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
@@ -84,27 +83,27 @@ public class UtentiPanel {
         tabellaUtenti.setColumnResizePolicy(TableView.UNCONSTRAINED_RESIZE_POLICY);
 
         TableColumn<ObservableList<String>, String> colMatricola = new TableColumn<>("Matricola");
-        colMatricola.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().get(0)));
+        colMatricola.setCellValueFactory(d -> RigaVista.cella(d.getValue(), 0));
         colMatricola.setPrefWidth(120);
 
         TableColumn<ObservableList<String>, String> colNome = new TableColumn<>("Nome");
-        colNome.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().get(1)));
+        colNome.setCellValueFactory(d -> RigaVista.cella(d.getValue(), 1));
         colNome.setPrefWidth(140);
 
         TableColumn<ObservableList<String>, String> colCognome = new TableColumn<>("Cognome");
-        colCognome.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().get(2)));
+        colCognome.setCellValueFactory(d -> RigaVista.cella(d.getValue(), 2));
         colCognome.setPrefWidth(160);
 
         TableColumn<ObservableList<String>, String> colEmail = new TableColumn<>("Email");
-        colEmail.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().get(3)));
+        colEmail.setCellValueFactory(d -> RigaVista.cella(d.getValue(), 3));
         colEmail.setPrefWidth(240);
 
         TableColumn<ObservableList<String>, String> colPrestitiAttivi = new TableColumn<>("Prestiti attivi");
-        colPrestitiAttivi.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().get(4)));
+        colPrestitiAttivi.setCellValueFactory(d -> RigaVista.cella(d.getValue(), 4));
         colPrestitiAttivi.setPrefWidth(120);
 
         TableColumn<ObservableList<String>, String> colBlacklist = new TableColumn<>("Blacklist");
-        colBlacklist.setCellValueFactory(d -> new SimpleStringProperty(d.getValue().get(5)));
+        colBlacklist.setCellValueFactory(d -> RigaVista.cella(d.getValue(), 5));
         colBlacklist.setPrefWidth(100);
         tabellaUtenti.getColumns().addAll(colMatricola, colNome, colCognome, colEmail, colPrestitiAttivi, colBlacklist);
         ObservableList<ObservableList<String>> datiFinti = FXCollections.observableArrayList();
@@ -230,6 +230,37 @@ public class LibriControllerTest {
         });
     }
 
+    @Test
+    public void cerca_inModalitaRicerca_iRisultatiSeguonoIlTestoScritto() throws Exception {
+        gestioneLibri.inserisciLibro(9788800000008L, "Napoli milionaria!", java.util.Arrays.asList("Eduardo De Filippo"), 1945, 1);
+        gestioneLibri.inserisciLibro(9788800000009L, "Gomorra", java.util.Arrays.asList("Roberto Saviano"), 2006, 1);
+        eseguiFx(() -> {
+            setCampoDaGetter(vista, "getTitoloInserito", "napoli");
+            vista.getBottoneCerca().fire();
+        });
+        assertEquals("9788800000008", attendiUnicaRiga());
+
+        eseguiFx(() -> setCampoDaGetter(vista, "getTitoloInserito", "gomo"));
+        assertEquals("9788800000009", attendiUnicaRigaDiversaDa("9788800000008"));
+    }
+
+    private String attendiUnicaRiga() throws Exception {
+        return attendiUnicaRigaDiversaDa(null);
+    }
+
+    private String attendiUnicaRigaDiversaDa(String isbnPrecedente) throws Exception {
+        long limite = System.currentTimeMillis() + 5000;
+        String[] isbn = new String[1];
+        do {
+            Thread.sleep(50);
+            eseguiFx(() -> {
+                ObservableList<ObservableList<String>> righe = vista.getTabellaLibri().getItems();
+                isbn[0] = (righe.size() == 1) ? righe.get(0).get(0) : null;
+            });
+        } while ((isbn[0] == null || isbn[0].equals(isbnPrecedente)) && System.currentTimeMillis() < limite);
+        return isbn[0];
+    }
+
     @Test
     public void cerca_conAnnoOMostraInfo_maVaInRicerca() throws Exception {
         eseguiFx(() -> {
@@ -355,8 +355,9 @@ public class PrestitiControllerTest {
     public void blacklist_ok_impostaFlagUtente() throws Exception {
         eseguiFx(() -> {
             Libro l = gestioneLibri.trovaLibro(9788800000001L);
-            gestionePrestiti.registraPrestito(uOk, l, LocalDate.now().minusDays(1), LocalDate.now().plusDays(7));
+            gestionePrestiti.registraPrestito(uOk, l, LocalDate.now().minusDays(10), LocalDate.now().minusDays(1));
             controller.aggiornaDaModel();
+            assertEquals("Sì", vista.getTabellaPrestiti().getItems().get(0).get(7));
 
             chiudiFinestreDopo(80);
             vista.getTabellaPrestiti().getSelectionModel().select(0);
@@ -366,6 +367,22 @@ public class PrestitiControllerTest {
         });
     }
 
+    @Test
+    public void blacklist_prestitoNonInRitardo_senzaConfermaNonCambia() throws Exception {
+        eseguiFx(() -> {
+            Libro l = gestioneLibri.trovaLibro(9788800000001L);
+            gestionePrestiti.registraPrestito(uOk, l, LocalDate.now().minusDays(1), LocalDate.now().plusDays(7));
+            controller.aggiornaDaModel();
+            assertEquals("No", vista.getTabellaPrestiti().getItems().get(0).get(7));
+
+            chiudiFinestreDopo(80);
+            vista.getTabellaPrestiti().getSelectionModel().select(0);
+            vista.getBottoneBlacklist().fire();
+
+            assertFalse(gestioneUtenti.trovaUtente("0612700001").isInBlacklist());
+        });
+    }
+
     private void inserisciLibro(long isbn, String titolo, int anno, int copie) {
         gestioneLibri.inserisciLibro(isbn, titolo, new ArrayList<>(List.of("Autore")), anno, copie);
     }
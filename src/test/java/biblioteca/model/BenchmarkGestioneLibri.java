@@ -0,0 +1,87 @@
+package biblioteca.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @brief Benchmark JMH delle operazioni di lettura più usate di GestioneLibri, su cataloghi da 10^3 a 10^6 libri.
+ * Non è un test JUnit: si esegue con mvn -Pbenchmark clean verify (con -prof gc si ottiene anche l'allocazione).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BenchmarkGestioneLibri {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int dimensione;
+
+    private GestioneLibri gestione;
+    private long[] isbnCercati;
+    private String[] titoliCercati;
+    private String[] autoriCercati;
+    private int prossimo;
+
+    @Setup
+    public void prepara() {
+        gestione = new GestioneLibri();
+        for (int i = 0; i < dimensione; i++) {
+            gestione.inserisciLibro(9788800000000L + i, "Titolo del libro numero " + i,
+                    Arrays.asList("Autore " + (i % 500), "Coautore " + (i % 37)), 1950 + (i % 70), 1 + (i % 5));
+        }
+        SplittableRandom casuale = new SplittableRandom(42);
+        isbnCercati = new long[1024];
+        titoliCercati = new String[1024];
+        autoriCercati = new String[1024];
+        for (int i = 0; i < isbnCercati.length; i++) {
+            int n = casuale.nextInt(dimensione);
+            isbnCercati[i] = 9788800000000L + n;
+            titoliCercati[i] = "numero " + n;
+            autoriCercati[i] = "autore " + (n % 500);
+        }
+        // gli indici di ricerca si costruiscono al primo uso: non vanno misurati
+        gestione.cercaLibri("", "numero", "");
+    }
+
+    private int prossimo() {
+        prossimo = (prossimo + 1) & (isbnCercati.length - 1);
+        return prossimo;
+    }
+
+    @Benchmark
+    public Libro trovaLibro() {
+        return gestione.trovaLibro(isbnCercati[prossimo()]);
+    }
+
+    @Benchmark
+    public TreeSet<Libro> cercaLibriPerTitolo() {
+        return gestione.cercaLibri("", titoliCercati[prossimo()], "");
+    }
+
+    @Benchmark
+    public TreeSet<Libro> cercaLibriPerAutore() {
+        return gestione.cercaLibri("", "", autoriCercati[prossimo()]);
+    }
+
+    @Benchmark
+    public List<Libro> getLibriOrdinatiPerTitolo() {
+        return gestione.getLibriOrdinatiPerTitolo();
+    }
+}
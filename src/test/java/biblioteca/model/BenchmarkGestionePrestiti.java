@@ -0,0 +1,111 @@
+package biblioteca.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @brief Benchmark JMH di GestionePrestiti con un catalogo da 10^3 a 10^6 libri, un utente ogni dieci libri
+ * e due prestiti attivi per utente.
+ * registraPrestito viene misurato insieme alla restituzione dello stesso prestito, così i prestiti attivi restano
+ * gli stessi tra un'invocazione e l'altra; lo storico che ne risulta viene svuotato a ogni iterazione.
+ * Non è un test JUnit: si esegue con mvn -Pbenchmark clean verify (con -prof gc si ottiene anche l'allocazione).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BenchmarkGestionePrestiti {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int dimensione;
+
+    private GestionePrestiti gestione;
+    private Utente[] utenti;
+    private Libro[] libriLiberi;
+    private LocalDate oggi;
+    private LocalDate domani;
+    private int prossimo;
+
+    @Setup
+    public void prepara() {
+        GestioneLibri libri = new GestioneLibri();
+        for (int i = 0; i < dimensione; i++) {
+            libri.inserisciLibro(9788800000000L + i, "Titolo " + i, Arrays.asList("Autore " + (i % 500)), 2000, 3);
+        }
+        int numeroUtenti = Math.max(1, dimensione / 10);
+        utenti = new Utente[numeroUtenti];
+        for (int i = 0; i < numeroUtenti; i++) {
+            utenti[i] = new Utente(String.format("%010d", i), "Nome" + i, "Cognome" + i, "u" + i + "@unisa.it");
+        }
+        gestione = new GestionePrestiti();
+        oggi = LocalDate.of(2025, 6, 1);
+        domani = oggi.plusDays(1);
+        List<Libro> elenco = new ArrayList<Libro>(libri.getLibri());
+        for (int i = 0; i < numeroUtenti * 2 && i < elenco.size(); i++) {
+            gestione.registraPrestito(utenti[i % numeroUtenti], elenco.get(i), oggi.minusDays(i % 60),
+                    oggi.plusDays(30 - (i % 60)));
+        }
+        svuotaStorico();
+        SplittableRandom casuale = new SplittableRandom(42);
+        libriLiberi = new Libro[1024];
+        for (int i = 0; i < libriLiberi.length; i++) {
+            libriLiberi[i] = elenco.get(casuale.nextInt(elenco.size()));
+        }
+    }
+
+    /**
+     * @brief riparte dai soli prestiti attivi, così lo storico prodotto da registraPrestitoERestituzione
+     * non cresce per tutta la durata del benchmark.
+     */
+    @Setup(Level.Iteration)
+    public void svuotaStorico() {
+        gestione = new GestionePrestiti(gestione.getPrestitiAttivi());
+        // contatori e indice per scadenza si ricostruiscono al primo uso: non vanno misurati
+        gestione.contaPrestitiAttivi(utenti[0]);
+        gestione.getPrestitiInRitardo(oggi);
+    }
+
+    private int prossimo() {
+        prossimo = (prossimo + 1) & (libriLiberi.length - 1);
+        return prossimo;
+    }
+
+    @Benchmark
+    public Prestito registraPrestitoERestituzione() {
+        int i = prossimo();
+        // ogni utente ha due prestiti attivi su tre consentiti, tutti iniziati entro oggi:
+        // il terzo, da domani, si registra e si restituisce subito
+        Prestito p = gestione.registraPrestito(utenti[i % utenti.length], libriLiberi[i], domani, domani.plusDays(30));
+        gestione.registraRestituzione(p, domani);
+        return p;
+    }
+
+    @Benchmark
+    public int contaPrestitiAttivi() {
+        return gestione.contaPrestitiAttivi(utenti[prossimo() % utenti.length]);
+    }
+
+    @Benchmark
+    public List<Prestito> getPrestitiAttivi() {
+        return gestione.getPrestitiAttivi();
+    }
+}
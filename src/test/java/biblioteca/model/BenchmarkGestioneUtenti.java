@@ -0,0 +1,81 @@
+package biblioteca.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @brief Benchmark JMH di ricerca e accesso per matricola in GestioneUtenti, su 10^3 - 10^6 utenti.
+ * Non è un test JUnit: si esegue con mvn -Pbenchmark clean verify (con -prof gc si ottiene anche l'allocazione).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BenchmarkGestioneUtenti {
+
+    private static final String[] COGNOMI = {
+            "Esposito", "Russo", "Romano", "Colombo", "Ricci", "Marino", "Greco", "Bruno", "Gallo", "Conti"
+    };
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int dimensione;
+
+    private GestioneUtenti gestione;
+    private String[] matricoleCercate;
+    private String[] cognomiCercati;
+    private int prossimo;
+
+    @Setup
+    public void prepara() {
+        gestione = new GestioneUtenti();
+        for (int i = 0; i < dimensione; i++) {
+            gestione.inserisciUtente(new Utente(String.format("%010d", i), "Nome" + i,
+                    COGNOMI[i % COGNOMI.length] + (i / COGNOMI.length), "u" + i + "@unisa.it"));
+        }
+        SplittableRandom casuale = new SplittableRandom(42);
+        matricoleCercate = new String[1024];
+        cognomiCercati = new String[1024];
+        for (int i = 0; i < matricoleCercate.length; i++) {
+            int n = casuale.nextInt(dimensione);
+            matricoleCercate[i] = String.format("%010d", n);
+            cognomiCercati[i] = COGNOMI[n % COGNOMI.length] + (n / COGNOMI.length);
+        }
+        // gli indici di ricerca si costruiscono al primo uso: non vanno misurati
+        gestione.cercaUtenti("", "esposito", "");
+    }
+
+    private int prossimo() {
+        prossimo = (prossimo + 1) & (matricoleCercate.length - 1);
+        return prossimo;
+    }
+
+    @Benchmark
+    public Utente trovaUtente() {
+        return gestione.trovaUtente(matricoleCercate[prossimo()]);
+    }
+
+    @Benchmark
+    public TreeSet<Utente> cercaUtentiPerCognome() {
+        return gestione.cercaUtenti("", cognomiCercati[prossimo()], "");
+    }
+
+    @Benchmark
+    public TreeSet<Utente> cercaUtentiPerPrefissoCognome() {
+        return gestione.cercaUtentiPerIniziali(cognomiCercati[prossimo()].substring(0, 2), "");
+    }
+}
@@ -3,10 +3,16 @@ package biblioteca.model;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -139,6 +145,22 @@ class GestioneLibriTest {
         assertEquals(10, l.getCopieTotali());
     }
 
+    @Test
+    void testModificaLibro_copieSottoQuelleInPrestito_nonModifica() {
+        Libro l = gestione.trovaLibro(9788800000002L);
+        int totali = l.getCopieTotali();
+        assertTrue(l.riservaCopia());
+        assertTrue(l.riservaCopia());
+
+        assertFalse(gestione.modificaLibro(l, "Altro titolo", Arrays.asList("Altro"), 1999, 1));
+
+        assertNotEquals("Altro titolo", l.getTitolo());
+        assertEquals(totali, l.getCopieTotali());
+        assertEquals(totali - 2, l.getCopieDisponibili());
+        assertTrue(gestione.modificaLibro(l, "Altro titolo", Arrays.asList("Altro"), 1999, 2));
+        assertEquals(0, l.getCopieDisponibili());
+    }
+
     @Test
     void testModificaLibro_null_nonFaNulla() {
         assertDoesNotThrow(() ->
@@ -208,6 +230,29 @@ class GestioneLibriTest {
         assertTrue(trovati.isEmpty());
     }
 
+    @Test
+    void testCercaLibri_dopoModifica_usaINuoviTitoloEAutori() {
+        Libro l = gestione.trovaLibro(9788800000001L);
+        gestione.modificaLibro(l, "Zero zero zero", Arrays.asList("Roberto Saviano", "Altro Autore"), 2013, 2);
+
+        assertTrue(gestione.cercaLibri("", "gomorra", "").isEmpty());
+        assertEquals(1, gestione.cercaLibri("", "zero", "altro").size());
+        assertEquals(1, gestione.cercaLibri("", "", "saviano").size());
+    }
+
+    @Test
+    void testCercaLibri_dopoEliminazione_nonTrovaIlLibro() {
+        gestione.eliminaLibro("9788800000000");
+
+        assertTrue(gestione.cercaLibri("", "amica", "").isEmpty());
+        assertTrue(gestione.cercaLibri("", "", "ferrante").isEmpty());
+    }
+
+    @Test
+    void testCercaLibri_titoloEAutoreDiLibriDiversi_nessunRisultato() {
+        assertTrue(gestione.cercaLibri("", "gomorra", "ferrante").isEmpty());
+    }
+
     @Test
     void testTrovaLibro_esistente() {
         Libro l = gestione.trovaLibro(9788800000001L);
@@ -219,4 +264,125 @@ class GestioneLibriTest {
     void testTrovaLibro_nonEsistente() {
         assertNull(gestione.trovaLibro(9788800000999L));
     }
+
+    @Test
+    void testCostruttoreConTreeSet_modificheEsterneNonToccanoLaGestione() {
+        TreeSet<Libro> libri = new TreeSet<Libro>();
+        Libro periodico = new Libro(9788800000500L, "Il sistema periodico", Arrays.asList("Primo Levi"), 1975, 1);
+        libri.add(periodico);
+        GestioneLibri g = new GestioneLibri(libri);
+
+        assertNotNull(g.trovaLibro(9788800000500L));
+        assertEquals(1, g.cercaLibri("", "periodico", "").size());
+
+        // tante aggiunte quante rimozioni: la dimensione resta uguale ma l'insieme passato è cambiato
+        libri.remove(periodico);
+        libri.add(new Libro(9788800000501L, "La tregua", Arrays.asList("Primo Levi"), 1963, 1));
+
+        assertSame(periodico, g.trovaLibro(9788800000500L));
+        assertNull(g.trovaLibro(9788800000501L));
+        assertEquals(1, g.cercaLibri("", "periodico", "").size());
+        assertTrue(g.cercaLibri("", "tregua", "").isEmpty());
+        assertEquals(1, g.getLibri().size());
+    }
+
+    @Test
+    void testGetLibri_restituisceUnaCopia() {
+        TreeSet<Libro> copia = gestione.getLibri();
+        copia.add(new Libro(9788800000501L, "La tregua", Arrays.asList("Primo Levi"), 1963, 1));
+
+        assertEquals(3, gestione.getLibri().size());
+        assertNull(gestione.trovaLibro(9788800000501L));
+    }
+
+    @Test
+    void testAggiungiLibro_mantieneCopieDisponibili_eRifiutaDuplicati() {
+        Libro libro = new Libro(9788800000501L, "La tregua", Arrays.asList("Primo Levi"), 1963, 3, 1);
+
+        assertTrue(gestione.aggiungiLibro(libro));
+        assertFalse(gestione.aggiungiLibro(new Libro(9788800000501L, "Altro", null, 2000, 1)));
+        assertSame(libro, gestione.trovaLibro(9788800000501L));
+        assertEquals(1, gestione.trovaLibro(9788800000501L).getCopieDisponibili());
+        assertEquals(1, gestione.cercaLibri("", "tregua", "").size());
+    }
+
+    @Test
+    void testInserimentiERicercheConcorrenti_nessunLibroPerso() throws Exception {
+        int thread = 4;
+        int perThread = 500;
+        ExecutorService esecutore = Executors.newFixedThreadPool(thread * 2);
+        CountDownLatch via = new CountDownLatch(1);
+        List<Future<?>> lavori = new ArrayList<Future<?>>();
+        for (int t = 0; t < thread; t++) {
+            long base = 9788810000000L + t * 10000L;
+            lavori.add(esecutore.submit(() -> {
+                via.await();
+                for (int i = 0; i < perThread; i++) {
+                    gestione.inserisciLibro(base + i, "Volume " + i, Arrays.asList("Autore"), 2000, 1);
+                }
+                return null;
+            }));
+            lavori.add(esecutore.submit(() -> {
+                via.await();
+                for (int i = 0; i < perThread; i++) {
+                    assertNotNull(gestione.trovaLibro(9788800000000L));
+                    gestione.cercaLibri("", "volume", "");
+                }
+                return null;
+            }));
+        }
+        via.countDown();
+        for (Future<?> lavoro : lavori) {
+            lavoro.get(30, TimeUnit.SECONDS);
+        }
+        esecutore.shutdown();
+
+        assertEquals(3 + thread * perThread, gestione.getLibri().size());
+        assertEquals(thread * perThread, gestione.cercaLibri("", "volume", "").size());
+        for (int t = 0; t < thread; t++) {
+            assertNotNull(gestione.trovaLibro(9788810000000L + t * 10000L + perThread - 1));
+        }
+    }
+
+    @Test
+    void testModifiche_inserisciModificaElimina_notificati() {
+        List<String> eventi = new ArrayList<String>();
+        gestione.getModifiche().aggiungi((tipo, l) -> eventi.add(tipo + " " + l.getIsbn()));
+
+        gestione.inserisciLibro(9788800000100L, "Il partigiano Johnny", Arrays.asList("Beppe Fenoglio"), 1968, 1);
+        gestione.inserisciLibro(9788800000100L, "Il partigiano Johnny", Arrays.asList("Beppe Fenoglio"), 1968, 2);
+        Libro l = gestione.trovaLibro(9788800000100L);
+        gestione.modificaLibro(l, "Una questione privata", Arrays.asList("Beppe Fenoglio"), 1963, 3);
+        gestione.eliminaLibro("9788800000100");
+
+        assertEquals(Arrays.asList(
+                "AGGIUNTO 9788800000100",
+                "MODIFICATO 9788800000100",
+                "MODIFICATO 9788800000100",
+                "RIMOSSO 9788800000100"), eventi);
+    }
+
+    @Test
+    void testModifiche_ascoltatoreRimosso_nonPiuNotificato() {
+        List<Libro> ricevuti = new ArrayList<Libro>();
+        ModificheModello.Ascoltatore<Libro> a = (tipo, l) -> ricevuti.add(l);
+        gestione.getModifiche().aggiungi(a);
+        gestione.getModifiche().rimuovi(a);
+
+        gestione.eliminaLibro("9788800000001");
+
+        assertTrue(ricevuti.isEmpty());
+    }
+
+    @Test
+    void testModifiche_libroNonInCatalogo_nessunaNotifica() {
+        List<Libro> ricevuti = new ArrayList<Libro>();
+        gestione.getModifiche().aggiungi((tipo, l) -> ricevuti.add(l));
+
+        Libro esterno = new Libro(9788800000200L, "Fuori catalogo", Arrays.asList("Nessuno"), 2000, 1);
+        gestione.modificaLibro(esterno, "Altro", Arrays.asList("Nessuno"), 2000, 1);
+        gestione.eliminaLibro("9788800000999");
+
+        assertTrue(ricevuti.isEmpty());
+    }
 }
@@ -6,6 +6,12 @@ import org.junit.jupiter.api.Test;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -107,6 +113,8 @@ class GestionePrestitiTest {
         assertThrows(IllegalStateException.class, () ->
                 gestionePrestiti.registraPrestito(utente1, tantiLibri.get(Utente.MAX_PRESTITI), oggi, prevista)
         );
+        // la copia presa prima del controllo sul limite viene rilasciata
+        assertEquals(1, tantiLibri.get(Utente.MAX_PRESTITI).getCopieDisponibili());
     }
 
     @Test
@@ -199,4 +207,255 @@ class GestionePrestitiTest {
 
         assertNull(trovato);
     }
+
+    @Test
+    void testContaPrestitiAttivi_costruttoreConLista_contaSoloAttivi() {
+        Prestito attivo = new Prestito(utente1, libro1, LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 10));
+        Prestito chiuso = new Prestito(utente1, libro2, LocalDate.of(2025, 11, 1), LocalDate.of(2025, 11, 10));
+        chiuso.setDataRestituzione(LocalDate.of(2025, 11, 5));
+        List<Prestito> lista = new ArrayList<>();
+        lista.add(attivo);
+        lista.add(chiuso);
+
+        GestionePrestiti g = new GestionePrestiti(lista);
+
+        assertEquals(1, g.contaPrestitiAttivi(utente1));
+        assertEquals(0, g.contaPrestitiAttivi(utente2));
+    }
+
+    @Test
+    void testCostruttoreConLista_prestitiAttiviConStessaChiave_liTieneEntrambi() {
+        LocalDate inizio = LocalDate.of(2025, 12, 1);
+        libro1.setCopieTotali(3);
+        Prestito primo = new Prestito(utente1, libro1, inizio, LocalDate.of(2025, 12, 10));
+        Prestito secondo = new Prestito(utente1, libro1, inizio, LocalDate.of(2025, 12, 20));
+        List<Prestito> lista = new ArrayList<>();
+        lista.add(primo);
+        lista.add(secondo);
+
+        GestionePrestiti g = new GestionePrestiti(lista);
+
+        assertEquals(2, g.getPrestitiAttivi().size());
+        assertEquals(2, g.contaPrestitiAttivi(utente1));
+        assertThrows(IllegalStateException.class,
+                () -> g.registraPrestito(utente1, libro1, inizio, LocalDate.of(2025, 12, 31)));
+
+        g.registraRestituzione(primo, LocalDate.of(2025, 12, 5));
+        assertSame(secondo, g.trovaPrestitoAttivo(utente1.getMatricola(), libro1.getIsbn(), inizio));
+        assertEquals(1, g.contaPrestitiAttivi(utente1));
+
+        g.registraRestituzione(secondo, LocalDate.of(2025, 12, 6));
+        assertNull(g.trovaPrestitoAttivo(utente1.getMatricola(), libro1.getIsbn(), inizio));
+        assertEquals(0, g.getPrestitiAttivi().size());
+        assertEquals(2, g.getNumeroPrestitiStorico());
+    }
+
+    @Test
+    void testRegistraRestituzione_prestitoPassaNelloStorico() {
+        Prestito p1 = gestionePrestiti.registraPrestito(utente1, libro1, LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 10));
+        Prestito p2 = gestionePrestiti.registraPrestito(utente2, libro2, LocalDate.of(2025, 12, 2), LocalDate.of(2025, 12, 12));
+
+        gestionePrestiti.registraRestituzione(p1, LocalDate.of(2025, 12, 5));
+
+        assertEquals(2, gestionePrestiti.getPrestiti().size());
+        assertTrue(gestionePrestiti.getPrestiti().contains(p1));
+        assertEquals(1, gestionePrestiti.getPrestitiAttivi().size());
+        assertSame(p2, gestionePrestiti.getPrestitiAttivi().get(0));
+        assertNull(gestionePrestiti.trovaPrestitoAttivo(utente1.getMatricola(), libro1.getIsbn(), LocalDate.of(2025, 12, 1)));
+    }
+
+    @Test
+    void testRegistraPrestito_stessoLibroStessaData_lancia() {
+        LocalDate inizio = LocalDate.of(2025, 12, 1);
+        gestionePrestiti.registraPrestito(utente1, libro1, inizio, LocalDate.of(2025, 12, 10));
+
+        assertThrows(IllegalStateException.class, () ->
+                gestionePrestiti.registraPrestito(utente1, libro1, inizio, LocalDate.of(2025, 12, 10))
+        );
+        assertEquals(1, libro1.getCopieDisponibili());
+        assertEquals(1, gestionePrestiti.contaPrestitiAttivi(utente1));
+    }
+
+    @Test
+    void testTrovaPrestitoAttivo_matricolaNuovaStringa_trovaPrestito() {
+        Prestito p = gestionePrestiti.registraPrestito(utente1, libro1, LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 10));
+        String matricola = new String(utente1.getMatricola());
+
+        assertSame(p, gestionePrestiti.trovaPrestitoAttivo(matricola, libro1.getIsbn(), LocalDate.of(2025, 12, 1)));
+        assertNull(gestionePrestiti.trovaPrestitoAttivo(matricola, libro1.getIsbn(), LocalDate.of(2025, 12, 2)));
+        assertNull(gestionePrestiti.trovaPrestitoAttivo(matricola, libro2.getIsbn(), LocalDate.of(2025, 12, 1)));
+    }
+
+    @Test
+    void testGetPrestitiAttiviPerScadenza_ordinatiPerDataPrevista() {
+        Prestito tardi = gestionePrestiti.registraPrestito(utente1, libro1, LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 20));
+        Prestito presto = gestionePrestiti.registraPrestito(utente2, libro2, LocalDate.of(2025, 12, 2), LocalDate.of(2025, 12, 10));
+        Prestito stessaData = gestionePrestiti.registraPrestito(utente2, libro1, LocalDate.of(2025, 12, 3), LocalDate.of(2025, 12, 10));
+
+        List<Prestito> ordinati = gestionePrestiti.getPrestitiAttiviPerScadenza();
+
+        assertEquals(3, ordinati.size());
+        assertSame(presto, ordinati.get(0));
+        assertSame(stessaData, ordinati.get(1));
+        assertSame(tardi, ordinati.get(2));
+    }
+
+    @Test
+    void testGetPrestitiInRitardo_soloScadutiENonRestituiti() {
+        Prestito scaduto = gestionePrestiti.registraPrestito(utente1, libro1, LocalDate.of(2025, 11, 1), LocalDate.of(2025, 11, 10));
+        Prestito restituito = gestionePrestiti.registraPrestito(utente2, libro2, LocalDate.of(2025, 11, 1), LocalDate.of(2025, 11, 5));
+        gestionePrestiti.registraPrestito(utente2, libro1, LocalDate.of(2025, 11, 2), LocalDate.of(2025, 12, 1));
+        gestionePrestiti.registraRestituzione(restituito, LocalDate.of(2025, 11, 20));
+
+        List<Prestito> inRitardo = gestionePrestiti.getPrestitiInRitardo(LocalDate.of(2025, 12, 1));
+
+        assertEquals(1, inRitardo.size());
+        assertSame(scaduto, inRitardo.get(0));
+        assertTrue(inRitardo.get(0).isInRitardo(LocalDate.of(2025, 12, 1)));
+        assertTrue(gestionePrestiti.getPrestitiInRitardo(LocalDate.of(2025, 11, 10)).isEmpty());
+    }
+
+    @Test
+    void testRicollega_sostituisceLeCopieConLeIstanzeCanoniche() {
+        Utente copiaUtente = new Utente("0612700101", "Gennaro", "Esposito", "g.esposito@unisa.it");
+        Libro copiaLibro = new Libro(9788800000000L, "L'amica geniale", new ArrayList<String>(), 2011, 2, 2);
+        Prestito attivo = gestionePrestiti.registraPrestito(copiaUtente, copiaLibro, LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 10));
+        Prestito chiuso = gestionePrestiti.registraPrestito(copiaUtente, copiaLibro, LocalDate.of(2025, 11, 1), LocalDate.of(2025, 11, 10));
+        gestionePrestiti.registraRestituzione(chiuso, LocalDate.of(2025, 11, 5));
+
+        GestioneLibri gl = new GestioneLibri();
+        gl.aggiungiLibro(libro1);
+        GestioneUtenti gu = new GestioneUtenti();
+        gu.inserisciUtente(utente1);
+        gestionePrestiti.ricollega(gl, gu);
+
+        for (Prestito p : gestionePrestiti.getPrestiti()) {
+            assertSame(utente1, p.getUtente());
+            assertSame(libro1, p.getLibro());
+        }
+        assertEquals(1, utente1.getNumPrestitiAttivi());
+        assertSame(utente1.getPrestitiAttivi().get(0), gestionePrestiti.getPrestitiAttivi().get(0));
+        assertEquals(attivo, gestionePrestiti.trovaPrestitoAttivo("0612700101", libro1.getIsbn(), LocalDate.of(2025, 12, 1)));
+        assertEquals(LocalDate.of(2025, 11, 5), gestionePrestiti.getPrestiti().get(0).getDataRestituzione());
+    }
+
+    @Test
+    void testModifiche_prestitoERestituzione_notificati() {
+        List<String> eventi = new ArrayList<String>();
+        gestionePrestiti.getModifiche().aggiungi((tipo, p) -> eventi.add(tipo + " " + p.getLibro().getIsbn()));
+        LocalDate oggi = LocalDate.now();
+
+        Prestito p = gestionePrestiti.registraPrestito(utente1, libro1, oggi, oggi.plusDays(30));
+        gestionePrestiti.registraRestituzione(p, oggi.plusDays(5));
+
+        String isbn = String.valueOf(libro1.getIsbn());
+        assertEquals(List.of("AGGIUNTO " + isbn, "RIMOSSO " + isbn), eventi);
+    }
+
+    @Test
+    void testPaginaStorico_dalPiuRecente_pagineConsecutive() {
+        LocalDate inizio = LocalDate.of(2025, 1, 1);
+        List<Prestito> restituiti = new ArrayList<Prestito>();
+        for (int i = 0; i < 5; i++) {
+            Prestito p = gestionePrestiti.registraPrestito(utente1, libro1, inizio.plusDays(i), inizio.plusDays(30 + i));
+            gestionePrestiti.registraRestituzione(p, inizio.plusDays(10 + i));
+            restituiti.add(p);
+        }
+        assertEquals(5, gestionePrestiti.getNumeroPrestitiStorico());
+
+        List<Prestito> prima = gestionePrestiti.getPaginaStorico(gestionePrestiti.getNumeroPrestitiStorico(), 2);
+        assertEquals(List.of(restituiti.get(4), restituiti.get(3)), prima);
+
+        List<Prestito> seconda = gestionePrestiti.getPaginaStorico(5 - prima.size(), 2);
+        assertEquals(List.of(restituiti.get(2), restituiti.get(1)), seconda);
+
+        List<Prestito> ultima = gestionePrestiti.getPaginaStorico(1, 2);
+        assertEquals(List.of(restituiti.get(0)), ultima);
+        assertTrue(gestionePrestiti.getPaginaStorico(0, 2).isEmpty());
+    }
+
+    @Test
+    void testPaginaStorico_restituzioneDuranteLaLettura_pagineNonSiSpostano() {
+        LocalDate inizio = LocalDate.of(2025, 1, 1);
+        Prestito p1 = gestionePrestiti.registraPrestito(utente1, libro1, inizio, inizio.plusDays(30));
+        Prestito p2 = gestionePrestiti.registraPrestito(utente2, libro1, inizio, inizio.plusDays(30));
+        Prestito p3 = gestionePrestiti.registraPrestito(utente1, libro2, inizio, inizio.plusDays(30));
+        gestionePrestiti.registraRestituzione(p1, inizio.plusDays(3));
+        gestionePrestiti.registraRestituzione(p2, inizio.plusDays(4));
+
+        int posizione = gestionePrestiti.getNumeroPrestitiStorico();
+        List<Prestito> prima = gestionePrestiti.getPaginaStorico(posizione, 1);
+        assertEquals(List.of(p2), prima);
+
+        gestionePrestiti.registraRestituzione(p3, inizio.plusDays(5));
+
+        assertEquals(List.of(p1), gestionePrestiti.getPaginaStorico(posizione - prima.size(), 1));
+        assertEquals(List.of(p3), gestionePrestiti.getPaginaStorico(gestionePrestiti.getNumeroPrestitiStorico(), 1));
+    }
+
+    @Test
+    void testPaginaStorico_posizioneOltreLaFine_limitataAlloStorico() {
+        Prestito p = gestionePrestiti.registraPrestito(utente1, libro1, LocalDate.now(), LocalDate.now().plusDays(7));
+        gestionePrestiti.registraRestituzione(p, null);
+
+        assertEquals(List.of(p), gestionePrestiti.getPaginaStorico(100, 10));
+        assertTrue(gestionePrestiti.getPaginaStorico(1, 0).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> gestionePrestiti.getPaginaStorico(1, -1));
+    }
+
+    @Test
+    void testRegistraPrestito_ultimaCopiaDaPiuBanchi_unSoloPrestito() throws Exception {
+        int banchi = 8;
+        ExecutorService esecutore = Executors.newFixedThreadPool(banchi);
+        CountDownLatch via = new CountDownLatch(1);
+        AtomicInteger riusciti = new AtomicInteger();
+        List<Future<?>> lavori = new ArrayList<Future<?>>();
+        for (int b = 0; b < banchi; b++) {
+            Utente utente = new Utente("06127002" + (10 + b), "Nome", "Cognome", "n.cognome@unisa.it");
+            lavori.add(esecutore.submit(() -> {
+                via.await();
+                try {
+                    gestionePrestiti.registraPrestito(utente, libro2, LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 31));
+                    riusciti.incrementAndGet();
+                } catch (IllegalStateException esaurito) {
+                    // un altro banco ha preso l'ultima copia
+                }
+                return null;
+            }));
+        }
+        via.countDown();
+        for (Future<?> lavoro : lavori) {
+            lavoro.get(30, TimeUnit.SECONDS);
+        }
+        esecutore.shutdown();
+
+        assertEquals(1, riusciti.get());
+        assertEquals(0, libro2.getCopieDisponibili());
+        assertEquals(1, gestionePrestiti.getPrestitiAttivi().size());
+    }
+
+    @Test
+    void testRegistraRestituzione_stessoPrestitoDaDueBanchi_contaUnaVolta() throws Exception {
+        Prestito p = gestionePrestiti.registraPrestito(utente1, libro1, LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 31));
+        libro1.setCopieTotali(3);
+        ExecutorService esecutore = Executors.newFixedThreadPool(2);
+        CountDownLatch via = new CountDownLatch(1);
+        List<Future<?>> lavori = new ArrayList<Future<?>>();
+        for (int b = 0; b < 2; b++) {
+            lavori.add(esecutore.submit(() -> {
+                via.await();
+                gestionePrestiti.registraRestituzione(p, LocalDate.of(2025, 12, 10));
+                return null;
+            }));
+        }
+        via.countDown();
+        for (Future<?> lavoro : lavori) {
+            lavoro.get(30, TimeUnit.SECONDS);
+        }
+        esecutore.shutdown();
+
+        assertEquals(2, libro1.getCopieDisponibili());
+        assertEquals(1, gestionePrestiti.getNumeroPrestitiStorico());
+        assertEquals(0, gestionePrestiti.contaPrestitiAttivi(utente1));
+    }
 }
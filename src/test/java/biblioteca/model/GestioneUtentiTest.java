@@ -3,6 +3,10 @@ package biblioteca.model;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.TreeSet;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -34,6 +38,23 @@ class GestioneUtentiTest {
         assertTrue(g.getUtenti().isEmpty());
     }
 
+    @Test
+    void testCostruttoreConTreeSet_modificheEsterneNonToccanoLaGestione() {
+        TreeSet<Utente> utenti = new TreeSet<Utente>();
+        Utente ferro = new Utente("0612700010", "Rosa", "Ferro", "r.ferro@unisa.it");
+        utenti.add(ferro);
+        GestioneUtenti g = new GestioneUtenti(utenti);
+        assertSame(ferro, g.trovaUtente("0612700010"));
+
+        utenti.remove(ferro);
+        utenti.add(new Utente("0612700011", "Luca", "Amato", "l.amato@unisa.it"));
+
+        assertSame(ferro, g.trovaUtente("0612700010"));
+        assertNull(g.trovaUtente("0612700011"));
+        assertEquals(1, g.cercaUtenti("", "ferro", "").size());
+        assertTrue(g.cercaUtenti("", "amato", "").isEmpty());
+    }
+
     @Test
     void testGetUtenti() {
         assertNotNull(gestione.getUtenti());
@@ -163,6 +184,42 @@ class GestioneUtentiTest {
         assertEquals(3, trovati.size());
     }
 
+    @Test
+    void testCercaUtenti_unaODueLettere_cercaComeSottostringa() {
+        TreeSet<Utente> trovati = gestione.cercaUtenti("", "", "c");
+        assertEquals(2, trovati.size());
+        // "ss" è dentro "Russo", "ro" è alla fine di "Gennaro" e "Ciro"
+        assertTrue(gestione.cercaUtenti("", "ss", "").contains(gestione.trovaUtente("0612700002")));
+        assertEquals(2, gestione.cercaUtenti("", "", "ro").size());
+        assertEquals(1, gestione.cercaUtenti("0612700001", "", "ro").size());
+    }
+
+    @Test
+    void testCercaUtentiPerIniziali_confrontaSoloLInizio() {
+        assertEquals(2, gestione.cercaUtentiPerIniziali("", "c").size());
+        assertTrue(gestione.cercaUtentiPerIniziali("ru", "").contains(gestione.trovaUtente("0612700002")));
+        assertTrue(gestione.cercaUtentiPerIniziali("ss", "").isEmpty());
+        assertEquals(1, gestione.cercaUtentiPerIniziali("esp", "ge").size());
+        assertEquals(3, gestione.cercaUtentiPerIniziali(null, null).size());
+    }
+
+    @Test
+    void testCercaUtenti_cognomeENome_intersecaIRisultati() {
+        assertEquals(1, gestione.cercaUtenti("", "ito", "gen").size());
+        assertTrue(gestione.cercaUtenti("", "russo", "ciro").isEmpty());
+    }
+
+    @Test
+    void testCercaUtenti_dopoModificaEdEliminazione_usaIDatiAggiornati() {
+        gestione.modificaUtente(new Utente("0612700001", "Gennaro", "Capasso", "g.esposito@unisa.it"));
+        assertTrue(gestione.cercaUtenti("", "esposito", "").isEmpty());
+        assertEquals(1, gestione.cercaUtenti("", "capas", "").size());
+
+        gestione.eliminaUtente("0612700003");
+        assertTrue(gestione.cercaUtenti("", "iovine", "").isEmpty());
+        assertTrue(gestione.cercaUtenti("", "", "ci").isEmpty());
+    }
+
     @Test
     void testSetBlacklist_impostaTrue() {
         Utente u = gestione.trovaUtente("0612700003");
@@ -184,6 +241,25 @@ class GestioneUtentiTest {
         assertDoesNotThrow(() -> gestione.setGestionePrestiti(finta));
     }
 
+    @Test
+    void testTrovaUtente_matricolaConSpazi_eReinserimento() {
+        assertNotNull(gestione.trovaUtente("  0612700003 "));
+
+        gestione.eliminaUtente("0612700003");
+        assertNull(gestione.trovaUtente("0612700003"));
+
+        gestione.inserisciUtente(new Utente("0612700003", "Nunzia", "Capasso", "n.capasso@unisa.it"));
+        assertEquals("Nunzia", gestione.trovaUtente("0612700003").getNome());
+    }
+
+    @Test
+    void testInserisciUtente_matricolaDuplicata_mantieneOriginale() {
+        gestione.inserisciUtente(new Utente("0612700001", "Altro", "Nome", "a.nome@unisa.it"));
+
+        assertEquals(3, gestione.getUtenti().size());
+        assertEquals("Gennaro", gestione.trovaUtente("0612700001").getNome());
+    }
+
     private static class GestionePrestitiFinta extends GestionePrestiti {
         private final String matricolaConPrestito;
 
@@ -197,4 +273,93 @@ class GestioneUtentiTest {
             return u.getMatricola().trim().equals(matricolaConPrestito);
         }
     }
+
+    @Test
+    void testModifiche_inserisciModificaBlacklistElimina_notificati() {
+        List<String> eventi = new ArrayList<String>();
+        gestione.getModifiche().aggiungi((tipo, u) -> eventi.add(tipo + " " + u.getMatricola()));
+
+        Utente nuovo = new Utente("0612700009", "Assunta", "Capuano", "a.capuano@unisa.it");
+        gestione.inserisciUtente(nuovo);
+        gestione.modificaUtente(new Utente("0612700009", "Assunta", "Capuano", "assunta.capuano@unisa.it"));
+        gestione.setBlacklist(nuovo, true);
+        gestione.eliminaUtente("0612700009");
+
+        assertEquals(Arrays.asList(
+                "AGGIUNTO 0612700009",
+                "MODIFICATO 0612700009",
+                "MODIFICATO 0612700009",
+                "RIMOSSO 0612700009"), eventi);
+    }
+
+    @Test
+    void testModifiche_modificaUtente_notificaIstanzaEsistente() {
+        List<Utente> ricevuti = new ArrayList<Utente>();
+        gestione.getModifiche().aggiungi((tipo, u) -> ricevuti.add(u));
+        Utente esistente = gestione.trovaUtente("0612700002");
+
+        gestione.modificaUtente(new Utente("0612700002", "Carmela", "Russo", "carmela.russo@unisa.it"));
+
+        assertEquals(1, ricevuti.size());
+        assertSame(esistente, ricevuti.get(0));
+    }
+
+    @Test
+    void testEliminaUtente_conPrestitiReali_nonRimuoveChiHaPrestiti() {
+        GestionePrestiti gp = new GestionePrestiti();
+        gestione.setGestionePrestiti(gp);
+        Utente conPrestito = gestione.trovaUtente("0612700001");
+        gp.registraPrestito(conPrestito, new Libro(9788800000000L, "Gomorra", null, 2006, 1),
+                LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 31));
+
+        gestione.eliminaUtente("0612700001");
+        gestione.eliminaUtente("0612700002");
+
+        assertNotNull(gestione.trovaUtente("0612700001"));
+        assertNull(gestione.trovaUtente("0612700002"));
+    }
+
+    @Test
+    void testGetUtenti_restituisceUnaCopia() {
+        gestione.getUtenti().clear();
+
+        assertEquals(3, gestione.getUtenti().size());
+        assertNotNull(gestione.trovaUtente("0612700001"));
+    }
+
+    @Test
+    void testDaFile_trovaUtenteDecodificaSoloGliUtentiConfrontati() {
+        List<Integer> decodificati = new ArrayList<>();
+        ElencoDifferito<Utente> elenco = new ElencoDifferito<Utente>() {
+            private final Utente[] utenti = new Utente[15];
+            @Override
+            public int dimensione() {
+                return utenti.length;
+            }
+            @Override
+            public Utente get(int i) {
+                if (utenti[i] == null) {
+                    decodificati.add(i);
+                    utenti[i] = new Utente(String.format("06127%05d", i), "Nome" + i, "Cognome" + i, "");
+                }
+                return utenti[i];
+            }
+            @Override
+            public List<Utente> tutti() {
+                List<Utente> tutti = new ArrayList<>();
+                for (int i = 0; i < utenti.length; i++) tutti.add(get(i));
+                return tutti;
+            }
+        };
+        GestioneUtenti g = GestioneUtenti.daFile(elenco);
+
+        Utente trovato = g.trovaUtente("0612700011");
+        assertEquals("Nome11", trovato.getNome());
+        assertNull(g.trovaUtente("0612799999"));
+        assertTrue(decodificati.size() <= 8);
+
+        assertEquals(15, g.getUtenti().size());
+        assertSame(trovato, g.trovaUtente("0612700011"));
+        assertEquals(15, decodificati.size());
+    }
 }
@@ -0,0 +1,94 @@
+package biblioteca.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @brief Test della classe IndiceIsbn.
+ */
+class IndiceIsbnTest {
+
+    private IndiceIsbn indice;
+
+    @BeforeEach
+    void setUp() {
+        indice = new IndiceIsbn();
+    }
+
+    private Libro libro(long isbn) {
+        return new Libro(isbn, "Titolo " + isbn, new ArrayList<String>(), 2000, 1, 1);
+    }
+
+    @Test
+    void testGet_indiceVuoto_restituisceNull() {
+        assertNull(indice.get(9788800000000L));
+        assertEquals(0, indice.size());
+    }
+
+    @Test
+    void testPutEGet_ritrovaLibro() {
+        Libro l = libro(9788800000000L);
+        indice.put(l);
+
+        assertSame(l, indice.get(9788800000000L));
+        assertEquals(1, indice.size());
+    }
+
+    @Test
+    void testPut_stessoIsbn_sostituisceSenzaDuplicare() {
+        indice.put(libro(9788800000000L));
+        Libro nuovo = libro(9788800000000L);
+        indice.put(nuovo);
+
+        assertSame(nuovo, indice.get(9788800000000L));
+        assertEquals(1, indice.size());
+    }
+
+    @Test
+    void testRemove_eliminaSoloIlLibroIndicato() {
+        indice.put(libro(9788800000000L));
+        indice.put(libro(9788800000001L));
+
+        assertNotNull(indice.remove(9788800000000L));
+        assertNull(indice.get(9788800000000L));
+        assertNotNull(indice.get(9788800000001L));
+        assertEquals(1, indice.size());
+        assertNull(indice.remove(9788800000000L));
+    }
+
+    @Test
+    void testMoltiLibri_ridimensionaERimuoveSenzaPerdereChiavi() {
+        int n = 5000;
+        for (int i = 0; i < n; i++) {
+            indice.put(libro(9788800000000L + i * 7L));
+        }
+        assertEquals(n, indice.size());
+
+        for (int i = 0; i < n; i += 2) {
+            assertNotNull(indice.remove(9788800000000L + i * 7L));
+        }
+        for (int i = 0; i < n; i++) {
+            Libro trovato = indice.get(9788800000000L + i * 7L);
+            if (i % 2 == 0) {
+                assertNull(trovato);
+            } else {
+                assertNotNull(trovato);
+                assertEquals(9788800000000L + i * 7L, trovato.getIsbn());
+            }
+        }
+        assertEquals(n / 2, indice.size());
+    }
+
+    @Test
+    void testClear_svuotaIndice() {
+        indice.put(libro(9788800000000L));
+        indice.clear();
+
+        assertEquals(0, indice.size());
+        assertNull(indice.get(9788800000000L));
+    }
+}
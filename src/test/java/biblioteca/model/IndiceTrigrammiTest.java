@@ -0,0 +1,89 @@
+package biblioteca.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @brief Test della classe IndiceTrigrammi.
+ */
+class IndiceTrigrammiTest {
+
+    private IndiceTrigrammi<String> indice;
+
+    @BeforeEach
+    void setUp() {
+        indice = new IndiceTrigrammi<String>();
+        indice.aggiorna("a", Collections.singletonList("L'amica geniale"));
+        indice.aggiorna("b", Arrays.asList("Storia del nuovo cognome", "Elena Ferrante"));
+        indice.aggiorna("c", Collections.singletonList("Gomorra"));
+    }
+
+    @Test
+    void testCerca_sottostringaSenzaDistinzioneMaiuscole() {
+        assertEquals(Collections.singletonList("a"), indice.cerca(IndiceTrigrammi.normalizza("  GENIA ")));
+        assertEquals(Collections.singletonList("b"), indice.cerca("ferr"));
+        assertTrue(indice.cerca("genialex").isEmpty());
+    }
+
+    @Test
+    void testCerca_trigrammiPresentiMaNonConsecutivi_nonTrova() {
+        // "ami" e "nia" sono entrambi nel titolo, ma "amnia" no
+        assertTrue(indice.cerca("amnia").isEmpty());
+    }
+
+    @Test
+    void testCerca_stringaCorta_scorreITesti() {
+        List<String> trovati = indice.cerca("om");
+        assertEquals(2, trovati.size());
+        assertTrue(trovati.containsAll(Arrays.asList("b", "c")));
+    }
+
+    @Test
+    void testAggiornaERimuovi_sostituisconoITesti() {
+        indice.aggiorna("c", Collections.singletonList("Zero zero zero"));
+        assertTrue(indice.cerca("gomorra").isEmpty());
+        assertEquals(Collections.singletonList("c"), indice.cerca("zero"));
+
+        indice.rimuovi("c");
+        assertTrue(indice.cerca("zero").isEmpty());
+        assertEquals(2, indice.size());
+    }
+
+    @Test
+    void testCercaPrefisso_ancheConUnSoloCarattere() {
+        IndiceTrigrammi<String> prefissi = new IndiceTrigrammi<String>(true);
+        prefissi.aggiorna("a", Collections.singletonList("Esposito"));
+        prefissi.aggiorna("b", Collections.singletonList("Russo"));
+        prefissi.aggiorna("c", Collections.singletonList("Espa"));
+
+        assertEquals(2, prefissi.cercaPrefisso("e").size());
+        assertEquals(Collections.singletonList("b"), prefissi.cercaPrefisso("ru"));
+        assertEquals(Collections.singletonList("a"), prefissi.cercaPrefisso("espos"));
+        assertTrue(prefissi.cercaPrefisso("sso").isEmpty());
+        assertEquals(Collections.singletonList("b"), prefissi.cercaPrefisso("russo"));
+        assertEquals(3, prefissi.cercaPrefisso("").size());
+    }
+
+    @Test
+    void testCercaPrefisso_indiceSenzaPrefissi_lancia() {
+        assertThrows(IllegalStateException.class, () -> indice.cercaPrefisso("a"));
+    }
+
+    @Test
+    void testCerca_molteElementi_trovaSoloQuelliGiusti() {
+        IndiceTrigrammi<Integer> grande = new IndiceTrigrammi<Integer>();
+        for (int i = 0; i < 20000; i++) {
+            grande.aggiorna(i, Collections.singletonList("Titolo del libro numero " + i));
+        }
+        List<Integer> trovati = grande.cerca("numero 1234");
+        assertEquals(11, trovati.size()); // 1234 e 12340..12349
+        assertTrue(trovati.contains(1234));
+        assertTrue(trovati.contains(12349));
+    }
+}
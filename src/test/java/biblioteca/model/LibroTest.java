@@ -3,10 +3,20 @@ package biblioteca.model;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -185,6 +195,155 @@ class LibroTest {
         assertEquals(5, libro.getCopieDisponibili());
     }
 
+    @Test
+    void testRiservaCopia_finoAZero_poiFalse() {
+        for (int i = 0; i < 5; i++) {
+            assertTrue(libro.riservaCopia());
+        }
+        assertFalse(libro.riservaCopia());
+        assertEquals(0, libro.getCopieDisponibili());
+        assertFalse(libro.isDisponibile());
+    }
+
+    @Test
+    void testRilasciaCopia_nonSuperaTotali() {
+        assertFalse(libro.rilasciaCopia());
+        assertEquals(5, libro.getCopieDisponibili());
+
+        libro.riservaCopia();
+        assertTrue(libro.rilasciaCopia());
+        assertEquals(5, libro.getCopieDisponibili());
+    }
+
+    @Test
+    void testAggiungiCopie_aumentaTotaliEDisponibili() {
+        libro.riservaCopia();
+        libro.aggiungiCopie(2);
+
+        assertEquals(7, libro.getCopieTotali());
+        assertEquals(6, libro.getCopieDisponibili());
+    }
+
+    @Test
+    void testCambiaCopieTotali_mantieneLeCopieInPrestito() {
+        libro.riservaCopia();
+        libro.riservaCopia();
+
+        assertTrue(libro.cambiaCopieTotali(8));
+        assertEquals(8, libro.getCopieTotali());
+        assertEquals(6, libro.getCopieDisponibili());
+
+        assertTrue(libro.cambiaCopieTotali(2));
+        assertEquals(2, libro.getCopieTotali());
+        assertEquals(0, libro.getCopieDisponibili());
+    }
+
+    @Test
+    void testCambiaCopieTotali_sottoQuelleInPrestito_rifiutaSenzaModificare() {
+        libro.riservaCopia();
+        libro.riservaCopia();
+        libro.riservaCopia();
+
+        assertFalse(libro.cambiaCopieTotali(2));
+        assertEquals(5, libro.getCopieTotali());
+        assertEquals(2, libro.getCopieDisponibili());
+    }
+
+    @Test
+    void testCambiaCopieTotaliConPrestitiConcorrenti_nonPerdeCopie() throws Exception {
+        int thread = 4;
+        int tentativi = 10000;
+        ExecutorService esecutore = Executors.newFixedThreadPool(thread + 1);
+        CountDownLatch via = new CountDownLatch(1);
+        AtomicInteger prese = new AtomicInteger();
+        List<Future<?>> lavori = new ArrayList<Future<?>>();
+        for (int t = 0; t < thread; t++) {
+            lavori.add(esecutore.submit(() -> {
+                via.await();
+                for (int i = 0; i < tentativi; i++) {
+                    if (libro.riservaCopia()) {
+                        prese.incrementAndGet();
+                        if (i % 2 == 0 && libro.rilasciaCopia()) {
+                            prese.decrementAndGet();
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        lavori.add(esecutore.submit(() -> {
+            via.await();
+            for (int i = 0; i < tentativi; i++) {
+                libro.cambiaCopieTotali(5 + (i % 2) * 3);
+                libro.aggiungiCopie(1);
+            }
+            return null;
+        }));
+        via.countDown();
+        for (Future<?> lavoro : lavori) {
+            lavoro.get(30, TimeUnit.SECONDS);
+        }
+        esecutore.shutdown();
+
+        // ogni copia presa resta contata come in prestito, qualunque sia stato l'ordine delle modifiche
+        assertEquals(prese.get(), libro.getCopieTotali() - libro.getCopieDisponibili());
+        assertTrue(libro.getCopieDisponibili() >= 0);
+    }
+
+    @Test
+    void testSerializzazione_conservaLeCopie() throws Exception {
+        libro.riservaCopia();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(libro);
+        }
+        Libro letto;
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()))) {
+            letto = (Libro) in.readObject();
+        }
+        assertEquals(5, letto.getCopieTotali());
+        assertEquals(4, letto.getCopieDisponibili());
+        assertTrue(letto.rilasciaCopia());
+        assertEquals(5, letto.getCopieDisponibili());
+    }
+
+    @Test
+    void testRiservaERilasciaConcorrenti_restanoNeiLimiti() throws Exception {
+        int thread = 8;
+        int tentativi = 10000;
+        ExecutorService esecutore = Executors.newFixedThreadPool(thread);
+        CountDownLatch via = new CountDownLatch(1);
+        AtomicInteger prese = new AtomicInteger();
+        List<Future<?>> lavori = new ArrayList<Future<?>>();
+        for (int t = 0; t < thread; t++) {
+            lavori.add(esecutore.submit(() -> {
+                via.await();
+                for (int i = 0; i < tentativi; i++) {
+                    if (libro.riservaCopia()) {
+                        prese.incrementAndGet();
+                        int disponibili = libro.getCopieDisponibili();
+                        assertTrue(disponibili >= 0 && disponibili <= 5, "copie disponibili: " + disponibili);
+                        if (i % 2 == 0) {
+                            assertTrue(libro.rilasciaCopia());
+                            prese.decrementAndGet();
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        via.countDown();
+        for (Future<?> lavoro : lavori) {
+            lavoro.get(30, TimeUnit.SECONDS);
+        }
+        esecutore.shutdown();
+
+        // le copie tenute e quelle ancora disponibili tornano sempre alle copie totali
+        assertEquals(5, prese.get() + libro.getCopieDisponibili());
+        assertEquals(0, libro.getCopieDisponibili());
+    }
+
     @Test
     void testCompareTo() {
         Libro l1 = new Libro(9788800000000L, "L'amica geniale", null, 2011, 1);
@@ -7,8 +7,15 @@ import org.junit.jupiter.api.io.CleanupMode;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.File;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -68,7 +75,7 @@ class ArchivioFileTest {
 
     @Test
     void caricaPrestiti_senzaFile_restituisceVuoto() {
-        GestionePrestiti gp = archivio.caricaPrestiti();
+        GestionePrestiti gp = archivio.caricaPrestiti(archivio.caricaLibri(), archivio.caricaUtenti());
         assertNotNull(gp);
         assertTrue(gp.getPrestiti().isEmpty());
     }
@@ -78,11 +85,30 @@ class ArchivioFileTest {
         GestionePrestiti gp = new GestionePrestiti();
         archivio.salvaPrestiti(gp);
 
-        GestionePrestiti letto = archivio.caricaPrestiti();
+        GestionePrestiti letto = archivio.caricaPrestiti(archivio.caricaLibri(), archivio.caricaUtenti());
         assertNotNull(letto);
         assertTrue(letto.getPrestiti().isEmpty());
     }
 
+    @Test
+    void salvaECaricaPrestiti_mantieneAttiviEStorico() {
+        GestionePrestiti gp = new GestionePrestiti();
+        Utente u = new Utente("0612700001", "Matteo", "Menza", "m.menza@unisa.it");
+        Libro a = new Libro(9788800000000L, "Odissea", new ArrayList<>(), 2020, 2);
+        Libro b = new Libro(9788800000001L, "Lilith", new ArrayList<>(), 2018, 2);
+        Prestito chiuso = gp.registraPrestito(u, a, LocalDate.of(2025, 11, 1), LocalDate.of(2025, 11, 15));
+        gp.registraPrestito(u, b, LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 15));
+        gp.registraRestituzione(chiuso, LocalDate.of(2025, 11, 10));
+
+        archivio.salvaPrestiti(gp);
+
+        GestionePrestiti letto = archivio.caricaPrestiti(archivio.caricaLibri(), archivio.caricaUtenti());
+        assertEquals(2, letto.getPrestiti().size());
+        assertEquals(1, letto.getPrestitiAttivi().size());
+        assertEquals(9788800000001L, letto.getPrestitiAttivi().get(0).getLibro().getIsbn());
+        assertEquals(1, letto.contaPrestitiAttivi(u));
+    }
+
     @Test
     void salvaECaricaAutenticazione_passwordFunziona() {
         Autenticazione a = new Autenticazione();
@@ -125,4 +151,381 @@ class ArchivioFileTest {
         assertDoesNotThrow(() -> archivio.salvaLibri(new GestioneLibri()));
         assertTrue(f.isDirectory());
     }
+
+    @Test
+    void giornale_modificheRiapplicateAlRiavvioECompattate() {
+        GestioneLibri gl = archivio.caricaLibri();
+        GestioneUtenti gu = archivio.caricaUtenti();
+        GestionePrestiti gp = archivio.caricaPrestiti(gl, gu);
+        gu.setGestionePrestiti(gp);
+        archivio.attivaGiornale(gl, gu, gp);
+        assertTrue(archivio.isGiornaleAttivo());
+
+        Libro l = gl.inserisciLibro(9788800000000L, "Odissea", new ArrayList<>(), 2020, 2);
+        archivio.registraLibro(gl, l);
+        Utente u = new Utente("0612700001", "Matteo", "Menza", "m.menza@unisa.it");
+        gu.inserisciUtente(u);
+        archivio.registraUtente(gu, u);
+        Prestito p = gp.registraPrestito(u, l, LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 10));
+        archivio.registraPrestito(gp, gl, gu, p);
+        assertFalse(new File(tempDir.toFile(), "libri.dat").exists());
+
+        ArchivioFile riavvio = new ArchivioFile(tempDir.toString());
+        GestioneLibri gl2 = riavvio.caricaLibri();
+        GestioneUtenti gu2 = riavvio.caricaUtenti();
+        GestionePrestiti gp2 = riavvio.caricaPrestiti(gl2, gu2);
+        gu2.setGestionePrestiti(gp2);
+        riavvio.attivaGiornale(gl2, gu2, gp2);
+
+        assertEquals(1, gl2.trovaLibro(9788800000000L).getCopieDisponibili());
+        assertNotNull(gu2.trovaUtente("0612700001"));
+        assertEquals(1, gp2.getPrestitiAttivi().size());
+        assertEquals(Giornale.DIMENSIONE_RECORD_GENERAZIONE, new File(tempDir.toFile(), "giornale.log").length());
+        assertEquals(1, riavvio.caricaPrestiti(riavvio.caricaLibri(), riavvio.caricaUtenti()).getPrestitiAttivi().size());
+        riavvio.chiudi();
+    }
+
+    @Test
+    void salvaLibri_scriveFormatoBinario_eRileggeAutori() {
+        GestioneLibri gl = new GestioneLibri();
+        gl.inserisciLibro(9788800000000L, "Odissea", java.util.Arrays.asList("Omero", "Anonimo"), 2020, 5);
+        gl.inserisciLibro(9788800000001L, "Iliade", java.util.Arrays.asList("Omero"), 2019, 1);
+
+        archivio.salvaLibri(gl);
+
+        assertTrue(FormatoBinario.isBinario(new File(tempDir.toFile(), "libri.dat")));
+        GestioneLibri letto = archivio.caricaLibri();
+        assertEquals(java.util.Arrays.asList("Omero", "Anonimo"), letto.trovaLibro(9788800000000L).getAutori());
+        assertEquals(5, letto.trovaLibro(9788800000000L).getCopieDisponibili());
+        assertEquals(2019, letto.trovaLibro(9788800000001L).getAnnoPubblicazione());
+    }
+
+    @Test
+    void caricaLibri_decodificaSoloILibriCercati() throws Exception {
+        GestioneLibri gl = new GestioneLibri();
+        gl.inserisciLibro(9788800000000L, "Odissea", new ArrayList<>(), 2020, 5);
+        gl.inserisciLibro(9788800000001L, "Iliade", new ArrayList<>(), 2019, 1);
+        gl.inserisciLibro(9788800000002L, "Eneide", new ArrayList<>(), 2018, 2);
+        archivio.salvaLibri(gl);
+        // il titolo del terzo record punta fuori dal file: lo si scopre solo decodificandolo
+        try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(new File(tempDir.toFile(), "libri.dat"), "rw")) {
+            raf.seek(FormatoBinario.INTESTAZIONE + 2L * FormatoBinario.RECORD_LIBRO + 8);
+            raf.writeInt(Integer.MAX_VALUE);
+        }
+
+        GestioneLibri letto = archivio.caricaLibri();
+
+        assertEquals("Odissea", letto.trovaLibro(9788800000000L).getTitolo());
+        assertSame(letto.trovaLibro(9788800000000L), letto.trovaLibro(9788800000000L));
+        assertNull(letto.trovaLibro(9788799999999L));
+        assertThrows(java.io.UncheckedIOException.class, letto::getLibri);
+    }
+
+    @Test
+    void caricaLibri_vecchioFormatoSerializzato_vieneAncoraLetto() throws Exception {
+        GestioneLibri gl = new GestioneLibri();
+        gl.inserisciLibro(9788800000000L, "Odissea", new ArrayList<>(), 2020, 5);
+        try (java.io.ObjectOutputStream out = new java.io.ObjectOutputStream(
+                new java.io.FileOutputStream(new File(tempDir.toFile(), "libri.dat")))) {
+            out.writeObject(gl);
+        }
+
+        GestioneLibri letto = archivio.caricaLibri();
+        assertEquals("Odissea", letto.trovaLibro(9788800000000L).getTitolo());
+    }
+
+    @Test
+    void caricaPrestiti_conLibriEUtenti_collegaLeIstanzeCaricate() {
+        GestioneLibri gl = new GestioneLibri();
+        Libro l = gl.inserisciLibro(9788800000000L, "Odissea", new ArrayList<>(), 2020, 2);
+        GestioneUtenti gu = new GestioneUtenti();
+        Utente u = new Utente("0612700001", "Matteo", "Menza", "m.menza@unisa.it");
+        gu.inserisciUtente(u);
+        GestionePrestiti gp = new GestionePrestiti();
+        gp.registraPrestito(u, l, LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 10));
+        archivio.salvaLibri(gl);
+        archivio.salvaUtenti(gu);
+        archivio.salvaPrestiti(gp);
+
+        GestioneLibri gl2 = archivio.caricaLibri();
+        GestioneUtenti gu2 = archivio.caricaUtenti();
+        GestionePrestiti gp2 = archivio.caricaPrestiti(gl2, gu2);
+
+        Prestito p = gp2.getPrestitiAttivi().get(0);
+        assertSame(gl2.trovaLibro(9788800000000L), p.getLibro());
+        assertSame(gu2.trovaUtente("0612700001"), p.getUtente());
+        assertEquals(1, p.getUtente().getNumPrestitiAttivi());
+        assertEquals(1, p.getLibro().getCopieDisponibili());
+    }
+
+    @Test
+    void caricaTutto_prestitiVecchioFormato_usanoLeStesseIstanze() throws Exception {
+        GestioneLibri gl = new GestioneLibri();
+        Libro l = gl.inserisciLibro(9788800000000L, "Odissea", new ArrayList<>(), 2020, 2);
+        GestioneUtenti gu = new GestioneUtenti();
+        Utente u = new Utente("0612700001", "Matteo", "Menza", "m.menza@unisa.it");
+        gu.inserisciUtente(u);
+        GestionePrestiti gp = new GestionePrestiti();
+        gp.registraPrestito(u, l, LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 10));
+        archivio.salvaLibri(gl);
+        archivio.salvaUtenti(gu);
+        try (java.io.ObjectOutputStream out = new java.io.ObjectOutputStream(
+                new java.io.FileOutputStream(new File(tempDir.toFile(), "prestiti.dat")))) {
+            out.writeObject(gp);
+        }
+
+        DatiBiblioteca dati = archivio.caricaTutto();
+
+        Prestito p = dati.gestionePrestiti.getPrestitiAttivi().get(0);
+        Utente caricato = dati.gestioneUtenti.trovaUtente("0612700001");
+        assertSame(dati.gestioneLibri.trovaLibro(9788800000000L), p.getLibro());
+        assertSame(caricato, p.getUtente());
+        assertEquals(1, caricato.getNumPrestitiAttivi());
+        assertEquals(1, dati.gestionePrestiti.contaPrestitiAttivi(caricato));
+    }
+
+    @Test
+    void caricaTuttoInParallelo_stessiDatiDiCaricaTutto() throws Exception {
+        GestioneLibri gl = new GestioneLibri();
+        Libro l = gl.inserisciLibro(9788800000000L, "Odissea", new ArrayList<>(), 2020, 2);
+        GestioneUtenti gu = new GestioneUtenti();
+        Utente u = new Utente("0612700001", "Matteo", "Menza", "m.menza@unisa.it");
+        gu.inserisciUtente(u);
+        GestionePrestiti gp = new GestionePrestiti();
+        gp.registraPrestito(u, l, LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 10));
+        archivio.salvaLibri(gl);
+        archivio.salvaUtenti(gu);
+        archivio.salvaPrestiti(gp);
+
+        ExecutorService esecutore = Executors.newFixedThreadPool(4);
+        List<String> letti = Collections.synchronizedList(new ArrayList<String>());
+        DatiBiblioteca dati;
+        try {
+            dati = archivio.caricaTuttoInParallelo(esecutore, letti::add).get(10, TimeUnit.SECONDS);
+        } finally {
+            esecutore.shutdown();
+        }
+
+        assertEquals(4, letti.size());
+        assertNotNull(dati.autenticazione);
+        Prestito p = dati.gestionePrestiti.getPrestitiAttivi().get(0);
+        Utente caricato = dati.gestioneUtenti.trovaUtente("0612700001");
+        assertSame(dati.gestioneLibri.trovaLibro(9788800000000L), p.getLibro());
+        assertSame(caricato, p.getUtente());
+        assertEquals(1, caricato.getNumPrestitiAttivi());
+        assertEquals(1, dati.gestioneLibri.trovaLibro(9788800000000L).getCopieDisponibili());
+        // la gestione utenti è collegata ai prestiti: un utente con un prestito attivo non si può eliminare
+        dati.gestioneUtenti.eliminaUtente("0612700001");
+        assertSame(caricato, dati.gestioneUtenti.trovaUtente("0612700001"));
+    }
+
+    @Test
+    void caricaTuttoInParallelo_senzaFile_datiVuoti() throws Exception {
+        DatiBiblioteca dati = archivio.caricaTuttoInParallelo(Runnable::run, null).get();
+
+        assertTrue(dati.gestioneLibri.getLibri().isEmpty());
+        assertTrue(dati.gestioneUtenti.getUtenti().isEmpty());
+        assertTrue(dati.gestionePrestiti.getPrestiti().isEmpty());
+        assertNotNull(dati.autenticazione);
+    }
+
+    @Test
+    void salvataggioAsincrono_flushScriveLUltimoStato() {
+        archivio.abilitaSalvataggioAsincrono();
+        GestioneUtenti gu = new GestioneUtenti();
+        for (int i = 0; i < 20; i++) {
+            gu.inserisciUtente(new Utente("06127000" + (10 + i), "Nome" + i, "Cognome" + i, "u" + i + "@unisa.it"));
+            archivio.salvaUtenti(gu);
+        }
+
+        archivio.flush();
+
+        assertEquals(20, new ArchivioFile(tempDir.toString()).caricaUtenti().getUtenti().size());
+        archivio.chiudi();
+    }
+
+    @Test
+    void salvataggioAsincrono_scriveLoStatoDelMomentoDellaRichiesta() {
+        archivio.abilitaSalvataggioAsincrono();
+        GestioneLibri gl = new GestioneLibri();
+        gl.inserisciLibro(9788800000000L, "Odissea", new ArrayList<>(), 2020, 5);
+        archivio.salvaLibri(gl);
+        // modifica non ancora salvata: il thread in background non deve leggerla dal modello
+        gl.inserisciLibro(9788800000001L, "Lilith", new ArrayList<>(), 2018, 2);
+
+        archivio.flush();
+
+        GestioneLibri letto = new ArchivioFile(tempDir.toString()).caricaLibri();
+        assertEquals(1, letto.getLibri().size());
+        assertNotNull(letto.trovaLibro(9788800000000L));
+        archivio.chiudi();
+    }
+
+    @Test
+    void salvataggioAsincrono_compattazioneNonVieneSovrascrittaDaUnSalvataggioInAttesa() {
+        GestioneLibri gl = new GestioneLibri();
+        GestionePrestiti gp = new GestionePrestiti();
+        GestioneUtenti gu = new GestioneUtenti();
+        gu.setGestionePrestiti(gp);
+        archivio.abilitaSalvataggioAsincrono();
+        archivio.attivaGiornale(gl, gu, gp);
+        gl.inserisciLibro(9788800000000L, "Odissea", new ArrayList<>(), 2020, 2);
+        archivio.salvaLibri(gl);
+        Libro l = gl.inserisciLibro(9788800000001L, "Lilith", new ArrayList<>(), 2018, 2);
+        archivio.registraLibro(gl, l);
+        archivio.compatta();
+        archivio.flush();
+
+        GestioneLibri letti = new ArchivioFile(tempDir.toString()).caricaLibri();
+        assertEquals(2, letti.getLibri().size());
+        archivio.chiudi();
+    }
+
+    @Test
+    void salvataggioAsincrono_conGiornale_chiudiRendePersistentiLeModifiche() {
+        GestioneLibri gl = new GestioneLibri();
+        GestionePrestiti gp = new GestionePrestiti();
+        GestioneUtenti gu = new GestioneUtenti();
+        gu.setGestionePrestiti(gp);
+        archivio.attivaGiornale(gl, gu, gp);
+        archivio.abilitaSalvataggioAsincrono();
+
+        Libro l = gl.inserisciLibro(9788800000000L, "Odissea", new ArrayList<>(), 2020, 3);
+        archivio.registraLibro(gl, l);
+        Utente u = new Utente("0612700001", "Matteo", "Menza", "m.menza@unisa.it");
+        gu.inserisciUtente(u);
+        archivio.registraUtente(gu, u);
+        Prestito p = gp.registraPrestito(u, l, LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 10));
+        archivio.registraPrestito(gp, gl, gu, p);
+        archivio.chiudi();
+
+        ArchivioFile riavvio = new ArchivioFile(tempDir.toString());
+        GestioneLibri gl2 = riavvio.caricaLibri();
+        GestioneUtenti gu2 = riavvio.caricaUtenti();
+        GestionePrestiti gp2 = riavvio.caricaPrestiti(gl2, gu2);
+        assertEquals(2, gl2.trovaLibro(9788800000000L).getCopieDisponibili());
+        assertEquals(1, gp2.getPrestitiAttivi().size());
+        assertEquals(Giornale.DIMENSIONE_RECORD_GENERAZIONE, new File(tempDir.toFile(), "giornale.log").length());
+    }
+
+    @Test
+    void giornale_compattazioneInterrottaAMeta_usaGliSnapshotDellaGenerazioneDelGiornale() throws Exception {
+        GestioneLibri gl = new GestioneLibri();
+        GestionePrestiti gp = new GestionePrestiti();
+        GestioneUtenti gu = new GestioneUtenti();
+        gu.setGestionePrestiti(gp);
+        archivio.attivaGiornale(gl, gu, gp);
+        Libro l = gl.inserisciLibro(9788800000000L, "Odissea", new ArrayList<>(), 2020, 2);
+        archivio.registraLibro(gl, l);
+        Utente u = new Utente("0612700001", "Matteo", "Menza", "m.menza@unisa.it");
+        gu.inserisciUtente(u);
+        archivio.registraUtente(gu, u);
+        archivio.chiudi();
+
+        ArchivioFile sessione = new ArchivioFile(tempDir.toString());
+        DatiBiblioteca dati = sessione.caricaTutto();
+        sessione.attivaGiornale(dati.gestioneLibri, dati.gestioneUtenti, dati.gestionePrestiti);
+        Prestito p = dati.gestionePrestiti.registraPrestito(dati.gestioneUtenti.trovaUtente("0612700001"),
+                dati.gestioneLibri.trovaLibro(9788800000000L), LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 10));
+        sessione.registraPrestito(dati.gestionePrestiti, dati.gestioneLibri, dati.gestioneUtenti, p);
+
+        // la compattazione ha riscritto solo prestiti.dat: libri, utenti e giornale sono ancora quelli di prima
+        byte[] giornale = Files.readAllBytes(tempDir.resolve("giornale.log"));
+        byte[] libri = Files.readAllBytes(tempDir.resolve("libri.dat"));
+        byte[] utenti = Files.readAllBytes(tempDir.resolve("utenti.dat"));
+        sessione.chiudi();
+        Files.write(tempDir.resolve("giornale.log"), giornale);
+        Files.write(tempDir.resolve("libri.dat"), libri);
+        Files.write(tempDir.resolve("utenti.dat"), utenti);
+
+        ArchivioFile riavvio = new ArchivioFile(tempDir.toString());
+        DatiBiblioteca riletti = riavvio.caricaTutto();
+        riavvio.attivaGiornale(riletti.gestioneLibri, riletti.gestioneUtenti, riletti.gestionePrestiti);
+
+        assertEquals(1, riletti.gestionePrestiti.getPrestitiAttivi().size());
+        assertEquals(1, riletti.gestioneLibri.trovaLibro(9788800000000L).getCopieDisponibili());
+        assertEquals(1, riletti.gestioneUtenti.trovaUtente("0612700001").getNumPrestitiAttivi());
+        riavvio.chiudi();
+    }
+
+    @Test
+    void giornale_compattazioneFallita_alRiavvioNonPerdeIPrestiti() throws Exception {
+        GestioneLibri gl = new GestioneLibri();
+        GestionePrestiti gp = new GestionePrestiti();
+        GestioneUtenti gu = new GestioneUtenti();
+        gu.setGestionePrestiti(gp);
+        archivio.attivaGiornale(gl, gu, gp);
+        Libro l = gl.inserisciLibro(9788800000000L, "Odissea", new ArrayList<>(), 2020, 2);
+        archivio.registraLibro(gl, l);
+        Utente u = new Utente("0612700001", "Matteo", "Menza", "m.menza@unisa.it");
+        gu.inserisciUtente(u);
+        archivio.registraUtente(gu, u);
+        Prestito primo = gp.registraPrestito(u, l, LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 10));
+        archivio.registraPrestito(gp, gl, gu, primo);
+        archivio.chiudi();
+
+        ArchivioFile sessione = new ArchivioFile(tempDir.toString());
+        DatiBiblioteca dati = sessione.caricaTutto();
+        sessione.attivaGiornale(dati.gestioneLibri, dati.gestioneUtenti, dati.gestionePrestiti);
+        Utente utente = dati.gestioneUtenti.trovaUtente("0612700001");
+        Libro libro = dati.gestioneLibri.trovaLibro(9788800000000L);
+        Prestito secondo = dati.gestionePrestiti.registraPrestito(utente, libro,
+                LocalDate.of(2025, 12, 2), LocalDate.of(2025, 12, 12));
+        sessione.registraPrestito(dati.gestionePrestiti, dati.gestioneLibri, dati.gestioneUtenti, secondo);
+
+        // una cartella non vuota al posto del temporaneo fa fallire ogni scrittura di libri.dat
+        Path bloccante = tempDir.resolve("libri.dat.tmp");
+        Files.createDirectories(bloccante.resolve("x"));
+        sessione.compatta();
+        Prestito restituito = dati.gestionePrestiti.trovaPrestitoAttivo("0612700001", 9788800000000L,
+                LocalDate.of(2025, 12, 1));
+        dati.gestionePrestiti.registraRestituzione(restituito, LocalDate.of(2025, 12, 5));
+        sessione.registraRestituzione(dati.gestionePrestiti, dati.gestioneLibri, dati.gestioneUtenti, restituito);
+        sessione.compatta();
+        assertEquals(1, Giornale.generazione(tempDir.resolve("giornale.log").toFile()));
+
+        // arresto senza chiudi(), poi riavvio
+        Files.delete(bloccante.resolve("x"));
+        Files.delete(bloccante);
+        ArchivioFile riavvio = new ArchivioFile(tempDir.toString());
+        DatiBiblioteca riletti = riavvio.caricaTutto();
+        riavvio.attivaGiornale(riletti.gestioneLibri, riletti.gestioneUtenti, riletti.gestionePrestiti);
+
+        assertEquals(1, riletti.gestionePrestiti.getPrestitiAttivi().size());
+        assertEquals(1, riletti.gestionePrestiti.getNumeroPrestitiStorico());
+        assertEquals(1, riletti.gestioneLibri.trovaLibro(9788800000000L).getCopieDisponibili());
+        assertEquals(1, riletti.gestioneUtenti.trovaUtente("0612700001").getNumPrestitiAttivi());
+        riavvio.chiudi();
+    }
+
+    @Test
+    void salvaLibri_fileTroncato_usaLaGenerazionePrecedente() throws Exception {
+        GestioneLibri gl = new GestioneLibri();
+        gl.inserisciLibro(9788800000000L, "Odissea", new ArrayList<>(), 2020, 5);
+        archivio.salvaLibri(gl);
+        gl.inserisciLibro(9788800000001L, "Lilith", new ArrayList<>(), 2018, 2);
+        archivio.salvaLibri(gl);
+
+        File fileLibri = new File(tempDir.toFile(), "libri.dat");
+        assertTrue(new File(tempDir.toFile(), "libri.dat.bak").isFile());
+        assertFalse(new File(tempDir.toFile(), "libri.dat.tmp").exists());
+        try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(fileLibri, "rw")) {
+            raf.setLength(raf.length() - 5);
+        }
+
+        GestioneLibri letto = archivio.caricaLibri();
+        assertEquals(1, letto.getLibri().size());
+        assertNotNull(letto.trovaLibro(9788800000000L));
+    }
+
+    @Test
+    void caricaUtenti_fileMancanteConCopiaDiRiserva_usaLaCopia() {
+        GestioneUtenti gu = new GestioneUtenti();
+        gu.inserisciUtente(new Utente("0612700001", "Matteo", "Menza", "m.menza@unisa.it"));
+        archivio.salvaUtenti(gu);
+        archivio.salvaUtenti(gu);
+        assertTrue(new File(tempDir.toFile(), "utenti.dat").delete());
+
+        assertNotNull(archivio.caricaUtenti().trovaUtente("0612700001"));
+    }
 }
@@ -0,0 +1,49 @@
+package biblioteca.persistence;
+
+import biblioteca.model.GestioneLibri;
+import biblioteca.model.GestionePrestiti;
+import biblioteca.model.GestioneUtenti;
+
+import java.nio.file.Path;
+
+/**
+ * @brief Backend che usa ArchivioFile così com'è: formato binario, scrittura atomica con fsync e file .bak.
+ * Il salvataggio asincrono non viene attivato, quindi ogni salva* misura anche la scrittura su disco.
+ */
+public class BackendArchivioFile implements BackendPersistenza {
+
+    @Override
+    public String nome() {
+        return "archivio-file";
+    }
+
+    @Override
+    public void salvaLibri(Path cartella, GestioneLibri gl) {
+        new ArchivioFile(cartella.toString()).salvaLibri(gl);
+    }
+
+    @Override
+    public GestioneLibri caricaLibri(Path cartella) {
+        return new ArchivioFile(cartella.toString()).caricaLibri();
+    }
+
+    @Override
+    public void salvaUtenti(Path cartella, GestioneUtenti gu) {
+        new ArchivioFile(cartella.toString()).salvaUtenti(gu);
+    }
+
+    @Override
+    public GestioneUtenti caricaUtenti(Path cartella) {
+        return new ArchivioFile(cartella.toString()).caricaUtenti();
+    }
+
+    @Override
+    public void salvaPrestiti(Path cartella, GestionePrestiti gp) {
+        new ArchivioFile(cartella.toString()).salvaPrestiti(gp);
+    }
+
+    @Override
+    public GestionePrestiti caricaPrestiti(Path cartella, GestioneLibri gl, GestioneUtenti gu) {
+        return new ArchivioFile(cartella.toString()).caricaPrestiti(gl, gu);
+    }
+}
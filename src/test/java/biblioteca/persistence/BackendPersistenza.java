@@ -0,0 +1,33 @@
+package biblioteca.persistence;
+
+import biblioteca.model.GestioneLibri;
+import biblioteca.model.GestionePrestiti;
+import biblioteca.model.GestioneUtenti;
+
+import java.nio.file.Path;
+
+/**
+ * @brief Modo di salvare e ricaricare libri, utenti e prestiti, confrontato da BenchmarkPersistenza.
+ * Ogni coppia salva/carica lavora su una cartella propria; per provare un nuovo formato basta implementare
+ * questa interfaccia e aggiungerlo all'elenco dei backend del benchmark.
+ */
+public interface BackendPersistenza {
+
+    /** @brief nome mostrato nei risultati e usato per scegliere il backend da riga di comando. */
+    String nome();
+
+    void salvaLibri(Path cartella, GestioneLibri gl) throws Exception;
+
+    GestioneLibri caricaLibri(Path cartella) throws Exception;
+
+    void salvaUtenti(Path cartella, GestioneUtenti gu) throws Exception;
+
+    GestioneUtenti caricaUtenti(Path cartella) throws Exception;
+
+    void salvaPrestiti(Path cartella, GestionePrestiti gp) throws Exception;
+
+    /**
+     * @brief carica i prestiti collegandoli ai libri e agli utenti già caricati dallo stesso backend.
+     */
+    GestionePrestiti caricaPrestiti(Path cartella, GestioneLibri gl, GestioneUtenti gu) throws Exception;
+}
@@ -0,0 +1,71 @@
+package biblioteca.persistence;
+
+import biblioteca.model.GestioneLibri;
+import biblioteca.model.GestionePrestiti;
+import biblioteca.model.GestioneUtenti;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * @brief Backend di riferimento con il vecchio formato: ogni Gestione* serializzata con ObjectOutputStream
+ * in un file, con stream bufferizzati ma senza file temporaneo né fsync.
+ * I prestiti contengono copie di libri e utenti e dopo il caricamento vengono ricollegati, come fa ArchivioFile
+ * con i file nel vecchio formato.
+ */
+public class BackendSerializzazioneJava implements BackendPersistenza {
+
+    @Override
+    public String nome() {
+        return "serializzazione-java";
+    }
+
+    @Override
+    public void salvaLibri(Path cartella, GestioneLibri gl) throws IOException {
+        scrivi(cartella.resolve("libri.ser"), gl);
+    }
+
+    @Override
+    public GestioneLibri caricaLibri(Path cartella) throws Exception {
+        return leggi(cartella.resolve("libri.ser"), GestioneLibri.class);
+    }
+
+    @Override
+    public void salvaUtenti(Path cartella, GestioneUtenti gu) throws IOException {
+        scrivi(cartella.resolve("utenti.ser"), gu);
+    }
+
+    @Override
+    public GestioneUtenti caricaUtenti(Path cartella) throws Exception {
+        return leggi(cartella.resolve("utenti.ser"), GestioneUtenti.class);
+    }
+
+    @Override
+    public void salvaPrestiti(Path cartella, GestionePrestiti gp) throws IOException {
+        scrivi(cartella.resolve("prestiti.ser"), gp);
+    }
+
+    @Override
+    public GestionePrestiti caricaPrestiti(Path cartella, GestioneLibri gl, GestioneUtenti gu) throws Exception {
+        GestionePrestiti gp = leggi(cartella.resolve("prestiti.ser"), GestionePrestiti.class);
+        gp.ricollega(gl, gu);
+        return gp;
+    }
+
+    private static void scrivi(Path file, Object oggetto) throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeObject(oggetto);
+        }
+    }
+
+    private static <T> T leggi(Path file, Class<T> tipo) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return tipo.cast(in.readObject());
+        }
+    }
+}
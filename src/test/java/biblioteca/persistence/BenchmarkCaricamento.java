@@ -0,0 +1,67 @@
+package biblioteca.persistence;
+
+import biblioteca.model.DatiBiblioteca;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @brief Misura il tempo di avvio (caricamento di libri, utenti, prestiti e credenziali) al variare dei thread.
+ * Confronta caricaTutto(), che legge i file uno dopo l'altro, con caricaTuttoInParallelo() su esecutori
+ * da 1 thread fino al numero di core disponibili (al massimo 4, quanti sono i file).
+ * Non è un test JUnit: si lancia a mano dopo mvn test-compile con
+ * java -cp target/classes:target/test-classes biblioteca.persistence.BenchmarkCaricamento [numeroLibri] [ripetizioni]
+ */
+public class BenchmarkCaricamento {
+
+    public static void main(String[] args) throws Exception {
+        int numeroLibri = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+        int ripetizioni = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+        Path dir = Files.createTempDirectory("benchmark-caricamento");
+        ArchivioFile archivio = new ArchivioFile(dir.toString());
+        scriviArchivio(archivio, numeroLibri);
+
+        // riscaldamento
+        archivio.caricaTutto();
+
+        long inizio = System.nanoTime();
+        for (int i = 0; i < ripetizioni; i++) {
+            archivio.caricaTutto();
+        }
+        stampa("caricaTutto (sequenziale)", inizio, ripetizioni);
+
+        int core = Runtime.getRuntime().availableProcessors();
+        for (int thread = 1; thread <= Math.min(4, core); thread *= 2) {
+            ExecutorService esecutore = Executors.newFixedThreadPool(thread);
+            try {
+                archivio.caricaTuttoInParallelo(esecutore, null).join();
+                inizio = System.nanoTime();
+                for (int i = 0; i < ripetizioni; i++) {
+                    archivio.caricaTuttoInParallelo(esecutore, null).join();
+                }
+                stampa("caricaTuttoInParallelo, " + thread + " thread", inizio, ripetizioni);
+            } finally {
+                esecutore.shutdown();
+            }
+        }
+        System.out.printf("(%d core disponibili, %d libri)%n", core, numeroLibri);
+    }
+
+    /**
+     * @brief scrive nell'archivio i dati sintetici di BenchmarkPersistenza (GeneratoreDataset con seme fisso).
+     */
+    private static void scriviArchivio(ArchivioFile archivio, int numeroLibri) {
+        DatiBiblioteca dati = BenchmarkPersistenza.datiSintetici(numeroLibri);
+        archivio.salvaLibri(dati.gestioneLibri);
+        archivio.salvaUtenti(dati.gestioneUtenti);
+        archivio.salvaPrestiti(dati.gestionePrestiti);
+    }
+
+    private static void stampa(String nome, long inizio, int ripetizioni) {
+        double ms = (System.nanoTime() - inizio) / 1e6 / ripetizioni;
+        System.out.printf("%-36s %9.2f ms/avvio%n", nome, ms);
+    }
+}
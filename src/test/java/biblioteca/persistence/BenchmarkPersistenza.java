@@ -0,0 +1,144 @@
+package biblioteca.persistence;
+
+import biblioteca.model.DatiBiblioteca;
+import biblioteca.model.GestioneLibri;
+import biblioteca.model.GestioneUtenti;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * @brief Confronta i backend di persistenza sulle coppie salva/carica di libri, utenti e prestiti.
+ * Per ogni backend e ogni collezione misura il tempo medio di salvataggio e di caricamento, la dimensione dei file
+ * scritti (senza le eventuali generazioni precedenti .bak) e il picco di heap raggiunto durante le operazioni,
+ * rispetto all'heap occupato prima di iniziare. Il picco è la somma dei picchi delle aree di heap, quindi è una
+ * stima per eccesso, ma è confrontabile tra backend diversi.
+ * I dati sono generati da GeneratoreDataset: numeroLibri libri, un utente ogni 10 libri, un prestito ogni 2 libri,
+ * sempre con lo stesso seme perché le misure siano ripetibili.
+ * Non è un test JUnit: si lancia a mano dopo mvn test-compile con
+ * java -cp target/classes:target/test-classes biblioteca.persistence.BenchmarkPersistenza [numeroLibri] [ripetizioni] [backend...]
+ * Per aggiungere un formato da confrontare basta implementare BackendPersistenza e aggiungerlo a BACKEND.
+ */
+public class BenchmarkPersistenza {
+
+    static final List<BackendPersistenza> BACKEND = List.of(
+            new BackendArchivioFile(),
+            new BackendSerializzazioneJava());
+    /** ultimo valore caricato, tenuto raggiungibile finché non si legge il picco di heap */
+    private static volatile Object ultimoRisultato;
+    private static final long SEME = 42L;
+
+    public static void main(String[] args) throws Exception {
+        int numeroLibri = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+        int ripetizioni = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+        List<String> scelti = Arrays.asList(args).subList(Math.min(2, args.length), args.length);
+
+        DatiBiblioteca dati = datiSintetici(numeroLibri);
+        Path base = Files.createTempDirectory("benchmark-persistenza");
+        System.out.printf("%-22s %-9s %12s %12s %14s %13s %13s%n",
+                "backend", "dati", "salva ms/op", "carica ms/op", "file (byte)", "picco salva", "picco carica");
+
+        for (BackendPersistenza backend : BACKEND) {
+            if (!scelti.isEmpty() && !scelti.contains(backend.nome())) continue;
+            Path libri = Files.createDirectories(base.resolve(backend.nome()).resolve("libri"));
+            Path utenti = Files.createDirectories(base.resolve(backend.nome()).resolve("utenti"));
+            Path prestiti = Files.createDirectories(base.resolve(backend.nome()).resolve("prestiti"));
+
+            Misura salva = misura(() -> { backend.salvaLibri(libri, dati.gestioneLibri); return null; }, ripetizioni);
+            Misura carica = misura(() -> backend.caricaLibri(libri), ripetizioni);
+            stampa(backend, "libri", salva, carica, dimensione(libri));
+
+            salva = misura(() -> { backend.salvaUtenti(utenti, dati.gestioneUtenti); return null; }, ripetizioni);
+            carica = misura(() -> backend.caricaUtenti(utenti), ripetizioni);
+            stampa(backend, "utenti", salva, carica, dimensione(utenti));
+
+            // i prestiti si collegano a libri e utenti già caricati dallo stesso backend
+            GestioneLibri glCaricati = backend.caricaLibri(libri);
+            GestioneUtenti guCaricati = backend.caricaUtenti(utenti);
+            salva = misura(() -> { backend.salvaPrestiti(prestiti, dati.gestionePrestiti); return null; }, ripetizioni);
+            carica = misura(() -> backend.caricaPrestiti(prestiti, glCaricati, guCaricati), ripetizioni);
+            stampa(backend, "prestiti", salva, carica, dimensione(prestiti));
+        }
+    }
+
+    /**
+     * @brief crea i dati sintetici del benchmark con GeneratoreDataset (seme fisso): numeroLibri libri,
+     * un utente ogni 10 libri e un prestito ogni 2 libri.
+     */
+    static DatiBiblioteca datiSintetici(int numeroLibri) {
+        return new GeneratoreDataset(SEME).genera(numeroLibri, Math.max(1, numeroLibri / 10), numeroLibri / 2);
+    }
+
+    private interface Operazione {
+        Object esegui() throws Exception;
+    }
+
+    private static final class Misura {
+        final double msPerOperazione;
+        final long piccoHeap;
+
+        Misura(double msPerOperazione, long piccoHeap) {
+            this.msPerOperazione = msPerOperazione;
+            this.piccoHeap = piccoHeap;
+        }
+    }
+
+    /**
+     * @brief esegue l'operazione una volta per riscaldamento e poi ripetizioni volte, misurando tempo e picco di heap.
+     */
+    private static Misura misura(Operazione operazione, int ripetizioni) throws Exception {
+        operazione.esegui();
+        System.gc();
+        long heapIniziale = heapUsato();
+        List<MemoryPoolMXBean> aree = areeHeap();
+        for (MemoryPoolMXBean area : aree) {
+            area.resetPeakUsage();
+        }
+        long inizio = System.nanoTime();
+        for (int i = 0; i < ripetizioni; i++) {
+            ultimoRisultato = operazione.esegui();
+        }
+        double ms = (System.nanoTime() - inizio) / 1e6 / ripetizioni;
+        long picco = 0;
+        for (MemoryPoolMXBean area : aree) {
+            picco += area.getPeakUsage().getUsed();
+        }
+        ultimoRisultato = null;
+        return new Misura(ms, Math.max(0, picco - heapIniziale));
+    }
+
+    private static List<MemoryPoolMXBean> areeHeap() {
+        List<MemoryPoolMXBean> aree = new ArrayList<MemoryPoolMXBean>();
+        for (MemoryPoolMXBean area : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (area.getType() == MemoryType.HEAP) aree.add(area);
+        }
+        return aree;
+    }
+
+    private static long heapUsato() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /** @brief somma delle dimensioni dei file nella cartella, escluse le generazioni precedenti (.bak). */
+    private static long dimensione(Path cartella) throws IOException {
+        try (Stream<Path> file = Files.list(cartella)) {
+            return file.filter(f -> !f.getFileName().toString().endsWith(".bak"))
+                    .mapToLong(f -> f.toFile().length())
+                    .sum();
+        }
+    }
+
+    private static void stampa(BackendPersistenza backend, String dati, Misura salva, Misura carica, long byteFile) {
+        System.out.printf("%-22s %-9s %12.2f %12.2f %14d %10.1f MB %10.1f MB%n", backend.nome(), dati,
+                salva.msPerOperazione, carica.msPerOperazione, byteFile,
+                salva.piccoHeap / 1048576.0, carica.piccoHeap / 1048576.0);
+    }
+}
@@ -0,0 +1,327 @@
+package biblioteca.persistence;
+
+import biblioteca.model.DatiBiblioteca;
+import biblioteca.model.GestioneLibri;
+import biblioteca.model.GestionePrestiti;
+import biblioteca.model.GestioneUtenti;
+import biblioteca.model.Libro;
+import biblioteca.model.Prestito;
+import biblioteca.model.Utente;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+/**
+ * @brief Genera archivi sintetici ma validi per benchmark e prove di carico, in modo deterministico.
+ * A parità di seme, data di riferimento e dimensioni i dati prodotti sono sempre gli stessi, così una misura
+ * si può ripetere su un'altra macchina senza copiare l'archivio reale.
+ * - libri con ISBN a 13 cifre (prefisso 978 o 979, cifra di controllo corretta), da uno a quattro autori,
+ *   anni di pubblicazione più frequenti negli ultimi decenni e più copie per i titoli più richiesti;
+ * - utenti con matricola di 10 cifre ed email nome.cognome@unisa.it;
+ * - prestiti distribuiti negli ultimi ANNI_STORICO anni: libri e utenti sono scelti con una legge di Zipf
+ *   (pochi titoli e pochi lettori fanno gran parte dei prestiti) e la durata ha una coda lunga, quindi una parte
+ *   dei prestiti ancora aperti è in ritardo anche di mesi.
+ * I prestiti ancora aperti alla data di riferimento rispettano i vincoli del modello (copie disponibili, al
+ * massimo Utente.MAX_PRESTITI per utente); quando un vincolo non lo permette il prestito risulta già restituito.
+ * Si usa come libreria (genera()) oppure da riga di comando dopo mvn test-compile, per scrivere un archivio
+ * nella cartella indicata tramite ArchivioFile:
+ * java -cp target/classes:target/test-classes biblioteca.persistence.GeneratoreDataset cartella [numeroLibri] [numeroUtenti] [numeroPrestiti] [seme]
+ */
+public class GeneratoreDataset {
+
+    /** data di riferimento predefinita, fissa perché i dati non dipendano dal giorno in cui si generano */
+    public static final LocalDate OGGI_PREDEFINITO = LocalDate.of(2025, 6, 30);
+    static final int ANNI_STORICO = 5;
+    static final int GIORNI_PRESTITO = 30;
+    /** numeri dispari non multipli di 5: moltiplicati modulo 10^9 danno una permutazione dei corpi ISBN */
+    private static final long MOLTIPLICATORE_ISBN = 387420489L;
+    private static final long SPOSTAMENTO_ISBN = 8800000L;
+    private static final long MATRICOLA_BASE = 512100000L;
+
+    private static final String[] NOMI = {
+            "Marco", "Giulia", "Luca", "Francesca", "Alessandro", "Chiara", "Andrea", "Sara", "Matteo", "Martina",
+            "Lorenzo", "Valentina", "Davide", "Elena", "Simone", "Federica", "Gabriele", "Alessia", "Riccardo",
+            "Anna", "Stefano", "Ilaria", "Antonio", "Roberta", "Giuseppe", "Serena", "Vincenzo", "Paola",
+            "Salvatore", "Rosa", "Francesco", "Carmela", "Pasquale", "Teresa", "Ciro", "Angela", "Gennaro",
+            "Maria", "Raffaele", "Lucia"
+    };
+    private static final String[] COGNOMI = {
+            "Rossi", "Russo", "Ferrari", "Esposito", "Bianchi", "Romano", "Colombo", "Ricci", "Marino", "Greco",
+            "Bruno", "Gallo", "Conti", "De Luca", "Mancini", "Costa", "Giordano", "Rizzo", "Lombardi", "Moretti",
+            "Barbieri", "Fontana", "Santoro", "Mariani", "Rinaldi", "Caruso", "Ferrara", "Galli", "Martini",
+            "Leone", "Longo", "Gentile", "Martinelli", "Vitale", "Lombardo", "Serra", "Coppola", "De Santis",
+            "D'Angelo", "Marchetti", "Parisi", "Villa", "Conte", "Ferraro", "Ferri", "Fabbri", "Bianco",
+            "Marini", "Grasso", "Valentini", "Messina", "Sala", "De Rosa", "Gatti", "Pellegrini", "Palumbo",
+            "Sanna", "Farina", "Rizzi", "D'Amico"
+    };
+    private static final String[] ARGOMENTI = {
+            "Introduzione alla", "Fondamenti di", "Manuale di", "Elementi di", "Esercizi di", "Lezioni di",
+            "Storia della", "Principi di", "Complementi di", "Laboratorio di", "Teoria della", "Metodi di"
+    };
+    private static final String[] MATERIE = {
+            "programmazione", "analisi matematica", "fisica", "chimica organica", "economia aziendale",
+            "basi di dati", "ingegneria del software", "reti di calcolatori", "statistica", "diritto privato",
+            "letteratura italiana", "geometria", "sistemi operativi", "algoritmi e strutture dati",
+            "microeconomia", "linguistica", "biologia molecolare", "architettura dei calcolatori",
+            "filosofia teoretica", "psicologia generale", "calcolo numerico", "intelligenza artificiale",
+            "storia contemporanea", "sociologia"
+    };
+    private static final String[] COMPLEMENTI = {
+            "", "", "", " con esercizi svolti", " per l'università", " - Volume 1", " - Volume 2",
+            " (nuova edizione)", " in Java", " per ingegneri"
+    };
+
+    private final long seme;
+    private final LocalDate oggi;
+    /** una sola istanza per giorno: con milioni di prestiti le date sono la parte più grande dello storico */
+    private final LocalDate[] giorni;
+
+    /**
+     * @brief crea un generatore con la data di riferimento predefinita.
+     * @param seme seme del generatore pseudocasuale
+     */
+    public GeneratoreDataset(long seme) {
+        this(seme, OGGI_PREDEFINITO);
+    }
+
+    /**
+     * @brief crea un generatore.
+     * @param seme seme del generatore pseudocasuale
+     * @param oggi data in cui si fotografa l'archivio: i prestiti aperti sono quelli non ancora restituiti a questa data
+     */
+    public GeneratoreDataset(long seme, LocalDate oggi) {
+        if (oggi == null) {
+            throw new IllegalArgumentException("Data di riferimento null");
+        }
+        this.seme = seme;
+        this.oggi = oggi;
+        LocalDate primo = oggi.minusYears(ANNI_STORICO);
+        this.giorni = new LocalDate[(int) (oggi.toEpochDay() - primo.toEpochDay()) + 1];
+        for (int i = 0; i < giorni.length; i++) {
+            giorni[i] = primo.plusDays(i);
+        }
+    }
+
+    public LocalDate getOggi() {
+        return oggi;
+    }
+
+    /**
+     * @brief genera libri, utenti e prestiti.
+     * @param numeroLibri numero di titoli distinti
+     * @param numeroUtenti numero di utenti
+     * @param numeroPrestiti numero totale di prestiti, restituiti e ancora aperti
+     * @return dati collegati tra loro, senza credenziali
+     */
+    public DatiBiblioteca genera(int numeroLibri, int numeroUtenti, int numeroPrestiti) {
+        if (numeroLibri < 0 || numeroUtenti < 0 || numeroPrestiti < 0) {
+            throw new IllegalArgumentException("Le dimensioni non possono essere negative");
+        }
+        if (numeroPrestiti > 0 && (numeroLibri == 0 || numeroUtenti == 0)) {
+            throw new IllegalArgumentException("Servono libri e utenti per generare prestiti");
+        }
+        SplittableRandom caso = new SplittableRandom(seme);
+
+        int[] rangoLibri = permutazione(numeroLibri, caso);
+        Libro[] libri = new Libro[numeroLibri];
+        for (int i = 0; i < numeroLibri; i++) {
+            libri[i] = libro(i, rangoLibri[i], numeroLibri, caso);
+        }
+        Utente[] utenti = new Utente[numeroUtenti];
+        for (int i = 0; i < numeroUtenti; i++) {
+            utenti[i] = utente(i, caso);
+        }
+
+        List<Prestito> prestiti = prestiti(libri, rangoLibri, utenti, numeroPrestiti, caso);
+        GestioneLibri gl = new GestioneLibri(new TreeSet<Libro>(Arrays.asList(libri)));
+        GestioneUtenti gu = new GestioneUtenti(new TreeSet<Utente>(Arrays.asList(utenti)));
+        GestionePrestiti gp = new GestionePrestiti(prestiti);
+        gu.setGestionePrestiti(gp);
+        return new DatiBiblioteca(gl, gu, gp, null);
+    }
+
+    /**
+     * @brief genera i dati e li scrive tramite ArchivioFile (libri, utenti e prestiti; le credenziali no).
+     * @return i dati scritti
+     */
+    public DatiBiblioteca scrivi(ArchivioFile archivio, int numeroLibri, int numeroUtenti, int numeroPrestiti) {
+        DatiBiblioteca dati = genera(numeroLibri, numeroUtenti, numeroPrestiti);
+        archivio.salvaLibri(dati.gestioneLibri);
+        archivio.salvaUtenti(dati.gestioneUtenti);
+        archivio.salvaPrestiti(dati.gestionePrestiti);
+        return dati;
+    }
+
+    /**
+     * @brief ISBN-13 del libro in posizione indice: corpo di 9 cifre ricavato da una permutazione di [0, 10^9),
+     * quindi diverso per ogni indice, con prefisso 979 per circa un libro su otto.
+     */
+    static long isbn(int indice) {
+        long corpo = (indice * MOLTIPLICATORE_ISBN + SPOSTAMENTO_ISBN) % 1000000000L;
+        long prefisso = (Long.hashCode(corpo * 0x9E3779B97F4A7C15L) & 7) == 0 ? 979 : 978;
+        long senzaControllo = prefisso * 1000000000L + corpo;
+        return senzaControllo * 10 + cifraControllo(senzaControllo);
+    }
+
+    /**
+     * @brief cifra di controllo ISBN-13 delle prime 12 cifre: pesi alternati 1 e 3 a partire da sinistra.
+     */
+    static int cifraControllo(long primeDodici) {
+        int somma = 0;
+        for (int posizione = 12; posizione >= 1; posizione--) {
+            int cifra = (int) (primeDodici % 10);
+            primeDodici /= 10;
+            somma += (posizione % 2 == 0) ? cifra * 3 : cifra;
+        }
+        return (10 - somma % 10) % 10;
+    }
+
+    private Libro libro(int indice, int rango, int numeroLibri, SplittableRandom caso) {
+        String titolo = scegli(ARGOMENTI, caso) + " " + scegli(MATERIE, caso) + scegli(COMPLEMENTI, caso);
+        double p = caso.nextDouble();
+        int numeroAutori = (p < 0.55) ? 1 : (p < 0.85) ? 2 : (p < 0.96) ? 3 : 4;
+        List<String> autori = new ArrayList<String>(numeroAutori);
+        for (int a = 0; a < numeroAutori; a++) {
+            autori.add(scegli(NOMI, caso) + " " + scegli(COGNOMI, caso));
+        }
+        // il minimo di due estrazioni sposta la distribuzione verso gli anni recenti
+        int anniFa = Math.min(caso.nextInt(75), caso.nextInt(75));
+        // i titoli più richiesti (primo 1% per popolarità) hanno più copie
+        int copie = (rango < Math.max(1, numeroLibri / 100)) ? 3 + caso.nextInt(6) : 1 + caso.nextInt(3);
+        return new Libro(isbn(indice), titolo, autori, oggi.getYear() - anniFa, copie);
+    }
+
+    private Utente utente(int indice, SplittableRandom caso) {
+        String nome = scegli(NOMI, caso);
+        String cognome = scegli(COGNOMI, caso);
+        String email = nome.toLowerCase().charAt(0) + "." + cognome.toLowerCase().replaceAll("[^a-z]", "")
+                + (indice + 1) + "@unisa.it";
+        return new Utente(String.format("%010d", MATRICOLA_BASE + indice), nome, cognome, email);
+    }
+
+    /**
+     * @brief genera i prestiti: lo storico in ordine di restituzione, seguito da quelli ancora aperti.
+     */
+    private List<Prestito> prestiti(Libro[] libri, int[] rangoLibri, Utente[] utenti, int numeroPrestiti,
+                                    SplittableRandom caso) {
+        if (numeroPrestiti == 0) {
+            return new ArrayList<Prestito>();
+        }
+        // libroPerRango[r] è l'indice del libro r-esimo per popolarità
+        int[] libroPerRango = new int[libri.length];
+        for (int i = 0; i < libri.length; i++) {
+            libroPerRango[rangoLibri[i]] = i;
+        }
+        int[] utentePerRango = permutazione(utenti.length, caso);
+        double[] zipfLibri = cumulataZipf(libri.length, 1.0);
+        double[] zipfUtenti = cumulataZipf(utenti.length, 0.7);
+        int ultimoGiorno = giorni.length - 1;
+
+        List<Prestito> storico = new ArrayList<Prestito>(numeroPrestiti);
+        List<Prestito> aperti = new ArrayList<Prestito>();
+        for (int n = 0; n < numeroPrestiti; n++) {
+            Libro libro = libri[libroPerRango[estrai(zipfLibri, caso)]];
+            Utente utente = utenti[utentePerRango[estrai(zipfUtenti, caso)]];
+            int inizio = caso.nextInt(giorni.length);
+            int durata = durata(caso);
+            Prestito prestito = new Prestito(utente, libro, giorni[inizio],
+                    giorni[inizio].plusDays(GIORNI_PRESTITO));
+            if (inizio + durata > ultimoGiorno && puoRestareAperto(utente, libro)) {
+                libro.decrementaCopiaDisponibile();
+                utente.aggiungiPrestito(prestito);
+                aperti.add(prestito);
+            } else {
+                prestito.setDataRestituzione(giorni[Math.min(inizio + durata, ultimoGiorno)]);
+                storico.add(prestito);
+            }
+        }
+        storico.sort(Comparator.comparing(Prestito::getDataRestituzione));
+        aperti.sort(Comparator.comparing(Prestito::getDataInizio));
+        storico.addAll(aperti);
+        return storico;
+    }
+
+    /**
+     * @brief giorni prima della restituzione: tre prestiti su quattro rientrano nei termini, gli altri hanno una
+     * coda di ritardi che arriva a più di un anno.
+     */
+    private static int durata(SplittableRandom caso) {
+        double p = caso.nextDouble();
+        if (p < 0.75) {
+            return 1 + caso.nextInt(GIORNI_PRESTITO);
+        }
+        if (p < 0.93) {
+            return GIORNI_PRESTITO + 1 + caso.nextInt(30);
+        }
+        // coda di Pareto: pochi ritardi lunghissimi
+        double ritardo = 30 / Math.pow(1 - caso.nextDouble(), 1 / 1.2);
+        return GIORNI_PRESTITO + (int) Math.min(ritardo, 3 * 365);
+    }
+
+    private static boolean puoRestareAperto(Utente utente, Libro libro) {
+        if (!libro.isDisponibile() || utente.getNumPrestitiAttivi() >= Utente.MAX_PRESTITI) {
+            return false;
+        }
+        for (Prestito p : utente.getPrestitiAttivi()) {
+            if (p.getLibro() == libro) return false;
+        }
+        return true;
+    }
+
+    /** @brief probabilità cumulate (non normalizzate) della legge di Zipf con esponente s sui ranghi 0..n-1. */
+    private static double[] cumulataZipf(int n, double s) {
+        double[] cumulata = new double[n];
+        double somma = 0;
+        for (int r = 0; r < n; r++) {
+            somma += 1 / Math.pow(r + 1, s);
+            cumulata[r] = somma;
+        }
+        return cumulata;
+    }
+
+    private static int estrai(double[] cumulata, SplittableRandom caso) {
+        double u = caso.nextDouble() * cumulata[cumulata.length - 1];
+        int i = Arrays.binarySearch(cumulata, u);
+        return Math.min((i >= 0) ? i : -i - 1, cumulata.length - 1);
+    }
+
+    /** @brief permutazione casuale di 0..n-1 (Fisher-Yates). */
+    private static int[] permutazione(int n, SplittableRandom caso) {
+        int[] p = new int[n];
+        for (int i = 0; i < n; i++) p[i] = i;
+        for (int i = n - 1; i > 0; i--) {
+            int j = caso.nextInt(i + 1);
+            int t = p[i];
+            p[i] = p[j];
+            p[j] = t;
+        }
+        return p;
+    }
+
+    private static String scegli(String[] valori, SplittableRandom caso) {
+        return valori[caso.nextInt(valori.length)];
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Uso: GeneratoreDataset cartella [numeroLibri] [numeroUtenti] [numeroPrestiti] [seme]");
+            System.exit(1);
+        }
+        int numeroLibri = (args.length > 1) ? Integer.parseInt(args[1]) : 1000000;
+        int numeroUtenti = (args.length > 2) ? Integer.parseInt(args[2]) : Math.max(1, numeroLibri / 10);
+        int numeroPrestiti = (args.length > 3) ? Integer.parseInt(args[3]) : 2 * numeroLibri;
+        long seme = (args.length > 4) ? Long.parseLong(args[4]) : 42L;
+
+        long inizio = System.nanoTime();
+        DatiBiblioteca dati = new GeneratoreDataset(seme)
+                .scrivi(new ArchivioFile(args[0]), numeroLibri, numeroUtenti, numeroPrestiti);
+        System.out.printf("%d libri, %d utenti, %d prestiti (%d aperti) scritti in %s in %.1f s%n",
+                dati.gestioneLibri.getLibri().size(), dati.gestioneUtenti.getUtenti().size(), numeroPrestiti,
+                dati.gestionePrestiti.getPrestitiAttivi().size(), args[0], (System.nanoTime() - inizio) / 1e9);
+    }
+}
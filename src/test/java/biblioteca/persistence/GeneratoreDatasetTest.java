@@ -0,0 +1,175 @@
+package biblioteca.persistence;
+
+import biblioteca.model.*;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeneratoreDatasetTest {
+
+    private static final int LIBRI = 2000;
+    private static final int UTENTI = 300;
+    private static final int PRESTITI = 6000;
+
+    private static DatiBiblioteca dati;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    static void genera() {
+        dati = new GeneratoreDataset(7L).genera(LIBRI, UTENTI, PRESTITI);
+    }
+
+    @Test
+    void stessoSeme_stessiDati() {
+        DatiBiblioteca altri = new GeneratoreDataset(7L).genera(LIBRI, UTENTI, PRESTITI);
+        assertEquals(descrivi(dati), descrivi(altri));
+    }
+
+    @Test
+    void semeDiverso_datiDiversi() {
+        DatiBiblioteca altri = new GeneratoreDataset(8L).genera(LIBRI, UTENTI, PRESTITI);
+        assertNotEquals(descrivi(dati), descrivi(altri));
+    }
+
+    @Test
+    void isbn_trediciCifreConPrefissoECifraDiControllo() {
+        assertEquals(LIBRI, dati.gestioneLibri.getLibri().size());
+        boolean piuAutori = false;
+        for (Libro l : dati.gestioneLibri.getLibri()) {
+            String isbn = Long.toString(l.getIsbn());
+            assertEquals(13, isbn.length(), isbn);
+            assertTrue(isbn.startsWith("978") || isbn.startsWith("979"), isbn);
+            int somma = 0;
+            for (int i = 0; i < 13; i++) {
+                somma += (isbn.charAt(i) - '0') * ((i % 2 == 0) ? 1 : 3);
+            }
+            assertEquals(0, somma % 10, isbn);
+            assertFalse(l.getAutori().isEmpty());
+            piuAutori |= l.getAutori().size() > 1;
+        }
+        assertTrue(piuAutori);
+    }
+
+    @Test
+    void cifraControllo_isbnNoto() {
+        // 978-0-306-40615-7
+        assertEquals(7, GeneratoreDataset.cifraControllo(978030640615L));
+        assertEquals(9780306406157L, 978030640615L * 10 + GeneratoreDataset.cifraControllo(978030640615L));
+    }
+
+    @Test
+    void utenti_matricolaEdEmailUnisa() {
+        Set<String> email = new HashSet<String>();
+        for (Utente u : dati.gestioneUtenti.getUtenti()) {
+            assertTrue(u.getMatricola().matches("\\d{10}"), u.getMatricola());
+            assertTrue(u.getEmail().matches("[a-z]\\.[a-z]+\\d+@unisa\\.it"), u.getEmail());
+            assertTrue(email.add(u.getEmail()));
+        }
+        assertEquals(UTENTI, email.size());
+    }
+
+    @Test
+    void prestiti_rispettanoCopieEMassimoPerUtente() {
+        GestionePrestiti gp = dati.gestionePrestiti;
+        assertEquals(PRESTITI, gp.getNumeroPrestitiStorico() + gp.getPrestitiAttivi().size());
+        Map<Libro, Integer> apertiPerLibro = new HashMap<Libro, Integer>();
+        for (Prestito p : gp.getPrestitiAttivi()) {
+            apertiPerLibro.merge(p.getLibro(), 1, Integer::sum);
+            assertTrue(p.getUtente().getPrestitiAttivi().contains(p));
+        }
+        for (Libro l : dati.gestioneLibri.getLibri()) {
+            assertEquals(l.getCopieTotali() - apertiPerLibro.getOrDefault(l, 0), l.getCopieDisponibili());
+            assertTrue(l.getCopieDisponibili() >= 0);
+        }
+        for (Utente u : dati.gestioneUtenti.getUtenti()) {
+            assertTrue(gp.contaPrestitiAttivi(u) <= Utente.MAX_PRESTITI);
+            assertEquals(u.getNumPrestitiAttivi(), gp.contaPrestitiAttivi(u));
+        }
+    }
+
+    @Test
+    void storico_inOrdineDiRestituzioneEntroOggi() {
+        GestionePrestiti gp = dati.gestionePrestiti;
+        LocalDate oggi = GeneratoreDataset.OGGI_PREDEFINITO;
+        List<Prestito> storico = gp.getPaginaStorico(gp.getNumeroPrestitiStorico(), gp.getNumeroPrestitiStorico());
+        LocalDate precedente = LocalDate.MAX;
+        for (Prestito p : storico) {
+            // la pagina va dal più recente al più vecchio
+            assertFalse(p.getDataRestituzione().isAfter(precedente));
+            assertFalse(p.getDataRestituzione().isBefore(p.getDataInizio()));
+            assertFalse(p.getDataRestituzione().isAfter(oggi));
+            precedente = p.getDataRestituzione();
+        }
+    }
+
+    @Test
+    void distribuzione_titoliPopolariERitardiLunghi() {
+        Map<Long, Integer> perLibro = new HashMap<Long, Integer>();
+        List<Prestito> tutti = dati.gestionePrestiti.getPrestiti();
+        for (Prestito p : tutti) {
+            perLibro.merge(p.getLibro().getIsbn(), 1, Integer::sum);
+        }
+        List<Integer> conteggi = new ArrayList<Integer>(perLibro.values());
+        conteggi.sort((a, b) -> b - a);
+        int primoPercento = 0;
+        for (int i = 0; i < LIBRI / 100; i++) {
+            primoPercento += conteggi.get(i);
+        }
+        // con Zipf di esponente 1 il primo 1% dei titoli fa circa il 40% dei prestiti; uniforme sarebbe l'1%
+        assertTrue(primoPercento > PRESTITI / 4, "primo 1% dei titoli: " + primoPercento);
+
+        LocalDate oggi = GeneratoreDataset.OGGI_PREDEFINITO;
+        List<Prestito> inRitardo = dati.gestionePrestiti.getPrestitiInRitardo(oggi);
+        assertFalse(inRitardo.isEmpty());
+        assertTrue(inRitardo.stream().anyMatch(p -> p.getDataPrevistaRestituzione().plusDays(60).isBefore(oggi)));
+        assertTrue(inRitardo.size() < dati.gestionePrestiti.getPrestitiAttivi().size());
+    }
+
+    @Test
+    void scrivi_archivioRicaricabile() {
+        ArchivioFile archivio = new ArchivioFile(tempDir.toString());
+        DatiBiblioteca scritti = new GeneratoreDataset(3L).scrivi(archivio, 500, 80, 1500);
+
+        GestioneLibri gl = archivio.caricaLibri();
+        GestioneUtenti gu = archivio.caricaUtenti();
+        GestionePrestiti gp = archivio.caricaPrestiti(gl, gu);
+        assertEquals(500, gl.getLibri().size());
+        assertEquals(80, gu.getUtenti().size());
+        assertEquals(scritti.gestionePrestiti.getPrestitiAttivi().size(), gp.getPrestitiAttivi().size());
+        assertEquals(scritti.gestionePrestiti.getNumeroPrestitiStorico(), gp.getNumeroPrestitiStorico());
+    }
+
+    @Test
+    void genera_prestitiSenzaLibri_lanciaEccezione() {
+        assertThrows(IllegalArgumentException.class, () -> new GeneratoreDataset(1L).genera(0, 10, 5));
+    }
+
+    private static List<String> descrivi(DatiBiblioteca d) {
+        List<String> righe = new ArrayList<String>();
+        for (Libro l : d.gestioneLibri.getLibri()) {
+            righe.add(l.getIsbn() + "|" + l.getTitolo() + "|" + l.getAutori() + "|" + l.getAnnoPubblicazione()
+                    + "|" + l.getCopieTotali() + "|" + l.getCopieDisponibili());
+        }
+        for (Utente u : d.gestioneUtenti.getUtenti()) {
+            righe.add(u.getMatricola() + "|" + u.getNome() + "|" + u.getCognome() + "|" + u.getEmail());
+        }
+        for (Prestito p : d.gestionePrestiti.getPrestiti()) {
+            righe.add(p.getUtente().getMatricola() + "|" + p.getLibro().getIsbn() + "|" + p.getDataInizio()
+                    + "|" + p.getDataPrevistaRestituzione() + "|" + p.getDataRestituzione());
+        }
+        return righe;
+    }
+}
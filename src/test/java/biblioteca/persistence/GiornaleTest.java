@@ -0,0 +1,206 @@
+package biblioteca.persistence;
+
+import biblioteca.model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @brief Test della classe Giornale.
+ */
+class GiornaleTest {
+
+    @TempDir
+    Path tempDir;
+
+    private File file;
+    private GestioneLibri gl;
+    private GestioneUtenti gu;
+    private GestionePrestiti gp;
+
+    @BeforeEach
+    void setUp() {
+        file = tempDir.resolve("giornale.log").toFile();
+        gl = new GestioneLibri();
+        gu = new GestioneUtenti();
+        gp = new GestionePrestiti();
+        gu.setGestionePrestiti(gp);
+    }
+
+    private GestioneUtenti nuoviUtenti(GestionePrestiti prestiti) {
+        GestioneUtenti u = new GestioneUtenti();
+        u.setGestionePrestiti(prestiti);
+        return u;
+    }
+
+    @Test
+    void ripristina_libroConMenoCopieDiQuelleInPrestitoNelloSnapshot_applicaTuttoIlRecord() throws Exception {
+        // nello snapshot il libro ha 3 copie di cui 2 in prestito; poi le copie sono state restituite e ridotte a 1
+        gl.aggiungiLibro(new Libro(9788800000000L, "Odissea", Arrays.asList("Omero"), 2020, 3, 1));
+        try (Giornale g = new Giornale(file)) {
+            g.scriviLibro(new Libro(9788800000000L, "Odissea (nuova edizione)", Arrays.asList("Omero"), 2024, 1, 1));
+        }
+
+        try (Giornale g = new Giornale(file)) {
+            assertEquals(1, g.ripristina(gl, gu, gp));
+        }
+
+        Libro l = gl.trovaLibro(9788800000000L);
+        assertEquals("Odissea (nuova edizione)", l.getTitolo());
+        assertEquals(2024, l.getAnnoPubblicazione());
+        assertEquals(1, l.getCopieTotali());
+        assertEquals(1, l.getCopieDisponibili());
+    }
+
+    @Test
+    void ripristina_riapplicaTutteLeOperazioni() throws Exception {
+        try (Giornale g = new Giornale(file)) {
+            Libro l = gl.inserisciLibro(9788800000000L, "Odissea", Arrays.asList("Omero"), 2020, 2);
+            g.scriviLibro(l);
+            Libro daEliminare = gl.inserisciLibro(9788800000001L, "Lilith", null, 2018, 1);
+            g.scriviLibro(daEliminare);
+            g.scriviEliminazioneLibro(daEliminare.getIsbn());
+            Utente u = new Utente("0612700001", "Matteo", "Menza", "m.menza@unisa.it");
+            gu.inserisciUtente(u);
+            g.scriviUtente(u);
+            Prestito p = gp.registraPrestito(u, l, LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 10));
+            g.scriviPrestito(p);
+            Prestito p2 = gp.registraPrestito(u, l, LocalDate.of(2025, 12, 2), LocalDate.of(2025, 12, 12));
+            g.scriviPrestito(p2);
+            gp.registraRestituzione(p, LocalDate.of(2025, 12, 5));
+            g.scriviRestituzione(p);
+        }
+
+        GestioneLibri libri = new GestioneLibri();
+        GestionePrestiti prestiti = new GestionePrestiti();
+        GestioneUtenti utenti = nuoviUtenti(prestiti);
+        try (Giornale g = new Giornale(file)) {
+            assertEquals(7, g.ripristina(libri, utenti, prestiti));
+        }
+
+        Libro l = libri.trovaLibro(9788800000000L);
+        assertNotNull(l);
+        assertEquals("Odissea", l.getTitolo());
+        assertEquals(Arrays.asList("Omero"), l.getAutori());
+        assertEquals(1, l.getCopieDisponibili());
+        assertNull(libri.trovaLibro(9788800000001L));
+        Utente u = utenti.trovaUtente("0612700001");
+        assertNotNull(u);
+        assertEquals(1, u.getNumPrestitiAttivi());
+        assertEquals(2, prestiti.getPrestiti().size());
+        assertEquals(1, prestiti.contaPrestitiAttivi(u));
+        assertNotNull(prestiti.trovaPrestitoAttivo("0612700001", 9788800000000L, LocalDate.of(2025, 12, 2)));
+    }
+
+    @Test
+    void ripristina_codaIncompleta_vieneScartata() throws Exception {
+        try (Giornale g = new Giornale(file)) {
+            g.scriviUtente(new Utente("0612700001", "Matteo", "Menza", "m.menza@unisa.it"));
+            g.scriviUtente(new Utente("0612700002", "Pasquale", "Sorbo", "p.sorbo@unisa.it"));
+        }
+        long lunghezza = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(lunghezza - 3);
+        }
+
+        try (Giornale g = new Giornale(file)) {
+            assertEquals(1, g.ripristina(gl, gu, gp));
+            g.scriviUtente(new Utente("0612700003", "Nunzia", "Capasso", "n.capasso@unisa.it"));
+        }
+        assertNotNull(gu.trovaUtente("0612700001"));
+        assertNull(gu.trovaUtente("0612700002"));
+
+        GestionePrestiti prestiti = new GestionePrestiti();
+        GestioneUtenti utenti = nuoviUtenti(prestiti);
+        try (Giornale g = new Giornale(file)) {
+            assertEquals(2, g.ripristina(new GestioneLibri(), utenti, prestiti));
+        }
+        assertNotNull(utenti.trovaUtente("0612700003"));
+    }
+
+    @Test
+    void ripristina_suStatoGiaAggiornato_nonDuplicaIPrestiti() throws Exception {
+        Libro l = gl.inserisciLibro(9788800000000L, "Odissea", null, 2020, 2);
+        Utente u = new Utente("0612700001", "Matteo", "Menza", "m.menza@unisa.it");
+        gu.inserisciUtente(u);
+        try (Giornale g = new Giornale(file)) {
+            g.scriviPrestito(gp.registraPrestito(u, l, LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 10)));
+        }
+
+        try (Giornale g = new Giornale(file)) {
+            g.ripristina(gl, gu, gp);
+        }
+
+        assertEquals(1, gp.getPrestitiAttivi().size());
+        assertEquals(1, l.getCopieDisponibili());
+    }
+
+    @Test
+    void compattazioneInterrottaPrimaDiSvuotare_giornaleNonRiapplicato() throws Exception {
+        ArchivioFile archivio = new ArchivioFile(tempDir.toString());
+        archivio.attivaGiornale(gl, gu, gp);
+        Libro l = gl.inserisciLibro(9788800000000L, "Odissea", null, 2020, 2);
+        archivio.registraLibro(gl, l);
+        Utente u = new Utente("0612700001", "Matteo", "Menza", "m.menza@unisa.it");
+        gu.inserisciUtente(u);
+        archivio.registraUtente(gu, u);
+        Prestito p = gp.registraPrestito(u, l, LocalDate.of(2025, 12, 1), LocalDate.of(2025, 12, 10));
+        archivio.registraPrestito(gp, gl, gu, p);
+        gp.registraRestituzione(p, LocalDate.of(2025, 12, 5));
+        archivio.registraRestituzione(gp, gl, gu, p);
+
+        // snapshot scritti ma giornale non ancora svuotato: si rimette il giornale com'era prima di compattare
+        byte[] primaDellaCompattazione = Files.readAllBytes(file.toPath());
+        archivio.chiudi();
+        Files.write(file.toPath(), primaDellaCompattazione);
+
+        ArchivioFile riavvio = new ArchivioFile(tempDir.toString());
+        GestioneLibri libri = riavvio.caricaLibri();
+        GestioneUtenti utenti = riavvio.caricaUtenti();
+        GestionePrestiti prestiti = riavvio.caricaPrestiti(libri, utenti);
+        utenti.setGestionePrestiti(prestiti);
+        riavvio.attivaGiornale(libri, utenti, prestiti);
+
+        assertEquals(1, prestiti.getNumeroPrestitiStorico());
+        assertTrue(prestiti.getPrestitiAttivi().isEmpty());
+        assertEquals(2, libri.trovaLibro(9788800000000L).getCopieDisponibili());
+        assertEquals(Giornale.DIMENSIONE_RECORD_GENERAZIONE, file.length());
+        riavvio.chiudi();
+    }
+
+    @Test
+    void svuotaConGenerazione_ripristinaLaLeggeSenzaApplicarla() throws Exception {
+        try (Giornale g = new Giornale(file)) {
+            g.scriviEliminazioneUtente("0612700001");
+            g.svuota(4);
+            assertEquals(4, g.getGenerazione());
+            g.scriviUtente(new Utente("0612700002", "Pasquale", "Sorbo", "p.sorbo@unisa.it"));
+        }
+        assertEquals(4, Giornale.generazione(file));
+
+        try (Giornale g = new Giornale(file)) {
+            assertEquals(1, g.ripristina(gl, gu, gp));
+            assertEquals(4, g.getGenerazione());
+        }
+        assertNotNull(gu.trovaUtente("0612700002"));
+    }
+
+    @Test
+    void svuota_azzeraIlGiornale() throws Exception {
+        try (Giornale g = new Giornale(file)) {
+            g.scriviEliminazioneUtente("0612700001");
+            assertTrue(g.dimensione() > 0);
+            g.svuota();
+            assertEquals(0, g.dimensione());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package biblioteca.view;
+
+import javafx.beans.value.ObservableValue;
+import javafx.collections.FXCollections;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @brief Test della classe RigaVista.
+ */
+class RigaVistaTest {
+
+    private static class Voce {
+        String nome;
+        Voce(String nome) { this.nome = nome; }
+    }
+
+    @Test
+    void get_calcolaOgniTestoUnaSolaVoltaESoloQuandoServe() {
+        AtomicInteger chiamate = new AtomicInteger();
+        List<Function<Voce, String>> colonne = List.of(
+                v -> { chiamate.incrementAndGet(); return v.nome; },
+                v -> { chiamate.incrementAndGet(); return v.nome.toUpperCase(); });
+        RigaVista<Voce> riga = new RigaVista<Voce>(new Voce("Gomorra"), colonne);
+
+        assertEquals(0, chiamate.get());
+        assertEquals(2, riga.size());
+        assertEquals("GOMORRA", riga.get(1));
+        assertEquals("GOMORRA", riga.get(1));
+        assertEquals(1, chiamate.get());
+    }
+
+    @Test
+    void cella_restaLaStessaEDopoAggiornaMostraIlNuovoValore() {
+        Voce voce = new Voce("Gomorra");
+        RigaVista<Voce> riga = new RigaVista<Voce>(voce, List.of(v -> v.nome));
+
+        ObservableValue<String> cella = riga.cella(0);
+        assertSame(cella, riga.cella(0));
+        assertEquals("Gomorra", cella.getValue());
+
+        voce.nome = "Zero zero zero";
+        riga.aggiorna();
+        assertEquals("Zero zero zero", cella.getValue());
+        assertEquals("Zero zero zero", riga.get(0));
+    }
+
+    @Test
+    void cellaStatica_funzionaAncheConRigheNormali() {
+        assertEquals("x", RigaVista.cella(FXCollections.observableArrayList("x", "y"), 0).getValue());
+    }
+
+    @Test
+    void get_valoreNull_restaNull() {
+        RigaVista<Voce> riga = new RigaVista<Voce>(new Voce(null), List.of(v -> v.nome));
+        assertNull(riga.get(0));
+        assertNull(riga.cella(0).getValue());
+    }
+}